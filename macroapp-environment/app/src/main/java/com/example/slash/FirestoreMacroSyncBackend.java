@@ -0,0 +1,197 @@
+package com.example.slash;
+
+import com.example.slash.core.Macro;
+import com.example.slash.core.MacroCodec;
+import com.example.slash.core.MacroPageSource;
+import com.example.slash.core.MacroPages;
+import com.example.slash.core.MacroSyncBackend;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.Blob;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stores each macro as one document under users/{uid}/macros holding its version. A macro that
+ * fits in one {@link MacroPages page} keeps its {@link MacroCodec} bytes in that document; longer
+ * ones list their page count and keep the pages in a "pages" subcollection, one document per page
+ * named after the version, so a macro never hits Firestore's 1 MiB document limit and can be
+ * streamed. Documents written by older app versions (an "actions" array of maps) are converted on
+ * fetch and reported as version 1.
+ */
+public class FirestoreMacroSyncBackend implements MacroSyncBackend, MacroPageSource {
+    private static final int MAX_BATCH_SIZE = 500; // Firestore's limit per WriteBatch
+
+    private final FirebaseFirestore db;
+    private final String uid;
+
+    public FirestoreMacroSyncBackend(FirebaseFirestore db, String uid) {
+        this.db = db;
+        this.uid = uid;
+    }
+
+    @Override
+    public int getMaxBatchSize() {
+        return MAX_BATCH_SIZE;
+    }
+
+    // Writes pages before the manifests that point at them and deletes the superseded pages last,
+    // so a reader always finds the pages of the version it was told about. A push needing more
+    // than one WriteBatch is therefore no longer atomic.
+    @Override
+    public void push(List<Record> records) throws IOException {
+        List<Write> pageWrites = new ArrayList<>();
+        List<Write> manifestWrites = new ArrayList<>();
+        List<Write> deletes = new ArrayList<>();
+        // Every previous manifest is read at once, so a batch waits one round trip, not one per macro
+        List<Task<DocumentSnapshot>> previousReads = new ArrayList<>(records.size());
+        for (Record record : records) previousReads.add(macros().document(record.name).get());
+        for (int r = 0; r < records.size(); r++) {
+            Record record = records.get(r);
+            DocumentReference manifest = macros().document(record.name);
+            DocumentSnapshot previous = await(previousReads.get(r));
+            Map<String, Object> data = new HashMap<>();
+            data.put("version", record.version);
+            data.put("format", MacroCodec.VERSION);
+            Macro macro = MacroCodec.decode(ByteBuffer.wrap(record.data));
+            List<Macro> pages = MacroPages.split(macro, MacroPages.DEFAULT_PAGE_ACTIONS);
+            if (pages.size() <= 1) {
+                data.put("data", Blob.fromBytes(record.data)); // Still readable by older app versions
+            } else {
+                data.put("pages", pages.size());
+                data.put("actionCount", macro.size());
+                for (int i = 0; i < pages.size(); i++) {
+                    Map<String, Object> page = new HashMap<>();
+                    page.put("data", Blob.fromBytes(MacroCodec.encode(pages.get(i))));
+                    page.put("version", record.version);
+                    pageWrites.add(new Write(page(manifest, record.version, i), page));
+                }
+            }
+            manifestWrites.add(new Write(manifest, data));
+            Long previousPages = previous.getLong("pages");
+            Long previousVersion = previous.getLong("version");
+            if (previousPages != null && previousVersion != null && previousVersion != record.version) {
+                for (int i = 0; i < previousPages; i++) {
+                    deletes.add(new Write(page(manifest, previousVersion, i), null));
+                }
+            }
+        }
+        List<Write> writes = new ArrayList<>(pageWrites);
+        writes.addAll(manifestWrites);
+        writes.addAll(deletes);
+        for (int from = 0; from < writes.size(); from += MAX_BATCH_SIZE) {
+            WriteBatch batch = db.batch();
+            for (Write write : writes.subList(from, Math.min(from + MAX_BATCH_SIZE, writes.size()))) {
+                if (write.data != null) batch.set(write.document, write.data);
+                else batch.delete(write.document);
+            }
+            await(batch.commit());
+        }
+    }
+
+    @Override
+    public Map<String, Long> fetchVersions() throws IOException {
+        Map<String, Long> versions = new HashMap<>();
+        QuerySnapshot snapshot = await(macros().get());
+        for (DocumentSnapshot document : snapshot.getDocuments()) {
+            Long version = document.getLong("version");
+            versions.put(document.getId(), version != null ? version : 1L);
+        }
+        return versions;
+    }
+
+    @Override
+    public Record fetch(String name) throws IOException {
+        Manifest manifest = fetchManifest(name);
+        if (manifest == null) return null;
+        if (manifest.inlineData != null) return new Record(name, manifest.version, manifest.inlineData);
+        List<Macro> pages = new ArrayList<>(manifest.pageCount);
+        for (int i = 0; i < manifest.pageCount; i++) {
+            pages.add(MacroCodec.decode(ByteBuffer.wrap(fetchPage(manifest, i))));
+        }
+        return new Record(name, manifest.version, MacroCodec.encode(MacroPages.join(pages)));
+    }
+
+    @Override
+    public Manifest fetchManifest(String name) throws IOException {
+        DocumentSnapshot document = await(macros().document(name).get());
+        if (!document.exists()) return null;
+        Long version = document.getLong("version");
+        Long pages = document.getLong("pages");
+        if (pages != null && version != null) {
+            Long actionCount = document.getLong("actionCount");
+            return new Manifest(name, version, pages.intValue(), actionCount != null ? actionCount.intValue() : 0, null);
+        }
+        Blob data = document.getBlob("data");
+        if (data != null) {
+            return new Manifest(name, version != null ? version : 1L, 1, 0, data.toBytes());
+        }
+        @SuppressWarnings("unchecked")
+        List<Map<String, Object>> actions = (List<Map<String, Object>>) document.get("actions");
+        if (actions == null) return null;
+        Macro.Builder builder = new Macro.Builder();
+        for (Map<String, Object> actionMap : actions) {
+            float x = ((Number) actionMap.get("x")).floatValue();
+            float y = ((Number) actionMap.get("y")).floatValue();
+            long timestamp = ((Number) actionMap.get("timestamp")).longValue();
+            builder.add(x, y, TimeUnit.MILLISECONDS.toNanos(timestamp));
+        }
+        Macro macro = builder.build();
+        return new Manifest(name, 1L, 1, macro.size(), MacroCodec.encode(macro));
+    }
+
+    @Override
+    public byte[] fetchPage(Manifest manifest, int index) throws IOException {
+        DocumentSnapshot document = await(page(macros().document(manifest.name), manifest.version, index).get());
+        Blob data = document.getBlob("data");
+        Long version = document.getLong("version");
+        if (data == null || version == null || version != manifest.version) {
+            throw new IOException("Page " + index + " of " + manifest.name + " v" + manifest.version + " is missing");
+        }
+        return data.toBytes();
+    }
+
+    private CollectionReference macros() {
+        return db.collection("users").document(uid).collection("macros");
+    }
+
+    private static DocumentReference page(DocumentReference manifest, long version, int index) {
+        return manifest.collection("pages").document(String.format(Locale.US, "%d-%05d", version, index));
+    }
+
+    private static final class Write {
+        final DocumentReference document;
+        final Map<String, Object> data; // Null to delete
+
+        Write(DocumentReference document, Map<String, Object> data) {
+            this.document = document;
+            this.data = data;
+        }
+    }
+
+    private static <T> T await(Task<T> task) throws IOException {
+        try {
+            return Tasks.await(task);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for Firestore");
+        }
+    }
+}
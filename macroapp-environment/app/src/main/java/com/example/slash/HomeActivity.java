@@ -1,50 +1,67 @@
 package com.example.slash;
 
 import android.app.AlertDialog;
+import android.content.ComponentName;
 import android.content.Context;
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.hardware.display.DisplayManager;
-import android.hardware.display.VirtualDisplay;
-import android.media.Image;
-import android.media.ImageReader;
-import android.media.projection.MediaProjection;
+import android.content.ServiceConnection;
 import android.media.projection.MediaProjectionManager;
 import android.os.Bundle;
-import android.util.DisplayMetrics;
+import android.os.IBinder;
 import android.util.Log;
 import android.view.MotionEvent;
 import android.view.View;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.EditText;
-import android.widget.ImageView;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.ContextCompat;
 import androidx.drawerlayout.widget.DrawerLayout;
+import com.example.slash.core.CancellationToken;
+import com.example.slash.core.GameState;
+import com.example.slash.core.Macro;
+import com.example.slash.core.MacroCodec;
+import com.example.slash.core.MacroCompiler;
+import com.example.slash.core.MacroProgram;
+import com.example.slash.core.MacroRepository;
+import com.example.slash.core.MacroStreamLoader;
+import com.example.slash.core.MacroSync;
+import com.example.slash.core.PathSimplifier;
+import com.example.slash.core.PipelineMetrics;
+import com.example.slash.core.ProgramStream;
+import com.example.slash.core.SettableFuture;
+import com.example.slash.core.StartupTimings;
+import com.example.slash.core.TouchRecorder;
 import com.google.android.material.navigation.NavigationView;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.FirebaseFirestore;
 
-import org.tensorflow.lite.Interpreter;
-
-import java.io.FileInputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileWriter;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
-import java.util.ArrayList;
+import java.io.Writer;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Macro recording, storage and settings. Capture, detection and replay run in {@link MacroService};
+ * this activity binds to it for status and hands it compiled programs.
+ */
 public class HomeActivity extends AppCompatActivity {
     private static final String TAG = "HomeActivity";
     private static final int REQUEST_CODE_SCREEN_CAPTURE = 100;
-    private static final int INPUT_WIDTH = 224; // Adjust based on your TensorFlow Lite model
-    private static final int INPUT_HEIGHT = 224;
+    private static final String REST_MACRO_NAME = "rest"; // Saved macro replayed when stamina runs low
+    private static final int TOUCH_BUFFER_SAMPLES = 8192; // About 30 s of one stroke at 240 Hz before it is simplified in place
+    private static final float PATH_TOLERANCE_DP = 1f; // Swipe points closer than this to the simplified path are dropped
+    private static final long SYNC_DELAY_MS = 5000; // Saves within this window are uploaded together
 
     private FirebaseAuth mAuth;
     private FirebaseFirestore db;
@@ -54,53 +71,50 @@ public class HomeActivity extends AppCompatActivity {
     private Button recordButton, replayButton, cropButton, saveMacroButton, loadMacroButton;
     private LinearLayout macroArea;
     private boolean isRecording = false;
-    private List<Action> recordedActions = new ArrayList<>();
-    private Bitmap triggerImage;
-    private int triggerX, triggerY, triggerWidth, triggerHeight;
-    private int staminaX, staminaY, staminaWidth, staminaHeight;
-    private AIImageRecognizer aiRecognizer;
-    private float triggerSensitivity = 0.8f; // Default
-    private long clickInterval = 1000; // Default 1s
-    private volatile GameState currentState = GameState.IDLE;
-
-    // TensorFlow Lite
-    private Interpreter tflite;
-
-    // Screen Capture
-    private MediaProjectionManager mediaProjectionManager;
-    private MediaProjection mediaProjection;
-    private VirtualDisplay virtualDisplay;
-    private ImageReader imageReader;
-
-    private enum GameState {
-        STAMINA_FULL, STAMINA_LOW, STAMINA_EMPTY, IN_BATTLE, IDLE
-    }
-
-    private static class Action {
-        float x, y;
-        long timestamp;
-
-        Action(float x, float y, long timestamp) {
-            this.x = x;
-            this.y = y;
-            this.timestamp = timestamp;
-        }
-
-        Map<String, Object> toMap() {
-            Map<String, Object> map = new HashMap<>();
-            map.put("x", x);
-            map.put("y", y);
-            map.put("timestamp", timestamp);
-            return map;
+    private final Macro.Builder recorder = new Macro.Builder();
+    private TouchRecorder touchRecorder;
+    private volatile Macro recordedMacro = Macro.EMPTY;
+    private MonitorSettings settings = new MonitorSettings(); // Edited on the UI thread only
+
+    // Service
+    private MacroService macroService; // Null until bound
+    private boolean serviceBound;
+    private boolean captureRequested;
+
+    // Replay
+    private volatile Macro restMacro = new Macro(new float[]{200}, new float[]{200}, new int[]{0}); // Example: Click a "rest" button
+    private int replayRepeat = 1; // 0 repeats until stopped
+    private boolean resumeAfterRest;
+
+    // Macro storage
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    private final ScheduledExecutorService syncExecutor = Executors.newSingleThreadScheduledExecutor();
+    private volatile MacroRepository macroRepository;
+    private MacroSync macroSync;
+    private volatile String currentMacroName = "default";
+    private final ExecutorService streamExecutor = Executors.newSingleThreadExecutor();
+    private volatile MacroStreamLoader macroStreamLoader; // Null until the macro store is ready
+    private CancellationToken streamLoad; // Remote macro being streamed into a replay, UI thread only
+    private ProgramStream streamingProgram;
+
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            MacroService service = ((MacroService.LocalBinder) binder).getService();
+            macroService = service;
+            service.applySettings(settings.copy());
+            service.setStatusListener(HomeActivity.this::showStatus);
+            showStatus(service.getStatus());
+            service.getModelReady().addListener(HomeActivity.this::onModelReady, HomeActivity.this::runOnUiThread);
+            // A service that outlived an earlier activity may still be capturing
+            if (!service.isCapturing() && !captureRequested) setupScreenCapture();
         }
 
-        static Action fromMap(Map<String, Object> map) {
-            float x = ((Double) map.get("x")).floatValue();
-            float y = ((Double) map.get("y")).floatValue();
-            long timestamp = (Long) map.get("timestamp");
-            return new Action(x, y, timestamp);
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            macroService = null;
         }
-    }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -111,7 +125,6 @@ public class HomeActivity extends AppCompatActivity {
 
         mAuth = FirebaseAuth.getInstance();
         db = FirebaseFirestore.getInstance();
-        aiRecognizer = new AIImageRecognizer();
 
         drawerLayout = findViewById(R.id.drawer_layout);
         navigationView = findViewById(R.id.nav_view);
@@ -122,35 +135,44 @@ public class HomeActivity extends AppCompatActivity {
         saveMacroButton = findViewById(R.id.save_macro_button);
         loadMacroButton = findViewById(R.id.load_macro_button);
         macroArea = findViewById(R.id.macro_area);
+        touchRecorder = new TouchRecorder(TOUCH_BUFFER_SAMPLES,
+                new PathSimplifier(PATH_TOLERANCE_DP * getResources().getDisplayMetrics().density));
 
-        initModel();
-        setupScreenCapture();
+        // Replay unlocks once the service has loaded the model
+        replayButton.setEnabled(false);
+        serviceBound = bindService(new Intent(this, MacroService.class), serviceConnection, Context.BIND_AUTO_CREATE);
+        setupMacroStore();
         setupNavigationDrawer();
         setupMacroControls();
+        // Runs after the first layout pass; only the first macro screen of the process counts
+        macroArea.post(() -> {
+            StartupTimings startupTimings = ((SlashApp) getApplication()).getStartupTimings();
+            startupTimings.mark(StartupTimings.Milestone.MACRO_SCREEN);
+            Log.d(TAG, "Cold start: " + startupTimings);
+        });
     }
 
-    private void initModel() {
+    private void onModelReady() {
+        MacroService service = macroService;
+        if (service == null || isFinishing()) return;
+        SettableFuture<Boolean> modelReady = service.getModelReady();
+        boolean loaded;
         try {
-            MappedByteBuffer modelFile = loadModelFile("stamina_model.tflite");
-            tflite = new Interpreter(modelFile);
-            Log.d(TAG, "TensorFlow Lite model loaded successfully");
-        } catch (IOException e) {
-            Log.e(TAG, "Failed to load TensorFlow Lite model", e);
-            Toast.makeText(this, "Failed to load AI model", Toast.LENGTH_LONG).show();
+            loaded = modelReady.get();
+        } catch (Exception e) {
+            loaded = false;
         }
-    }
-
-    private MappedByteBuffer loadModelFile(String modelPath) throws IOException {
-        AssetFileDescriptor fileDescriptor = getAssets().openFd(modelPath);
-        FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
-        FileChannel fileChannel = inputStream.getChannel();
-        long startOffset = fileDescriptor.getStartOffset();
-        long declaredLength = fileDescriptor.getDeclaredLength();
-        return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
+        if (!loaded) Toast.makeText(this, "Failed to load AI model", Toast.LENGTH_LONG).show();
+        // Without a model the bar-fill stage still classifies, so replay is usable either way
+        replayButton.setEnabled(true);
+        StartupTimings startupTimings = service.getStartupTimings();
+        startupTimings.mark(StartupTimings.Milestone.INTERACTIVE);
+        Log.d(TAG, "Startup: " + startupTimings);
     }
 
     private void setupScreenCapture() {
-        mediaProjectionManager = (MediaProjectionManager) getSystemService(Context.MEDIA_PROJECTION_SERVICE);
+        captureRequested = true;
+        MediaProjectionManager mediaProjectionManager = (MediaProjectionManager) getSystemService(Context.MEDIA_PROJECTION_SERVICE);
         startActivityForResult(mediaProjectionManager.createScreenCaptureIntent(), REQUEST_CODE_SCREEN_CAPTURE);
     }
 
@@ -158,61 +180,24 @@ public class HomeActivity extends AppCompatActivity {
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
         super.onActivityResult(requestCode, resultCode, data);
         if (requestCode == REQUEST_CODE_SCREEN_CAPTURE && resultCode == RESULT_OK) {
-            mediaProjection = mediaProjectionManager.getMediaProjection(resultCode, data);
-            setupVirtualDisplay();
+            // The service must be in the foreground before it may create the projection
+            ContextCompat.startForegroundService(this, new Intent(this, MacroService.class)
+                    .setAction(MacroService.ACTION_START_CAPTURE)
+                    .putExtra(MacroService.EXTRA_RESULT_CODE, resultCode)
+                    .putExtra(MacroService.EXTRA_RESULT_DATA, data));
         }
     }
 
-    private void setupVirtualDisplay() {
-        DisplayMetrics metrics = new DisplayMetrics();
-        getWindowManager().getDefaultDisplay().getMetrics(metrics);
-        int width = metrics.widthPixels;
-        int height = metrics.heightPixels;
-        imageReader = ImageReader.newInstance(width, height, PixelFormat.RGBA_8888, 2);
-        virtualDisplay = mediaProjection.createVirtualDisplay("MacroCapture",
-                width, height, metrics.densityDpi,
-                DisplayManager.VIRTUAL_DISPLAY_FLAG_AUTO_MIRROR,
-                imageReader.getSurface(), null, null);
-    }
-
-    private Bitmap captureScreenArea(int x, int y, int width, int height) {
-        if (imageReader == null) return null;
-        Image image = imageReader.acquireLatestImage();
-        if (image == null) return null;
-        final Image.Plane[] planes = image.getPlanes();
-        final ByteBuffer buffer = planes[0].getBuffer();
-        int pixelStride = planes[0].getPixelStride();
-        int rowStride = planes[0].getRowStride();
-        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-        bitmap.copyPixelsFromBuffer(buffer);
-        image.close();
-        return Bitmap.createBitmap(bitmap, x, y, width, height);
-    }
-
-    private float[] runInference(Bitmap bitmap) {
-        if (tflite == null) return new float[]{0, 0, 0};
-        Bitmap resized = Bitmap.createScaledBitmap(bitmap, INPUT_WIDTH, INPUT_HEIGHT, true);
-        ByteBuffer inputBuffer = convertBitmapToByteBuffer(resized);
-        float[][] output = new float[1][3]; // Assuming 3 classes: full, low, empty
-        tflite.run(inputBuffer, output);
-        return output[0];
+    // Coalesced by the service, so this runs at most a few times a second.
+    private void showStatus(MacroService.Status status) {
+        if (isRecording) return; // Recording owns the status line until it stops
+        macroStatus.setText("Macro Status: " + status);
     }
 
-    private ByteBuffer convertBitmapToByteBuffer(Bitmap bitmap) {
-        ByteBuffer byteBuffer = ByteBuffer.allocateDirect(4 * INPUT_WIDTH * INPUT_HEIGHT * 3);
-        byteBuffer.order(ByteOrder.nativeOrder());
-        int[] intValues = new int[INPUT_WIDTH * INPUT_HEIGHT];
-        bitmap.getPixels(intValues, 0, bitmap.getWidth(), 0, 0, bitmap.getWidth(), bitmap.getHeight());
-        int pixel = 0;
-        for (int i = 0; i < INPUT_WIDTH; ++i) {
-            for (int j = 0; j < INPUT_HEIGHT; ++j) {
-                int val = intValues[pixel++];
-                byteBuffer.putFloat(((val >> 16) & 0xFF) / 255.0f); // R
-                byteBuffer.putFloat(((val >> 8) & 0xFF) / 255.0f);  // G
-                byteBuffer.putFloat((val & 0xFF) / 255.0f);         // B
-            }
-        }
-        return byteBuffer;
+    // Hands the service a snapshot of the current settings.
+    private void applySettings() {
+        MacroService service = macroService;
+        if (service != null) service.applySettings(settings.copy());
     }
 
     private void setupNavigationDrawer() {
@@ -220,6 +205,8 @@ public class HomeActivity extends AppCompatActivity {
             int itemId = item.getItemId();
             if (itemId == R.id.nav_name) showNameDialog();
             else if (itemId == R.id.nav_macro_settings) showSettingsDialog();
+            else if (itemId == R.id.nav_trigger) showTriggerDialog();
+            else if (itemId == R.id.nav_metrics) showMetricsDialog();
             else if (itemId == R.id.nav_sign_out) signOut();
             drawerLayout.closeDrawers();
             return true;
@@ -234,27 +221,47 @@ public class HomeActivity extends AppCompatActivity {
 
         replayButton.setOnClickListener(v -> replayMacroWithMonitoring());
 
+        replayButton.setOnLongClickListener(v -> {
+            MacroService service = macroService;
+            if (service != null && !service.pauseReplay()) service.resumeReplay();
+            return true;
+        });
+
         cropButton.setOnClickListener(v -> startCropping());
 
-        saveMacroButton.setOnClickListener(v -> saveMacroToFirestore());
+        saveMacroButton.setOnClickListener(v -> saveMacro());
 
-        loadMacroButton.setOnClickListener(v -> loadMacroFromFirestore());
+        loadMacroButton.setOnClickListener(v -> loadMacro());
 
         macroArea.setOnTouchListener((v, event) -> {
-            if (isRecording && event.getAction() == MotionEvent.ACTION_DOWN) {
-                float x = event.getX();
-                float y = event.getY();
-                recordedActions.add(new Action(x, y, System.currentTimeMillis()));
-                Toast.makeText(this, "Click recorded at (" + x + ", " + y + ")", Toast.LENGTH_SHORT).show();
-                Log.d(TAG, "Action recorded: x=" + x + ", y=" + y);
-            }
+            if (isRecording) recordTouch(event);
             return true;
         });
     }
 
+    // Called for every touch event while recording, so it must not allocate or show UI.
+    private void recordTouch(MotionEvent event) {
+        byte kind;
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN: kind = Macro.DOWN; break;
+            case MotionEvent.ACTION_MOVE: kind = Macro.MOVE; break;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL: kind = Macro.UP; break;
+            default: return; // Only the first pointer is recorded
+        }
+        // MOVE events batch the samples since the previous frame; event times are uptime millis
+        for (int h = 0, n = event.getHistorySize(); h < n; h++) {
+            touchRecorder.record(Macro.MOVE, event.getHistoricalX(h), event.getHistoricalY(h),
+                    event.getHistoricalEventTime(h) * 1_000_000L);
+        }
+        touchRecorder.record(kind, event.getX(), event.getY(), event.getEventTime() * 1_000_000L);
+        if (kind == Macro.UP) touchRecorder.drainStrokes(recorder);
+    }
+
     private void startRecording() {
         isRecording = true;
-        recordedActions.clear();
+        recorder.clear();
+        touchRecorder.clear();
         macroStatus.setText("Macro Status: Recording");
         recordButton.setText("Stop Recording");
         Log.d(TAG, "Started recording macro");
@@ -262,84 +269,115 @@ public class HomeActivity extends AppCompatActivity {
 
     private void stopRecording() {
         isRecording = false;
-        macroStatus.setText("Macro Status: Idle");
         recordButton.setText("Record Macro");
-        Log.d(TAG, "Stopped recording macro with " + recordedActions.size() + " actions");
+        touchRecorder.drainStrokes(recorder);
+        if (touchRecorder.getCompactionCount() > 0) {
+            Log.d(TAG, "Long strokes filled the touch buffer " + touchRecorder.getCompactionCount() + " times and were simplified");
+        }
+        if (touchRecorder.getDroppedCount() > 0) {
+            Log.w(TAG, "Touch buffer overflowed, dropped " + touchRecorder.getDroppedCount() + " samples");
+        }
+        touchRecorder.clear(); // A stroke still held down is discarded
+        recordedMacro = recorder.build();
+        saveLocalMacro(currentMacroName, recordedMacro);
+        Log.d(TAG, "Stopped recording macro with " + recordedMacro.size() + " actions");
+        MacroService service = macroService;
+        if (service != null) showStatus(service.getStatus());
+        else macroStatus.setText("Macro Status: Idle");
     }
 
     private void replayMacroWithMonitoring() {
-        if (recordedActions.isEmpty()) {
+        MacroService service = macroService;
+        if (service == null || !service.isCapturing()) {
+            Toast.makeText(this, "Screen capture is not running", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (service.isReplayActive() || streamLoad != null) {
+            service.cancelReplay();
+            cancelStreamLoad();
+            return;
+        }
+        MacroStreamLoader loader = macroStreamLoader;
+        if (recordedMacro.isEmpty() && loader == null) {
             Toast.makeText(this, "No macro recorded", Toast.LENGTH_SHORT).show();
             return;
         }
-        if (staminaWidth == 0 || staminaHeight == 0) {
+        if (!settings.hasStaminaArea()) {
             Toast.makeText(this, "Please crop stamina bar area first", Toast.LENGTH_SHORT).show();
             return;
         }
-        macroStatus.setText("Macro Status: Replaying with Monitoring");
-        startMonitoring();
-
-        Thread replayThread = new Thread(() -> {
-            long startTime = System.currentTimeMillis();
-            for (Action action : recordedActions) {
-                if (!macroStatus.getText().toString().contains("Replaying")) break;
-                long elapsed = System.currentTimeMillis() - startTime;
-                long delay = action.timestamp - recordedActions.get(0).timestamp;
-                if (elapsed < delay) {
-                    try {
-                        Thread.sleep(delay - elapsed);
-                    } catch (InterruptedException e) {
-                        Log.e(TAG, "Replay interrupted", e);
-                    }
-                }
-                if (currentState == GameState.STAMINA_LOW || currentState == GameState.STAMINA_EMPTY) {
-                    runOnUiThread(() -> {
-                        Toast.makeText(this, "Stamina low, pausing macro", Toast.LENGTH_SHORT).show();
-                        performLowStaminaAction();
-                    });
-                    break;
-                }
-                runOnUiThread(() -> simulateClick(action.x, action.y));
-            }
-            runOnUiThread(() -> macroStatus.setText("Macro Status: Idle"));
-        });
-        replayThread.start();
+        MacroCompiler compiler = new MacroCompiler()
+                .repeat(replayRepeat)
+                .stopWhen(MacroProgram.mask(GameState.STAMINA_LOW, GameState.STAMINA_EMPTY))
+                .recoverWith(restMacro);
+        if (resumeAfterRest) compiler.resumeWhen(MacroProgram.mask(GameState.STAMINA_FULL));
+        if (recordedMacro.isEmpty()) {
+            streamMacro(service, loader, compiler.compileStream());
+        } else {
+            service.startReplay(compiler.compile(recordedMacro));
+        }
     }
 
-    private void startMonitoring() {
-        Thread monitorThread = new Thread(() -> {
-            while (macroStatus.getText().toString().contains("Replaying")) {
-                Bitmap staminaArea = captureScreenArea(staminaX, staminaY, staminaWidth, staminaHeight);
-                if (staminaArea != null) {
-                    float[] results = runInference(staminaArea);
-                    updateGameState(results);
-                    runOnUiThread(() -> macroStatus.setText("Macro Status: " + currentState.name()));
+    // Fetches the current macro from the cloud a page at a time and starts replaying once the
+    // first page is in, instead of waiting for all of it.
+    private void streamMacro(MacroService service, MacroStreamLoader loader, ProgramStream stream) {
+        String name = currentMacroName;
+        long startNanos = System.nanoTime();
+        streamingProgram = stream;
+        streamLoad = loader.load(name, new MacroStreamLoader.Listener() {
+            @Override
+            public void onPage(int index, int pageCount, Macro page) {
+                stream.append(page);
+                if (index > 0) return;
+                Log.d(TAG, "First page of " + name + " after " + (System.nanoTime() - startNanos) / 1_000_000 + " ms, " + pageCount + " pages");
+                runOnUiThread(() -> {
+                    if (streamingProgram == stream) service.startReplay(stream);
+                });
+            }
+
+            @Override
+            public void onComplete(Macro macro, long version) {
+                stream.finish();
+                Log.d(TAG, "Loaded " + name + " (" + macro.size() + " actions) after " + (System.nanoTime() - startNanos) / 1_000_000 + " ms");
+                runOnUiThread(() -> streamLoaded(stream));
+                if (macro.isEmpty()) {
+                    runOnUiThread(() -> Toast.makeText(HomeActivity.this, "No macro recorded", Toast.LENGTH_SHORT).show());
+                    return;
                 }
+                if (name.equals(currentMacroName) && recordedMacro.isEmpty()) recordedMacro = macro;
+                MacroRepository repository = macroRepository;
+                if (repository == null) return;
                 try {
-                    Thread.sleep(500); // Check every 0.5s
-                } catch (InterruptedException e) {
-                    Log.e(TAG, "Monitor interrupted", e);
+                    repository.saveRemote(name, macro, version);
+                } catch (IOException e) {
+                    Log.e(TAG, "Failed to keep streamed macro " + name, e);
                 }
             }
+
+            @Override
+            public void onFailed(IOException e) {
+                stream.fail(e.getMessage());
+                runOnUiThread(() -> {
+                    streamLoaded(stream);
+                    String message = e instanceof FileNotFoundException ? "No macro recorded" : "Failed to load macro: " + e.getMessage();
+                    Toast.makeText(HomeActivity.this, message, Toast.LENGTH_LONG).show();
+                });
+            }
         });
-        monitorThread.start();
     }
 
-    private void updateGameState(float[] results) {
-        int maxIndex = 0;
-        for (int i = 1; i < results.length; i++) {
-            if (results[i] > results[maxIndex]) maxIndex = i;
-        }
-        switch (maxIndex) {
-            case 0: currentState = GameState.STAMINA_FULL; break;
-            case 1: currentState = GameState.STAMINA_LOW; break;
-            case 2: currentState = GameState.STAMINA_EMPTY; break;
-        }
+    private void streamLoaded(ProgramStream stream) {
+        if (streamingProgram != stream) return;
+        streamLoad = null;
+        streamingProgram = null;
     }
 
-    private void performLowStaminaAction() {
-        simulateClick(200, 200); // Example: Click a "rest" button
-        Log.d(TAG, "Performed low stamina action");
+    private void cancelStreamLoad() {
+        if (streamLoad == null) return;
+        streamLoad.cancel();
+        streamingProgram.fail("Cancelled");
+        streamLoad = null;
+        streamingProgram = null;
     }
 
     private void startCropping() {
@@ -355,12 +393,14 @@ public class HomeActivity extends AppCompatActivity {
 
         builder.setPositiveButton("Crop", (dialog, which) -> {
             try {
-                staminaX = Integer.parseInt(cropX.getText().toString());
-                staminaY = Integer.parseInt(cropY.getText().toString());
-                staminaWidth = Integer.parseInt(cropWidth.getText().toString());
-                staminaHeight = Integer.parseInt(cropHeight.getText().toString());
+                settings.staminaX = Integer.parseInt(cropX.getText().toString());
+                settings.staminaY = Integer.parseInt(cropY.getText().toString());
+                settings.staminaWidth = Integer.parseInt(cropWidth.getText().toString());
+                settings.staminaHeight = Integer.parseInt(cropHeight.getText().toString());
+                applySettings();
                 Toast.makeText(this, "Stamina area cropped", Toast.LENGTH_SHORT).show();
-                Log.d(TAG, "Cropped stamina area at (" + staminaX + ", " + staminaY + ") size " + staminaWidth + "x" + staminaHeight);
+                Log.d(TAG, "Cropped stamina area at (" + settings.staminaX + ", " + settings.staminaY + ") size "
+                        + settings.staminaWidth + "x" + settings.staminaHeight);
             } catch (NumberFormatException e) {
                 Toast.makeText(this, "Invalid cropping values", Toast.LENGTH_SHORT).show();
                 Log.e(TAG, "Cropping failed", e);
@@ -370,59 +410,178 @@ public class HomeActivity extends AppCompatActivity {
         builder.show();
     }
 
-    private void simulateClick(float x, float y) {
-        Toast.makeText(this, "Simulated click at (" + x + ", " + y + ")", Toast.LENGTH_SHORT).show();
-        Log.d(TAG, "Simulated click at (" + x + ", " + y + ")");
+    private void showTriggerDialog() {
+        MacroService service = macroService;
+        if (service == null || !service.isCapturing()) {
+            Toast.makeText(this, "Screen capture is not running", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        View dialogView = getLayoutInflater().inflate(R.layout.crop_preview, null);
+        builder.setTitle("Trigger Icon Area");
+        builder.setView(dialogView);
+
+        EditText cropX = dialogView.findViewById(R.id.crop_x);
+        EditText cropY = dialogView.findViewById(R.id.crop_y);
+        EditText cropWidth = dialogView.findViewById(R.id.crop_width);
+        EditText cropHeight = dialogView.findViewById(R.id.crop_height);
+
+        builder.setPositiveButton("Capture", (dialog, which) -> {
+            try {
+                settings.triggerX = Integer.parseInt(cropX.getText().toString());
+                settings.triggerY = Integer.parseInt(cropY.getText().toString());
+                settings.triggerWidth = Integer.parseInt(cropWidth.getText().toString());
+                settings.triggerHeight = Integer.parseInt(cropHeight.getText().toString());
+                applySettings();
+                service.requestTriggerTemplate();
+            } catch (NumberFormatException e) {
+                Toast.makeText(this, "Invalid trigger values", Toast.LENGTH_SHORT).show();
+            }
+        });
+        builder.setNeutralButton("Clear", (dialog, which) -> service.clearTriggerTemplate());
+        builder.setNegativeButton("Cancel", null);
+        builder.show();
+    }
+
+    private void setupMacroStore() {
+        String uid = mAuth.getCurrentUser().getUid();
+        ioExecutor.execute(() -> {
+            try {
+                MacroRepository repository = new MacroRepository(new File(getFilesDir(), "macros"));
+                Macro current = repository.load(currentMacroName);
+                if (current == null) {
+                    // Single macro file written before named macros existed
+                    File legacyFile = new File(getFilesDir(), "macros/default.slm");
+                    if (legacyFile.exists()) repository.save(currentMacroName, MacroCodec.read(legacyFile));
+                    current = repository.load(currentMacroName);
+                }
+                if (current != null && recordedMacro.isEmpty()) recordedMacro = current;
+                Macro rest = repository.load(REST_MACRO_NAME);
+                if (rest != null && !rest.isEmpty()) restMacro = rest;
+                FirestoreMacroSyncBackend backend = new FirestoreMacroSyncBackend(db, uid);
+                macroSync = new MacroSync(repository, backend, syncExecutor, SYNC_DELAY_MS);
+                macroSync.setCallback(e -> Log.w(TAG, "Macro sync failed, will retry", e));
+                macroSync.start();
+                macroRepository = repository;
+                macroStreamLoader = new MacroStreamLoader(backend, streamExecutor);
+                Log.d(TAG, "Macro store ready with " + repository.list().size() + " macros");
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to open macro store", e);
+            }
+        });
+        loadMacroSettings(uid);
     }
 
-    private void saveMacroToFirestore() {
-        if (recordedActions.isEmpty()) {
+    private void saveLocalMacro(String name, Macro macro) {
+        MacroRepository repository = macroRepository;
+        if (repository == null) return;
+        if (name.equals(REST_MACRO_NAME) && !macro.isEmpty()) restMacro = macro;
+        ioExecutor.execute(() -> {
+            try {
+                repository.save(name, macro);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to save macro " + name, e);
+            }
+        });
+    }
+
+    private void saveMacro() {
+        Macro macro = recordedMacro;
+        if (macro.isEmpty()) {
             Toast.makeText(this, "No macro to save", Toast.LENGTH_SHORT).show();
             return;
         }
-        String uid = mAuth.getCurrentUser().getUid();
-        Map<String, Object> macroData = new HashMap<>();
-        List<Map<String, Object>> actionsList = new ArrayList<>();
-        for (Action action : recordedActions) {
-            actionsList.add(action.toMap());
+        if (macroRepository == null) {
+            Toast.makeText(this, "Macro storage is still loading", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Save Macro As");
+        final EditText input = new EditText(this);
+        input.setText(currentMacroName);
+        builder.setView(input);
+        builder.setPositiveButton("Save", (dialog, which) -> {
+            String name = input.getText().toString().trim();
+            if (name.isEmpty() || name.contains("/")) {
+                Toast.makeText(this, "Invalid macro name", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            currentMacroName = name;
+            saveLocalMacro(name, macro);
+            saveMacroSettings();
+            Toast.makeText(this, "Macro saved", Toast.LENGTH_SHORT).show();
+        });
+        builder.setNegativeButton("Cancel", null);
+        builder.show();
+    }
+
+    private void loadMacro() {
+        MacroRepository repository = macroRepository;
+        if (repository == null) {
+            Toast.makeText(this, "Macro storage is still loading", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        List<MacroRepository.Entry> entries = repository.list();
+        if (entries.isEmpty()) {
+            Toast.makeText(this, "No saved macro found", Toast.LENGTH_SHORT).show();
+            return;
         }
-        macroData.put("actions", actionsList);
-        macroData.put("triggerSensitivity", triggerSensitivity);
-        macroData.put("clickInterval", clickInterval);
-        macroData.put("staminaX", staminaX);
-        macroData.put("staminaY", staminaY);
-        macroData.put("staminaWidth", staminaWidth);
-        macroData.put("staminaHeight", staminaHeight);
-        db.collection("users").document(uid).collection("macros").document("default")
-                .set(macroData)
-                .addOnSuccessListener(aVoid -> Toast.makeText(this, "Macro saved", Toast.LENGTH_SHORT).show())
-                .addOnFailureListener(e -> Toast.makeText(this, "Failed to save macro: " + e.getMessage(), Toast.LENGTH_LONG).show());
+        String[] labels = new String[entries.size()];
+        for (int i = 0; i < labels.length; i++) {
+            MacroRepository.Entry entry = entries.get(i);
+            labels[i] = entry.name + " (" + entry.actionCount + " actions" + (entry.isDirty() ? ", not synced" : "") + ")";
+        }
+        new AlertDialog.Builder(this)
+                .setTitle("Load Macro")
+                .setItems(labels, (dialog, which) -> {
+                    String name = entries.get(which).name;
+                    ioExecutor.execute(() -> {
+                        try {
+                            Macro macro = repository.load(name);
+                            if (macro == null) return;
+                            recordedMacro = macro;
+                            currentMacroName = name;
+                            if (name.equals(REST_MACRO_NAME) && !macro.isEmpty()) restMacro = macro;
+                            runOnUiThread(() -> Toast.makeText(this, "Macro loaded", Toast.LENGTH_SHORT).show());
+                        } catch (IOException e) {
+                            Log.e(TAG, "Failed to load macro " + name, e);
+                            runOnUiThread(() -> Toast.makeText(this, "Failed to load macro: " + e.getMessage(), Toast.LENGTH_LONG).show());
+                        }
+                    });
+                })
+                .show();
     }
 
-    private void loadMacroFromFirestore() {
+    private void saveMacroSettings() {
         String uid = mAuth.getCurrentUser().getUid();
-        db.collection("users").document(uid).collection("macros").document("default")
-                .get()
+        Map<String, Object> values = new HashMap<>();
+        values.put("triggerSensitivity", settings.triggerSensitivity);
+        values.put("clickInterval", settings.clickInterval);
+        values.put("staminaX", settings.staminaX);
+        values.put("staminaY", settings.staminaY);
+        values.put("staminaWidth", settings.staminaWidth);
+        values.put("staminaHeight", settings.staminaHeight);
+        Map<String, Object> profileData = new HashMap<>();
+        profileData.put("macroSettings", values);
+        db.collection("users").document(uid).set(profileData, com.google.firebase.firestore.SetOptions.merge())
+                .addOnFailureListener(e -> Log.w(TAG, "Failed to save macro settings", e));
+    }
+
+    private void loadMacroSettings(String uid) {
+        db.collection("users").document(uid).get()
                 .addOnSuccessListener(document -> {
-                    if (document.exists()) {
-                        recordedActions.clear();
-                        @SuppressWarnings("unchecked")
-                        List<Map<String, Object>> actions = (List<Map<String, Object>>) document.get("actions");
-                        for (Map<String, Object> actionMap : actions) {
-                            recordedActions.add(Action.fromMap(actionMap));
-                        }
-                        triggerSensitivity = document.getDouble("triggerSensitivity").floatValue();
-                        clickInterval = document.getLong("clickInterval");
-                        staminaX = document.getLong("staminaX").intValue();
-                        staminaY = document.getLong("staminaY").intValue();
-                        staminaWidth = document.getLong("staminaWidth").intValue();
-                        staminaHeight = document.getLong("staminaHeight").intValue();
-                        Toast.makeText(this, "Macro loaded", Toast.LENGTH_SHORT).show();
-                    } else {
-                        Toast.makeText(this, "No saved macro found", Toast.LENGTH_SHORT).show();
-                    }
+                    @SuppressWarnings("unchecked")
+                    Map<String, Object> values = (Map<String, Object>) document.get("macroSettings");
+                    if (values == null) return;
+                    settings.triggerSensitivity = ((Number) values.get("triggerSensitivity")).floatValue();
+                    settings.clickInterval = ((Number) values.get("clickInterval")).longValue();
+                    settings.staminaX = ((Number) values.get("staminaX")).intValue();
+                    settings.staminaY = ((Number) values.get("staminaY")).intValue();
+                    settings.staminaWidth = ((Number) values.get("staminaWidth")).intValue();
+                    settings.staminaHeight = ((Number) values.get("staminaHeight")).intValue();
+                    applySettings();
                 })
-                .addOnFailureListener(e -> Toast.makeText(this, "Failed to load macro: " + e.getMessage(), Toast.LENGTH_LONG).show());
+                .addOnFailureListener(e -> Log.w(TAG, "Failed to load macro settings", e));
     }
 
     private void showNameDialog() {
@@ -447,13 +606,55 @@ public class HomeActivity extends AppCompatActivity {
 
         EditText sensitivityInput = dialogView.findViewById(R.id.trigger_sensitivity);
         EditText intervalInput = dialogView.findViewById(R.id.click_interval);
-        sensitivityInput.setText(String.valueOf(triggerSensitivity));
-        intervalInput.setText(String.valueOf(clickInterval));
+        EditText monitorFpsInput = dialogView.findViewById(R.id.monitor_fps);
+        EditText fastConfidenceInput = dialogView.findViewById(R.id.fast_classifier_confidence);
+        EditText threadsInput = dialogView.findViewById(R.id.inference_threads);
+        CheckBox xnnpackInput = dialogView.findViewById(R.id.use_xnnpack);
+        EditText warmupInput = dialogView.findViewById(R.id.model_warmup_runs);
+        EditText repeatInput = dialogView.findViewById(R.id.replay_repeat);
+        CheckBox resumeInput = dialogView.findViewById(R.id.resume_after_rest);
+        CheckBox traceInput = dialogView.findViewById(R.id.dump_frame_trace);
+        EditText captureScaleInput = dialogView.findViewById(R.id.capture_scale);
+        CheckBox watchedAreaInput = dialogView.findViewById(R.id.crop_to_watched_area);
+        sensitivityInput.setText(String.valueOf(settings.triggerSensitivity));
+        intervalInput.setText(String.valueOf(settings.clickInterval));
+        monitorFpsInput.setText(String.valueOf(settings.monitorFps));
+        fastConfidenceInput.setText(String.valueOf(settings.fastClassifierConfidence));
+        threadsInput.setText(String.valueOf(settings.inferenceThreads));
+        xnnpackInput.setChecked(settings.useXnnpack);
+        warmupInput.setText(String.valueOf(settings.modelWarmupRuns));
+        repeatInput.setText(String.valueOf(replayRepeat));
+        resumeInput.setChecked(resumeAfterRest);
+        traceInput.setChecked(settings.dumpFrameTrace);
+        captureScaleInput.setText(String.valueOf(settings.captureScale));
+        watchedAreaInput.setChecked(settings.cropToWatchedArea);
 
         builder.setPositiveButton("Save", (dialog, which) -> {
             try {
-                triggerSensitivity = Float.parseFloat(sensitivityInput.getText().toString());
-                clickInterval = Long.parseLong(intervalInput.getText().toString());
+                // Parse into a copy so invalid input leaves the current settings alone
+                MonitorSettings edited = settings.copy();
+                edited.triggerSensitivity = Float.parseFloat(sensitivityInput.getText().toString());
+                edited.clickInterval = Long.parseLong(intervalInput.getText().toString());
+                edited.monitorFps = Float.parseFloat(monitorFpsInput.getText().toString());
+                if (edited.monitorFps <= 0) throw new NumberFormatException("Monitor FPS must be positive");
+                edited.fastClassifierConfidence = Float.parseFloat(fastConfidenceInput.getText().toString());
+                edited.inferenceThreads = Integer.parseInt(threadsInput.getText().toString());
+                if (edited.inferenceThreads <= 0) throw new NumberFormatException("Inference threads must be positive");
+                edited.useXnnpack = xnnpackInput.isChecked();
+                edited.modelWarmupRuns = Integer.parseInt(warmupInput.getText().toString());
+                if (edited.modelWarmupRuns < 0) throw new NumberFormatException("Warm-up runs must not be negative");
+                int repeat = Integer.parseInt(repeatInput.getText().toString());
+                if (repeat < 0) throw new NumberFormatException("Replay repeat must not be negative");
+                edited.dumpFrameTrace = traceInput.isChecked();
+                edited.captureScale = Float.parseFloat(captureScaleInput.getText().toString());
+                if (!(edited.captureScale > 0 && edited.captureScale <= 1)) {
+                    throw new NumberFormatException("Capture scale must be in (0, 1]");
+                }
+                edited.cropToWatchedArea = watchedAreaInput.isChecked();
+                replayRepeat = repeat;
+                resumeAfterRest = resumeInput.isChecked();
+                settings = edited;
+                applySettings();
                 Toast.makeText(this, "Settings saved", Toast.LENGTH_SHORT).show();
             } catch (NumberFormatException e) {
                 Toast.makeText(this, "Invalid settings values", Toast.LENGTH_SHORT).show();
@@ -463,6 +664,33 @@ public class HomeActivity extends AppCompatActivity {
         builder.show();
     }
 
+    private void showMetricsDialog() {
+        MacroService service = macroService;
+        if (service == null) return;
+        service.snapshotCounters();
+        PipelineMetrics metrics = service.getMetrics();
+        AlertDialog.Builder builder = new AlertDialog.Builder(this);
+        builder.setTitle("Pipeline Metrics");
+        builder.setMessage(metrics.summary() + "\n" + service.describeClassifiers() + "\n\nStartup: " + service.getStartupTimings());
+        builder.setPositiveButton("Export", (dialog, which) -> exportMetrics(metrics));
+        builder.setNeutralButton("Reset", (dialog, which) -> service.resetMetrics());
+        builder.setNegativeButton("Close", null);
+        builder.show();
+    }
+
+    private void exportMetrics(PipelineMetrics metrics) {
+        File file = new File(getFilesDir(), "metrics-" + System.currentTimeMillis() + ".txt");
+        ioExecutor.execute(() -> {
+            try (Writer out = new FileWriter(file)) {
+                metrics.writeTo(out, System.currentTimeMillis());
+                runOnUiThread(() -> Toast.makeText(this, "Metrics written to " + file.getName(), Toast.LENGTH_SHORT).show());
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to export metrics", e);
+                runOnUiThread(() -> Toast.makeText(this, "Failed to export metrics", Toast.LENGTH_SHORT).show());
+            }
+        });
+    }
+
     private String getCurrentUserName() {
         return "";
     }
@@ -485,7 +713,16 @@ public class HomeActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        if (virtualDisplay != null) virtualDisplay.release();
-        if (mediaProjection != null) mediaProjection.stop();
-    }
+        MacroService service = macroService;
+        if (service != null) {
+            service.setStatusListener(null);
+            // Leaving for good; a running replay keeps the service in the foreground until it ends
+            if (isFinishing() && !service.isReplayActive()) stopService(new Intent(this, MacroService.class));
+        }
+        if (serviceBound) unbindService(serviceConnection);
+        macroService = null;
+        ioExecutor.shutdown();
+        syncExecutor.shutdown();
+        streamExecutor.shutdown(); // A streaming replay keeps loading after the activity is gone
     }
+}
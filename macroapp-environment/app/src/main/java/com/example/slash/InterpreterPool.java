@@ -0,0 +1,82 @@
+package com.example.slash;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * One interpreter per model asset, all created with the same thread count and XNNPACK setting.
+ * Models load on first use and stay loaded until the settings change or the pool is closed.
+ * Interpreters are not thread-safe, so the pool and its models belong to the inference thread.
+ */
+public final class InterpreterPool implements Closeable {
+    private static final String TAG = "InterpreterPool";
+
+    private final AssetManager assets;
+    private final int maxBatch;
+    private final Map<String, TfliteBatchModel> models = new HashMap<>();
+    private int numThreads;
+    private boolean useXnnpack;
+
+    public InterpreterPool(AssetManager assets, int maxBatch, int numThreads, boolean useXnnpack) {
+        this.assets = assets;
+        this.maxBatch = maxBatch;
+        this.numThreads = numThreads;
+        this.useXnnpack = useXnnpack;
+    }
+
+    public TfliteBatchModel get(String assetPath) throws IOException {
+        TfliteBatchModel model = models.get(assetPath);
+        if (model == null) {
+            Interpreter.Options options = new Interpreter.Options()
+                    .setNumThreads(numThreads)
+                    .setUseXNNPACK(useXnnpack);
+            model = new TfliteBatchModel(new Interpreter(map(assetPath), options), maxBatch);
+            models.put(assetPath, model);
+            Log.d(TAG, "Loaded " + assetPath + " with " + numThreads + " threads, XNNPACK " + useXnnpack);
+        }
+        return model;
+    }
+
+    /** Applies new settings, closing every loaded interpreter if they changed. */
+    public boolean configure(int numThreads, boolean useXnnpack) {
+        if (numThreads == this.numThreads && useXnnpack == this.useXnnpack) return false;
+        close();
+        this.numThreads = numThreads;
+        this.useXnnpack = useXnnpack;
+        return true;
+    }
+
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    public boolean isUsingXnnpack() {
+        return useXnnpack;
+    }
+
+    @Override
+    public void close() {
+        for (TfliteBatchModel model : models.values()) model.close();
+        models.clear();
+    }
+
+    private MappedByteBuffer map(String assetPath) throws IOException {
+        try (AssetFileDescriptor fileDescriptor = assets.openFd(assetPath);
+             FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor())) {
+            FileChannel fileChannel = inputStream.getChannel();
+            return fileChannel.map(FileChannel.MapMode.READ_ONLY,
+                    fileDescriptor.getStartOffset(), fileDescriptor.getDeclaredLength());
+        }
+    }
+}
@@ -0,0 +1,830 @@
+package com.example.slash;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.graphics.PixelFormat;
+import android.hardware.display.DisplayManager;
+import android.hardware.display.VirtualDisplay;
+import android.media.Image;
+import android.media.ImageReader;
+import android.media.projection.MediaProjection;
+import android.media.projection.MediaProjectionManager;
+import android.os.Binder;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Looper;
+import android.util.DisplayMetrics;
+import android.util.Log;
+import android.view.WindowManager;
+import android.widget.Toast;
+import androidx.core.app.NotificationCompat;
+import com.example.slash.core.AIImageRecognizer;
+import com.example.slash.core.BarFillClassifier;
+import com.example.slash.core.BatchInference;
+import com.example.slash.core.CaptureScheduler;
+import com.example.slash.core.CaptureTransform;
+import com.example.slash.core.ClassifierCascade;
+import com.example.slash.core.FrameBus;
+import com.example.slash.core.FrameTraceWriter;
+import com.example.slash.core.GameState;
+import com.example.slash.core.InferenceCache;
+import com.example.slash.core.Macro;
+import com.example.slash.core.MacroProgram;
+import com.example.slash.core.NanoClock;
+import com.example.slash.core.PipelineMetrics;
+import com.example.slash.core.ProgramStream;
+import com.example.slash.core.ReplayEngine;
+import com.example.slash.core.RoiExtractor;
+import com.example.slash.core.RoiFrame;
+import com.example.slash.core.RoiFramePool;
+import com.example.slash.core.SettableFuture;
+import com.example.slash.core.SharedFrame;
+import com.example.slash.core.StartupTimings;
+import com.example.slash.core.StatePipeline;
+import com.example.slash.core.StatusCoalescer;
+import com.example.slash.core.TapArbiter;
+import com.example.slash.core.TemplateMatcher;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Foreground service that owns screen capture, state detection and macro replay, so they keep
+ * running while the activity is recreated or in the background. The capture thread copies the
+ * area all watchers need out of each image once and publishes it on a {@link FrameBus}; the
+ * stamina watcher classifies it on the inference executor while the trigger watcher searches it
+ * on the shared session pool. Their taps and the replay's meet in a {@link TapArbiter}. None of
+ * them waits on the UI. Status reaches the activity through a {@link StatusCoalescer}, so a burst of
+ * state changes costs the UI thread a single update.
+ */
+public class MacroService extends Service {
+    private static final String TAG = "MacroService";
+    static final String ACTION_START_CAPTURE = "com.example.slash.action.START_CAPTURE";
+    static final String ACTION_STOP = "com.example.slash.action.STOP";
+    static final String EXTRA_RESULT_CODE = "resultCode";
+    static final String EXTRA_RESULT_DATA = "resultData";
+    private static final String CHANNEL_ID = "macro";
+    private static final int NOTIFICATION_ID = 1;
+    private static final long STATUS_INTERVAL_NS = TimeUnit.MILLISECONDS.toNanos(100); // At most 10 status updates per second
+    private static final String STAMINA_MODEL = "stamina_model.tflite";
+    private static final int MAX_INFERENCE_BATCH = 4; // Watched regions classified per model run
+    private static final int NUM_CLASSES = 3; // full, low, empty
+    private static final int INFERENCE_CACHE_SIZE = 32;
+    private static final float MONITOR_IDLE_FPS = 2f; // Sampling rate once the stamina bar is stable
+    private static final int FINGERPRINT_MAX_DISTANCE = 1; // Bits that may differ for two ROIs to count as the same
+    private static final int FINGERPRINT_MAX_LUMA_DELTA = 16; // 1/16 of a luma level; a bar drained by one column moves more
+    private static final long TEMPLATE_CAPTURE_DELAY_NS = TimeUnit.MILLISECONDS.toNanos(500); // Let the dialog close first
+    private static final int MATCH_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    private static final int SESSION_THREADS = 2; // Shared by watchers that are not tied to a thread of their own
+    private static final long TAP_HOLD_NS = TimeUnit.MILLISECONDS.toNanos(300); // Screen stays with the last tapper this long
+    private static final int PRIORITY_MACRO = 0;
+    private static final int PRIORITY_TRIGGER = 10; // Popups are cleared between the macro's strokes
+
+    /** What the service is doing; a new instance is posted on every change. */
+    public static final class Status {
+        public final boolean capturing;
+        public final ReplayEngine.State replayState;
+        public final GameState gameState;
+
+        Status(boolean capturing, ReplayEngine.State replayState, GameState gameState) {
+            this.capturing = capturing;
+            this.replayState = replayState;
+            this.gameState = gameState;
+        }
+
+        @Override
+        public String toString() {
+            switch (replayState) {
+                case RUNNING: return "Replaying, " + gameState.name();
+                case PAUSED: return "Paused";
+                default: return capturing ? "Watching, " + gameState.name() : "Idle";
+            }
+        }
+    }
+
+    public final class LocalBinder extends Binder {
+        public MacroService getService() {
+            return MacroService.this;
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+    private Handler mainHandler;
+    private StatusCoalescer<Status> statusCoalescer;
+    private volatile StatusCoalescer.Sink<Status> statusListener;
+    private String notificationText;
+    private volatile MonitorSettings settings = new MonitorSettings();
+    private AIImageRecognizer aiRecognizer;
+
+    // TensorFlow Lite
+    private InterpreterPool interpreterPool;
+    private volatile BatchInference staminaModel;
+    private final SettableFuture<Boolean> modelReady = new SettableFuture<>(); // Whether the model loaded
+    private final RoiFrame[] singleFrame = new RoiFrame[1];
+    private final InferenceCache inferenceCache = new InferenceCache(INFERENCE_CACHE_SIZE, NUM_CLASSES, FINGERPRINT_MAX_DISTANCE, FINGERPRINT_MAX_LUMA_DELTA);
+    private final ClassifierCascade classifierCascade = new ClassifierCascade(NanoClock.SYSTEM);
+    private final StatePipeline statePipeline = new StatePipeline(classifierCascade, inferenceCache, MAX_INFERENCE_BATCH, NUM_CLASSES, NanoClock.SYSTEM);
+
+    // Screen Capture
+    private volatile MediaProjection mediaProjection; // Set and cleared on the main thread
+    private VirtualDisplay virtualDisplay;
+    private volatile ImageReader imageReader; // Swapped on the capture thread
+    private HandlerThread captureThread;
+    private Handler captureHandler;
+    private int screenDensityDpi;
+    private volatile CaptureTransform captureTransform;
+    private final CaptureTransform.Region watchedRegion = new CaptureTransform.Region(); // Capture thread only
+    private final SharedFrame.Pool sharedFrames = new SharedFrame.Pool(4);
+    private final RoiFramePool framePool = new RoiFramePool(4);
+    private final ExecutorService inferenceExecutor = Executors.newSingleThreadExecutor();
+    private CaptureScheduler<SharedFrame> captureScheduler;
+    private volatile long templateRequestedAt; // nanoTime of a pending trigger template capture, 0 if none
+    private FrameTraceWriter frameTrace; // Open while monitoring with dumpFrameTrace set
+
+    // Watch sessions
+    private final ExecutorService sessionPool = Executors.newFixedThreadPool(SESSION_THREADS);
+    private final FrameBus frameBus = new FrameBus(sessionPool);
+    private final AtomicBoolean stateChanged = new AtomicBoolean(); // Set by watchers, read by the capture scheduler
+    private final TapArbiter tapArbiter = new TapArbiter(this::simulateTouch, TAP_HOLD_NS, NanoClock.SYSTEM);
+    private final TapArbiter.Lane replayLane = tapArbiter.lane("macro", PRIORITY_MACRO);
+    private final TapArbiter.Lane triggerLane = tapArbiter.lane("trigger", PRIORITY_TRIGGER);
+    private final ExecutorService matchExecutor = Executors.newFixedThreadPool(MATCH_THREADS);
+
+    // Replay
+    private final ExecutorService replayExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "MacroReplay");
+        thread.setPriority(Thread.MAX_PRIORITY);
+        return thread;
+    });
+    private ReplayEngine replayEngine;
+    private final Object replayLock = new Object(); // Starting a replay vs. the last one's end
+
+    // Metrics
+    private final PipelineMetrics metrics = new PipelineMetrics();
+    private StartupTimings startupTimings; // The process's, so model times count from cold start
+
+    // Reads the stamina bar and drives the game state. Runs on the inference executor, which owns
+    // the interpreters and the frame trace.
+    private final class StaminaWatcher implements FrameBus.Subscriber {
+        private final CaptureTransform.Region watched = new CaptureTransform.Region(); // Capture thread only
+        private final CaptureTransform.Region region = new CaptureTransform.Region();
+        private final CaptureTransform.Region traceRegion = new CaptureTransform.Region();
+        private boolean sawFrame; // Spares every later frame the atomic read in mark()
+
+        @Override
+        public void addWatchedArea(CaptureTransform transform, CaptureTransform.Region out) {
+            out.union(staminaArea(settings, transform, watched));
+        }
+
+        @Override
+        public void onFrame(SharedFrame frame) {
+            if (!sawFrame) {
+                sawFrame = true;
+                startupTimings.mark(StartupTimings.Milestone.FIRST_FRAME);
+            }
+            RoiFrame stamina = framePool.acquire();
+            try {
+                long start = System.nanoTime();
+                if (!frame.cut(staminaArea(settings, frame.getTransform(), region), stamina)) return;
+                metrics.histogram(PipelineMetrics.Stage.CROP).recordSince(start);
+                if (frameTrace != null) appendFrameTrace(frame, stamina);
+                statePipeline.submit(stamina); // Transitions reach onStateChanged from here
+                statePipeline.flush();
+                metrics.histogram(PipelineMetrics.Stage.FRAME_TO_STATE).record(System.nanoTime() - frame.getTimestampNanos());
+            } finally {
+                framePool.release(stamina);
+            }
+        }
+
+        private void appendFrameTrace(SharedFrame frame, RoiFrame stamina) {
+            RoiFrame trigger = null;
+            try {
+                frameTrace.append(FrameTraceWriter.REGION_STAMINA, stamina);
+                if (aiRecognizer.hasTemplate()) {
+                    trigger = framePool.acquire();
+                    if (frame.cut(triggerSearchArea(settings, frame.getTransform(), traceRegion), trigger)) {
+                        frameTrace.append(FrameTraceWriter.REGION_TRIGGER, trigger);
+                    }
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to write frame trace, stopping it", e);
+                closeFrameTrace();
+            } finally {
+                framePool.release(trigger);
+            }
+        }
+    }
+
+    // Taps the trigger icon whenever it shows up. Runs on the session pool, one frame at a time.
+    private final class TriggerWatcher implements FrameBus.Subscriber {
+        private final CaptureTransform.Region watched = new CaptureTransform.Region(); // Capture thread only
+        private final CaptureTransform.Region region = new CaptureTransform.Region();
+        private final RoiFrame searchArea = new RoiFrame();
+        private final TemplateMatcher.Match match = new TemplateMatcher.Match();
+        private long lastTapNanos;
+
+        @Override
+        public void addWatchedArea(CaptureTransform transform, CaptureTransform.Region out) {
+            if (aiRecognizer.hasTemplate()) out.union(triggerSearchArea(settings, transform, watched));
+        }
+
+        @Override
+        public void onFrame(SharedFrame frame) {
+            if (!aiRecognizer.hasTemplate()) return;
+            long now = System.nanoTime();
+            MonitorSettings s = settings;
+            if (now - lastTapNanos < TimeUnit.MILLISECONDS.toNanos(s.clickInterval)) return;
+            CaptureTransform transform = frame.getTransform();
+            if (!frame.cut(triggerSearchArea(s, transform, region), searchArea)) return;
+            boolean found;
+            try {
+                found = aiRecognizer.find(searchArea, s.triggerSensitivity, match);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                metrics.histogram(PipelineMetrics.Stage.TRIGGER_MATCH).recordSince(now);
+            }
+            if (!found) return;
+            Log.d(TAG, "Trigger matched with score " + match.score);
+            // The cut starts where the search area meets the shared frame
+            float x = Math.max(region.x, frame.getOriginX()) + match.centerX();
+            float y = Math.max(region.y, frame.getOriginY()) + match.centerY();
+            // Turned away while the macro is mid-stroke; the next frame tries again
+            if (!triggerLane.offer(Macro.TAP, transform.toScreenX(x), transform.toScreenY(y))) return;
+            lastTapNanos = now;
+            metrics.increment(PipelineMetrics.Counter.TRIGGER_TAPS);
+        }
+    }
+
+    private static CaptureTransform.Region staminaArea(MonitorSettings s, CaptureTransform transform,
+                                                       CaptureTransform.Region out) {
+        return transform.toCapture(out.set(s.staminaX, s.staminaY, s.staminaWidth, s.staminaHeight), out);
+    }
+
+    // The icon's own area plus one icon size around it.
+    private static CaptureTransform.Region triggerSearchArea(MonitorSettings s, CaptureTransform transform,
+                                                             CaptureTransform.Region out) {
+        out.set(s.triggerX - s.triggerWidth, s.triggerY - s.triggerHeight, s.triggerWidth * 3, s.triggerHeight * 3);
+        return transform.toCapture(out, out);
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        startupTimings = ((SlashApp) getApplication()).getStartupTimings();
+        mainHandler = new Handler(Looper.getMainLooper());
+        statusCoalescer = new StatusCoalescer<>(
+                (task, delayNanos) -> mainHandler.postDelayed(task, TimeUnit.NANOSECONDS.toMillis(delayNanos)),
+                STATUS_INTERVAL_NS, NanoClock.SYSTEM);
+        statusCoalescer.setSink(this::onStatus);
+        aiRecognizer = new AIImageRecognizer(matchExecutor, MATCH_THREADS);
+        createNotificationChannel();
+        initModel();
+        setupClassifierCascade();
+        replayEngine = new ReplayEngine(replayLane, statePipeline::getState, this::onReplayEnded,
+                NanoClock.SYSTEM, replayExecutor);
+        statePipeline.getTracker().addListener(this::onStateChanged);
+        frameBus.subscribe("stamina", new StaminaWatcher(), inferenceExecutor);
+        frameBus.subscribe("trigger", new TriggerWatcher());
+        replayEngine.setLatenessHistogram(metrics.histogram(PipelineMetrics.Stage.REPLAY_LATENESS));
+        postStatus();
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        String action = intent != null ? intent.getAction() : null;
+        if (ACTION_STOP.equals(action)) {
+            stopCapture();
+            stopSelf();
+        } else if (ACTION_START_CAPTURE.equals(action) && mediaProjection == null) {
+            // The projection may only be created once the service is in the foreground
+            Notification notification = buildNotification(getStatus().toString());
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                startForeground(NOTIFICATION_ID, notification, ServiceInfo.FOREGROUND_SERVICE_TYPE_MEDIA_PROJECTION);
+            } else {
+                startForeground(NOTIFICATION_ID, notification);
+            }
+            MediaProjectionManager manager = (MediaProjectionManager) getSystemService(Context.MEDIA_PROJECTION_SERVICE);
+            mediaProjection = manager.getMediaProjection(intent.getIntExtra(EXTRA_RESULT_CODE, 0),
+                    intent.getParcelableExtra(EXTRA_RESULT_DATA));
+            if (mediaProjection == null) {
+                Log.e(TAG, "Screen capture permission was not granted");
+                stopForeground(true);
+                stopSelf();
+            } else {
+                mediaProjection.registerCallback(new MediaProjection.Callback() {
+                    @Override
+                    public void onStop() {
+                        Log.d(TAG, "Screen capture stopped");
+                        stopCapture();
+                        stopSelf();
+                    }
+                }, mainHandler);
+                setupVirtualDisplay();
+                postStatus();
+            }
+        }
+        // A projection cannot outlive the process, so there is nothing to restart with
+        return START_NOT_STICKY;
+    }
+
+    // Loads and warms the model on the inference executor; replay unlocks once that is done.
+    private void initModel() {
+        MonitorSettings current = settings;
+        interpreterPool = new InterpreterPool(getAssets(), MAX_INFERENCE_BATCH, current.inferenceThreads, current.useXnnpack);
+        inferenceExecutor.execute(() -> modelReady.set(loadModels()));
+    }
+
+    // Runs on the inference executor.
+    private boolean loadModels() {
+        try {
+            long start = System.nanoTime();
+            TfliteBatchModel model = interpreterPool.get(STAMINA_MODEL);
+            BatchInference inference = new BatchInference(model, model.createPreprocessor(), NanoClock.SYSTEM);
+            startupTimings.mark(StartupTimings.Milestone.MODEL_LOADED);
+            long loaded = System.nanoTime();
+            inference.warmUp(settings.modelWarmupRuns, 1);
+            startupTimings.mark(StartupTimings.Milestone.MODEL_WARMED);
+            inference.setMetrics(metrics);
+            staminaModel = inference;
+            statePipeline.setModel(inference);
+            Log.d(TAG, "TensorFlow Lite model loaded in " + TimeUnit.NANOSECONDS.toMillis(loaded - start)
+                    + "ms, warmed up in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - loaded) + "ms");
+            return true;
+        } catch (IOException | RuntimeException e) {
+            // The interpreter rejects unusable models with runtime exceptions
+            Log.e(TAG, "Failed to load TensorFlow Lite model", e);
+            staminaModel = null;
+            statePipeline.setModel(null);
+            return false;
+        }
+    }
+
+    private void setupClassifierCascade() {
+        classifierCascade
+                .addStage("bar-fill", new BarFillClassifier(), settings.fastClassifierConfidence)
+                .addStage("tflite", this::classifyWithModel, 0f);
+        statePipeline.setMetrics(metrics);
+        statePipeline.setStartupTimings(startupTimings);
+        statePipeline.getTracker().setLatencyHistogram(metrics.histogram(PipelineMetrics.Stage.STATE_DETECTION));
+    }
+
+    // Runs on the inference executor as soon as the tracker is sure of a new state, so a waiting
+    // replay checks it right away instead of at its next action.
+    private void onStateChanged(GameState from, GameState to, long latencyNanos) {
+        Log.d(TAG, "State " + from + " -> " + to + " after " + TimeUnit.NANOSECONDS.toMillis(latencyNanos) + " ms");
+        replayEngine.stateChanged();
+        stateChanged.set(true);
+        postStatus();
+    }
+
+    // The frame path batches this stage itself; this covers single-ROI callers of the cascade.
+    private float classifyWithModel(RoiFrame frame, float[] scores) {
+        BatchInference model = staminaModel;
+        if (model == null) return 0;
+        singleFrame[0] = frame;
+        model.classify(singleFrame, 1, scores);
+        singleFrame[0] = null;
+        float confidence = 0;
+        for (int i = 0; i < NUM_CLASSES; i++) confidence = Math.max(confidence, scores[i]);
+        return confidence;
+    }
+
+    /** Completes with whether the model loaded; replay works without it, on the bar-fill stage alone. */
+    public SettableFuture<Boolean> getModelReady() {
+        return modelReady;
+    }
+
+    /** Takes over {@code newSettings}, which the caller must not change afterwards. */
+    public void applySettings(MonitorSettings newSettings) {
+        MonitorSettings old = settings;
+        settings = newSettings;
+        classifierCascade.setMinConfidence(0, newSettings.fastClassifierConfidence);
+        if (!newSettings.sameStaminaArea(old)) inferenceExecutor.execute(inferenceCache::clear);
+        if (newSettings.captureScale != old.captureScale && captureHandler != null) {
+            captureHandler.post(() -> resizeCapture(newSettings.captureScale));
+        }
+        if (newSettings.inferenceThreads != old.inferenceThreads || newSettings.useXnnpack != old.useXnnpack) {
+            // Interpreters belong to the inference executor; rebuild them between frames
+            inferenceExecutor.execute(() -> {
+                if (interpreterPool.configure(newSettings.inferenceThreads, newSettings.useXnnpack) && !loadModels()) {
+                    showToast("Failed to load AI model", Toast.LENGTH_LONG);
+                }
+            });
+        }
+    }
+
+    /** Cuts a new trigger template from the trigger area of the current settings once the UI has settled. */
+    public void requestTriggerTemplate() {
+        templateRequestedAt = System.nanoTime(); // Picked up by the capture thread
+    }
+
+    public void clearTriggerTemplate() {
+        aiRecognizer.clearTemplate();
+    }
+
+    public boolean isCapturing() {
+        return mediaProjection != null;
+    }
+
+    private void setupVirtualDisplay() {
+        DisplayMetrics metrics = new DisplayMetrics();
+        ((WindowManager) getSystemService(Context.WINDOW_SERVICE)).getDefaultDisplay().getRealMetrics(metrics);
+        screenDensityDpi = metrics.densityDpi;
+        CaptureTransform transform = new CaptureTransform(metrics.widthPixels, metrics.heightPixels, settings.captureScale);
+        captureTransform = transform;
+        captureThread = new HandlerThread("MacroCapture");
+        captureThread.start();
+        captureHandler = new Handler(captureThread.getLooper());
+        captureScheduler = new CaptureScheduler<>(new CaptureScheduler.FrameSource<SharedFrame>() {
+            @Override
+            public SharedFrame acquireLatest() {
+                return captureFrame();
+            }
+
+            @Override
+            public void discardLatest() {
+                ImageReader reader = imageReader;
+                if (reader == null) return;
+                Image image = reader.acquireLatestImage();
+                if (image != null) image.close();
+            }
+
+            @Override
+            public void release(SharedFrame frame) {
+                frame.release();
+            }
+        }, this::publishFrame, Runnable::run, NanoClock.SYSTEM); // Publishing is cheap; the watchers do the work
+        imageReader = newImageReader(transform);
+        virtualDisplay = mediaProjection.createVirtualDisplay("MacroCapture",
+                transform.getCaptureWidth(), transform.getCaptureHeight(), captureDensityDpi(transform),
+                DisplayManager.VIRTUAL_DISPLAY_FLAG_AUTO_MIRROR,
+                imageReader.getSurface(), null, null);
+        Log.d(TAG, "Capturing " + transform);
+    }
+
+    // Ends any replay and releases the projection; a bound activity keeps the service alive.
+    private void stopCapture() {
+        MediaProjection projection = mediaProjection;
+        if (projection == null) return;
+        mediaProjection = null; // Also keeps the projection's onStop from coming back here
+        replayEngine.cancel();
+        // The capture thread may be cutting a frame from the reader; release it there
+        captureHandler.post(() -> {
+            virtualDisplay.release();
+            virtualDisplay = null;
+            imageReader.close();
+            imageReader = null;
+        });
+        captureThread.quitSafely();
+        projection.stop();
+        stopForeground(true);
+        postStatus();
+    }
+
+    private ImageReader newImageReader(CaptureTransform transform) {
+        ImageReader reader = ImageReader.newInstance(transform.getCaptureWidth(), transform.getCaptureHeight(),
+                PixelFormat.RGBA_8888, 2);
+        reader.setOnImageAvailableListener(r -> {
+            long requestedAt = templateRequestedAt;
+            if (requestedAt != 0 && System.nanoTime() - requestedAt >= TEMPLATE_CAPTURE_DELAY_NS) {
+                captureTriggerTemplate();
+            } else {
+                captureScheduler.onFrameAvailable();
+            }
+        }, captureHandler);
+        return reader;
+    }
+
+    private int captureDensityDpi(CaptureTransform transform) {
+        return Math.max(1, Math.round(screenDensityDpi * transform.toCaptureX(1f)));
+    }
+
+    // Runs on the capture thread, so no frame is being cut while the reader is swapped.
+    private void resizeCapture(float scale) {
+        if (virtualDisplay == null) return;
+        CaptureTransform old = captureTransform;
+        CaptureTransform transform = new CaptureTransform(old.getScreenWidth(), old.getScreenHeight(), scale);
+        ImageReader oldReader = imageReader;
+        imageReader = newImageReader(transform);
+        virtualDisplay.resize(transform.getCaptureWidth(), transform.getCaptureHeight(), captureDensityDpi(transform));
+        virtualDisplay.setSurface(imageReader.getSurface());
+        oldReader.close();
+        captureTransform = transform;
+        // The template's pixels are at the old scale; cut it again from the same screen area
+        if (aiRecognizer.hasTemplate()) templateRequestedAt = System.nanoTime();
+        Log.d(TAG, "Capturing " + transform);
+    }
+
+    // Runs on the capture thread. Copies the area the watchers read out of the newest image, so
+    // the image goes straight back to the reader.
+    private SharedFrame captureFrame() {
+        ImageReader reader = imageReader;
+        if (reader == null) return null;
+        Image image = reader.acquireLatestImage();
+        if (image == null) return null;
+        try {
+            // Image timestamps share System.nanoTime()'s monotonic clock
+            metrics.histogram(PipelineMetrics.Stage.CAPTURE).record(System.nanoTime() - image.getTimestamp());
+            CaptureTransform transform = captureTransform;
+            if (settings.cropToWatchedArea) {
+                frameBus.watchedArea(transform, watchedRegion);
+            } else {
+                watchedRegion.set(0, 0, transform.getCaptureWidth(), transform.getCaptureHeight());
+            }
+            long start = System.nanoTime();
+            SharedFrame frame = sharedFrames.acquire();
+            Image.Plane plane = image.getPlanes()[0];
+            if (watchedRegion.isEmpty() || !frame.fill(plane.getBuffer(), image.getWidth(), image.getHeight(),
+                    plane.getRowStride(), plane.getPixelStride(), watchedRegion, transform, image.getTimestamp())) {
+                frame.release();
+                return null;
+            }
+            metrics.histogram(PipelineMetrics.Stage.CROP).recordSince(start);
+            return frame;
+        } finally {
+            image.close();
+        }
+    }
+
+    // Runs on the capture thread for each frame the scheduler lets through.
+    private boolean publishFrame(SharedFrame frame) {
+        frameBus.publish(frame);
+        // Watchers report state changes as they finish, so the rate adapts a frame late
+        return stateChanged.getAndSet(false);
+    }
+
+    // Runs on the capture thread once the trigger dialog has closed.
+    private void captureTriggerTemplate() {
+        Image image = imageReader.acquireLatestImage();
+        if (image == null) return;
+        templateRequestedAt = 0;
+        MonitorSettings s = settings;
+        RoiFrame template = framePool.acquire();
+        boolean cut;
+        try {
+            CaptureTransform.Region region = captureTransform.toCapture(
+                    new CaptureTransform.Region().set(s.triggerX, s.triggerY, s.triggerWidth, s.triggerHeight),
+                    new CaptureTransform.Region());
+            Image.Plane plane = image.getPlanes()[0];
+            cut = RoiExtractor.extract(plane.getBuffer(), image.getWidth(), image.getHeight(), plane.getRowStride(),
+                    plane.getPixelStride(), region.x, region.y, region.width, region.height, template);
+        } finally {
+            image.close();
+        }
+        if (!cut) {
+            framePool.release(template);
+            showToast("Trigger area is off screen", Toast.LENGTH_SHORT);
+            return;
+        }
+        try {
+            aiRecognizer.setTemplate(template);
+            showToast("Trigger icon captured", Toast.LENGTH_SHORT);
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG, "Unusable trigger template", e);
+            showToast("Trigger area has no detail to match", Toast.LENGTH_SHORT);
+        } finally {
+            framePool.release(template);
+        }
+    }
+
+    public boolean isReplayActive() {
+        return replayEngine.isActive();
+    }
+
+    /** Starts watching the screen and replaying {@code program}; both stop when it ends. */
+    public void startReplay(MacroProgram program) {
+        synchronized (replayLock) {
+            startMonitoring();
+            replayEngine.start(program);
+        }
+        postStatus();
+    }
+
+    /** Starts a replay of a macro that is still loading; it waits at the end of each loaded page. */
+    public void startReplay(ProgramStream stream) {
+        synchronized (replayLock) {
+            startMonitoring();
+            replayEngine.start(stream);
+        }
+        postStatus();
+    }
+
+    public boolean pauseReplay() {
+        if (!replayEngine.pause()) return false;
+        postStatus();
+        return true;
+    }
+
+    public boolean resumeReplay() {
+        if (!replayEngine.resume()) return false;
+        postStatus();
+        return true;
+    }
+
+    public void cancelReplay() {
+        replayEngine.cancel();
+    }
+
+    // Runs on the replay thread.
+    private void onReplayEnded(ReplayEngine.State state) {
+        synchronized (replayLock) {
+            // The engine shows the end state before calling back, so a replay may already have
+            // been started in between; its monitoring must keep running
+            if (!replayEngine.isActive()) stopMonitoring();
+        }
+        if (state == ReplayEngine.State.FAILED) Log.e(TAG, "Replay failed: " + replayEngine.getFailure());
+        Log.d(TAG, "Replay " + state + " after " + replayEngine.getCompletedCount() + " actions, "
+                + replayEngine.getInstructionCount() + " instructions, lateness p50="
+                + TimeUnit.NANOSECONDS.toMicros(replayEngine.getLatenessPercentileNanos(0.5)) + "us p99="
+                + TimeUnit.NANOSECONDS.toMicros(replayEngine.getLatenessPercentileNanos(0.99)) + "us max="
+                + TimeUnit.NANOSECONDS.toMicros(replayEngine.getMaxLatenessNanos()) + "us");
+        if (state == ReplayEngine.State.HALTED) {
+            showToast("Stamina low, pausing macro", Toast.LENGTH_SHORT);
+        } else if (state == ReplayEngine.State.FAILED) {
+            showToast("Replay failed: " + replayEngine.getFailure(), Toast.LENGTH_LONG);
+        }
+        postStatus();
+    }
+
+    private void startMonitoring() {
+        statePipeline.getTracker().reset(); // A replay must not act on the previous session's state
+        if (captureScheduler == null) return;
+        MonitorSettings s = settings;
+        inferenceCache.resetCounters();
+        classifierCascade.resetCounters();
+        captureScheduler.resetCounters();
+        captureScheduler.setAdaptiveFps(Math.min(MONITOR_IDLE_FPS, s.monitorFps), s.monitorFps);
+        stateChanged.set(false);
+        // Queued ahead of the first frame on the same single-threaded executor
+        if (s.dumpFrameTrace) inferenceExecutor.execute(this::openFrameTrace);
+        captureScheduler.start();
+    }
+
+    private void stopMonitoring() {
+        if (captureScheduler == null) return;
+        captureScheduler.stop();
+        try {
+            inferenceExecutor.execute(this::closeFrameTrace);
+        } catch (RejectedExecutionException e) {
+            // Shutting down; onDestroy already closed the trace
+        }
+        Log.d(TAG, "Monitoring stopped, frames: " + captureScheduler + ", inference cache: " + inferenceCache
+                + " (" + inferenceCache.getSavedCount() + " inferences saved)");
+        Log.d(TAG, "Classifier cascade: " + classifierCascade);
+        Log.d(TAG, "Watch sessions: " + frameBus + ", taps: " + replayLane + ", " + triggerLane);
+        snapshotCounters();
+        Log.d(TAG, "Pipeline metrics:\n" + metrics.summary());
+    }
+
+    // Runs on the inference executor.
+    private void openFrameTrace() {
+        File file = new File(getFilesDir(), "traces/trace-" + System.currentTimeMillis() + ".slft");
+        try {
+            frameTrace = FrameTraceWriter.open(file);
+            Log.d(TAG, "Writing frame trace to " + file);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to open frame trace " + file, e);
+        }
+    }
+
+    // Runs on the inference executor.
+    private void closeFrameTrace() {
+        if (frameTrace == null) return;
+        try {
+            frameTrace.close();
+            Log.d(TAG, "Frame trace closed with " + frameTrace.getRecordCount() + " records");
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to close frame trace", e);
+        }
+        frameTrace = null;
+    }
+
+    // Called by the tap arbiter, one action at a time.
+    private void simulateTouch(byte kind, float x, float y) {
+        long start = System.nanoTime();
+        Log.d(TAG, "Simulated " + Macro.kindName(kind) + " at (" + x + ", " + y + ")");
+        metrics.increment(PipelineMetrics.Counter.ACTIONS_DISPATCHED);
+        metrics.histogram(PipelineMetrics.Stage.DISPATCH).recordSince(start);
+    }
+
+    public Status getStatus() {
+        return new Status(isCapturing(), replayEngine.getState(), statePipeline.getState());
+    }
+
+    /**
+     * Receives coalesced status updates on the main thread, at most one per
+     * {@link #STATUS_INTERVAL_NS}; null to stop.
+     */
+    public void setStatusListener(StatusCoalescer.Sink<Status> listener) {
+        statusListener = listener;
+    }
+
+    // Any thread; never blocks on the UI.
+    private void postStatus() {
+        statusCoalescer.post(getStatus());
+    }
+
+    // Runs on the main thread.
+    private void onStatus(Status status) {
+        String text = status.toString();
+        if (status.capturing && !text.equals(notificationText)) {
+            notificationText = text;
+            ((NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE)).notify(NOTIFICATION_ID, buildNotification(text));
+        }
+        StatusCoalescer.Sink<Status> listener = statusListener;
+        if (listener != null) listener.onStatus(status);
+    }
+
+    private void showToast(String message, int duration) {
+        mainHandler.post(() -> Toast.makeText(this, message, duration).show());
+    }
+
+    private void createNotificationChannel() {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) return;
+        NotificationChannel channel = new NotificationChannel(CHANNEL_ID, "Macro", NotificationManager.IMPORTANCE_LOW);
+        channel.setDescription("Shown while the screen is watched for the macro");
+        ((NotificationManager) getSystemService(Context.NOTIFICATION_SERVICE)).createNotificationChannel(channel);
+    }
+
+    private Notification buildNotification(String text) {
+        int flags = Build.VERSION.SDK_INT >= Build.VERSION_CODES.M ? PendingIntent.FLAG_IMMUTABLE : 0;
+        PendingIntent open = PendingIntent.getActivity(this, 0,
+                new Intent(this, HomeActivity.class).addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP), flags);
+        PendingIntent stop = PendingIntent.getService(this, 0,
+                new Intent(this, MacroService.class).setAction(ACTION_STOP), flags);
+        return new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(R.mipmap.ic_launcher)
+                .setContentTitle(getString(R.string.app_name))
+                .setContentText("Macro Status: " + text)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .setContentIntent(open)
+                .addAction(0, "Stop", stop)
+                .build();
+    }
+
+    public PipelineMetrics getMetrics() {
+        return metrics;
+    }
+
+    public StartupTimings getStartupTimings() {
+        return startupTimings;
+    }
+
+    public String describeClassifiers() {
+        return classifierCascade.toString();
+    }
+
+    // Components keep their own running totals; copy them in before reporting.
+    public void snapshotCounters() {
+        if (captureScheduler != null) {
+            metrics.set(PipelineMetrics.Counter.FRAMES_PROCESSED, captureScheduler.getProcessedCount());
+            metrics.set(PipelineMetrics.Counter.FRAMES_DROPPED, captureScheduler.getDroppedCount());
+            metrics.set(PipelineMetrics.Counter.FRAMES_SKIPPED, captureScheduler.getSkippedCount());
+        }
+        metrics.set(PipelineMetrics.Counter.CACHE_UNCHANGED, inferenceCache.getUnchangedCount());
+        metrics.set(PipelineMetrics.Counter.CACHE_HITS, inferenceCache.getCachedCount());
+        metrics.set(PipelineMetrics.Counter.CACHE_MISSES, inferenceCache.getMissCount());
+    }
+
+    public void resetMetrics() {
+        metrics.reset();
+        inferenceCache.resetCounters();
+        classifierCascade.resetCounters();
+        if (captureScheduler != null) captureScheduler.resetCounters();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        statusListener = null;
+        stopCapture();
+        replayEngine.cancel();
+        if (interpreterPool != null) inferenceExecutor.execute(interpreterPool::close);
+        inferenceExecutor.execute(this::closeFrameTrace);
+        inferenceExecutor.shutdown();
+        sessionPool.shutdown();
+        matchExecutor.shutdown();
+        replayExecutor.shutdown();
+    }
+}
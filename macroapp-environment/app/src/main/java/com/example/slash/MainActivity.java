@@ -1,20 +1,49 @@
 package com.example.slash;
 
+import android.content.ComponentName;
+import android.content.Context;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.os.Bundle;
+import android.os.IBinder;
+import android.util.Log;
 import android.widget.Button;
 import android.widget.EditText;
 import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
+import com.example.slash.core.SessionToken;
+import com.example.slash.core.StartupTimings;
+import com.google.android.gms.tasks.Task;
+import com.google.firebase.auth.AuthResult;
 import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
 import org.json.JSONException;
 import org.json.JSONObject;
-import java.text.SimpleDateFormat;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class MainActivity extends AppCompatActivity {
+    private static final String TAG = "MainActivity";
+
     private FirebaseAuth mAuth;
     private EditText tokenInput;
     private Button submitButton;
+    private SessionStore sessionStore;
+    private Task<AuthResult> signIn; // Null if a user was cached
+    private boolean serviceBound;
+    private final ExecutorService sessionExecutor = Executors.newSingleThreadExecutor();
+
+    // Bound only so the service starts loading the model while the session is checked; the home
+    // screen binds it before this activity goes away.
+    private final ServiceConnection preloadConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -24,26 +53,42 @@ public class MainActivity extends AppCompatActivity {
         mAuth = FirebaseAuth.getInstance();
         tokenInput = findViewById(R.id.token_input);
         submitButton = findViewById(R.id.submit_button);
+        sessionStore = new SessionStore(this);
+        serviceBound = bindService(new Intent(this, MacroService.class), preloadConnection, Context.BIND_AUTO_CREATE);
 
-        if (mAuth.getCurrentUser() == null) {
+        FirebaseUser user = mAuth.getCurrentUser();
+        sessionExecutor.execute(() -> {
+            SessionToken session = user != null ? sessionStore.load(user.getUid()) : null;
+            boolean valid = session != null && session.isValidAt(System.currentTimeMillis());
+            getStartupTimings().mark(StartupTimings.Milestone.SESSION_CHECKED);
+            runOnUiThread(() -> {
+                if (isFinishing()) return;
+                if (valid) {
+                    Log.d(TAG, "Saved session still valid, skipping token entry");
+                    openHome();
+                } else {
+                    askForToken(user);
+                }
+            });
+        });
+    }
+
+    private void askForToken(FirebaseUser user) {
+        if (user == null) {
+            // Token entry works meanwhile; a valid token waits for the sign-in to finish
             Toast.makeText(this, "Attempting anonymous sign-in...", Toast.LENGTH_SHORT).show();
-            mAuth.signInAnonymously()
-                    .addOnSuccessListener(authResult -> {
-                        Toast.makeText(this, "Sign-in successful", Toast.LENGTH_SHORT).show();
-                        setupUI();
-                    })
-                    .addOnFailureListener(e -> {
+            signIn = mAuth.signInAnonymously()
+                    .addOnSuccessListener(this, authResult -> Toast.makeText(this, "Sign-in successful", Toast.LENGTH_SHORT).show())
+                    .addOnFailureListener(this, e -> {
                         String errorMessage = "Authentication failed: " + e.getMessage();
                         Toast.makeText(this, errorMessage, Toast.LENGTH_LONG).show();
                         finish();
                     });
-        } else {
-            setupUI();
         }
+        setupUI();
     }
 
     private void setupUI() {
-        Toast.makeText(this, "UI setup complete", Toast.LENGTH_SHORT).show();
         submitButton.setOnClickListener(v -> {
             String tokenJson = tokenInput.getText().toString().trim();
             if (!tokenJson.isEmpty()) {
@@ -55,26 +100,56 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void validateToken(String tokenJson) {
-        try {
-            JSONObject json = new JSONObject(tokenJson);
-            json.getString("token"); // Ensure token field exists
-            String expiration = json.getString("expiration");
+        submitButton.setEnabled(false);
+        sessionExecutor.execute(() -> {
+            SessionToken session = null;
+            String error = null;
+            try {
+                JSONObject json = new JSONObject(tokenJson);
+                session = SessionToken.parse(json.getString("token"), json.getString("expiration"));
+                if (!session.isValidAt(System.currentTimeMillis())) error = "Token has expired";
+            } catch (JSONException e) {
+                error = "Invalid token format: " + e.getMessage();
+            } catch (IllegalArgumentException e) {
+                error = "Error processing token: " + e.getMessage();
+            }
+            SessionToken validated = session;
+            String message = error;
+            runOnUiThread(() -> {
+                submitButton.setEnabled(true);
+                if (message != null) {
+                    Toast.makeText(this, message, Toast.LENGTH_LONG).show();
+                } else if (mAuth.getCurrentUser() != null) {
+                    grantAccess(validated);
+                } else if (signIn != null) {
+                    signIn.addOnSuccessListener(this, authResult -> grantAccess(validated));
+                }
+            });
+        });
+    }
 
-            long expirationTime = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'")
-                    .parse(expiration).getTime();
-            long currentTime = System.currentTimeMillis();
+    private void grantAccess(SessionToken session) {
+        FirebaseUser user = mAuth.getCurrentUser();
+        if (user == null || isFinishing()) return;
+        String uid = user.getUid();
+        sessionExecutor.execute(() -> sessionStore.save(uid, session));
+        Toast.makeText(this, "Access granted!", Toast.LENGTH_SHORT).show();
+        openHome();
+    }
 
-            if (currentTime < expirationTime) {
-                Toast.makeText(this, "Access granted!", Toast.LENGTH_SHORT).show();
-                startActivity(new Intent(MainActivity.this, HomeActivity.class));
-                finish();
-            } else {
-                Toast.makeText(this, "Token has expired", Toast.LENGTH_LONG).show();
-            }
-        } catch (JSONException e) {
-            Toast.makeText(this, "Invalid token format: " + e.getMessage(), Toast.LENGTH_LONG).show();
-        } catch (Exception e) {
-            Toast.makeText(this, "Error processing token: " + e.getMessage(), Toast.LENGTH_LONG).show();
-        }
+    private void openHome() {
+        startActivity(new Intent(MainActivity.this, HomeActivity.class));
+        finish();
+    }
+
+    private StartupTimings getStartupTimings() {
+        return ((SlashApp) getApplication()).getStartupTimings();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (serviceBound) unbindService(preloadConnection);
+        sessionExecutor.shutdown(); // Lets a pending session save finish
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,54 @@
+package com.example.slash;
+
+/**
+ * What {@link MacroService} watches and how. The activity edits its own copy on the UI thread and
+ * hands the service a fresh {@link #copy()} after each change; the service never mutates one.
+ */
+public final class MonitorSettings {
+    static final int MODEL_WARMUP_RUNS = 3;
+
+    int staminaX, staminaY, staminaWidth, staminaHeight; // Screen coordinates
+    int triggerX, triggerY, triggerWidth, triggerHeight; // Trigger icon as it appeared when captured
+    float triggerSensitivity = 0.8f; // Default
+    long clickInterval = 1000; // Default 1s
+    float monitorFps = 10f; // Sampling rate while the stamina bar is changing
+    float fastClassifierConfidence = 0.9f; // Below this the bar-fill stage defers to the model
+    int inferenceThreads = Math.min(4, Runtime.getRuntime().availableProcessors());
+    boolean useXnnpack = true;
+    int modelWarmupRuns = MODEL_WARMUP_RUNS;
+    boolean dumpFrameTrace; // Takes effect when monitoring next starts
+    float captureScale = 1f; // Virtual display size as a fraction of the screen
+    boolean cropToWatchedArea; // Copy only the area around the watched regions out of each image
+
+    boolean hasStaminaArea() {
+        return staminaWidth > 0 && staminaHeight > 0;
+    }
+
+    boolean sameStaminaArea(MonitorSettings other) {
+        return staminaX == other.staminaX && staminaY == other.staminaY
+                && staminaWidth == other.staminaWidth && staminaHeight == other.staminaHeight;
+    }
+
+    MonitorSettings copy() {
+        MonitorSettings copy = new MonitorSettings();
+        copy.staminaX = staminaX;
+        copy.staminaY = staminaY;
+        copy.staminaWidth = staminaWidth;
+        copy.staminaHeight = staminaHeight;
+        copy.triggerX = triggerX;
+        copy.triggerY = triggerY;
+        copy.triggerWidth = triggerWidth;
+        copy.triggerHeight = triggerHeight;
+        copy.triggerSensitivity = triggerSensitivity;
+        copy.clickInterval = clickInterval;
+        copy.monitorFps = monitorFps;
+        copy.fastClassifierConfidence = fastClassifierConfidence;
+        copy.inferenceThreads = inferenceThreads;
+        copy.useXnnpack = useXnnpack;
+        copy.modelWarmupRuns = modelWarmupRuns;
+        copy.dumpFrameTrace = dumpFrameTrace;
+        copy.captureScale = captureScale;
+        copy.cropToWatchedArea = cropToWatchedArea;
+        return copy;
+    }
+}
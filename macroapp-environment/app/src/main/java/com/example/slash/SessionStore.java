@@ -0,0 +1,38 @@
+package com.example.slash;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.example.slash.core.SessionToken;
+
+/**
+ * Keeps the last validated access token on the device, bound to the Firebase user it was entered
+ * for. SharedPreferences blocks on its first read, so call {@link #load} off the main thread.
+ */
+public final class SessionStore {
+    private static final String PREFS_NAME = "session";
+    private static final String KEY_UID = "uid";
+    private static final String KEY_TOKEN = "token";
+    private static final String KEY_EXPIRES_AT = "expiresAtMillis";
+
+    private final SharedPreferences prefs;
+
+    public SessionStore(Context context) {
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /** Returns the session saved for {@code uid}, or null if there is none or it is someone else's. */
+    public SessionToken load(String uid) {
+        String token = prefs.getString(KEY_TOKEN, null);
+        if (token == null || !uid.equals(prefs.getString(KEY_UID, null))) return null;
+        return new SessionToken(token, prefs.getLong(KEY_EXPIRES_AT, 0));
+    }
+
+    public void save(String uid, SessionToken session) {
+        prefs.edit()
+                .putString(KEY_UID, uid)
+                .putString(KEY_TOKEN, session.token)
+                .putLong(KEY_EXPIRES_AT, session.expiresAtMillis)
+                .apply();
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.slash;
+
+import android.app.Application;
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+
+import com.example.slash.core.NanoClock;
+import com.example.slash.core.StartupTimings;
+
+import java.util.concurrent.TimeUnit;
+
+/** Holds the cold-start timings shared by the activities and {@link MacroService}. */
+public class SlashApp extends Application {
+    private final StartupTimings startupTimings = new StartupTimings(NanoClock.SYSTEM);
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        long now = System.nanoTime();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            // Both clocks leave out deep sleep, so the process start converts directly
+            long sinceStartMillis = SystemClock.uptimeMillis() - Process.getStartUptimeMillis();
+            startupTimings.start(now - TimeUnit.MILLISECONDS.toNanos(sinceStartMillis));
+        } else {
+            startupTimings.start(now);
+        }
+    }
+
+    public StartupTimings getStartupTimings() {
+        return startupTimings;
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.slash;
+
+import com.example.slash.core.BatchModel;
+import com.example.slash.core.FloatInputPreprocessor;
+import com.example.slash.core.InputPreprocessor;
+import com.example.slash.core.QuantizedInputPreprocessor;
+
+import org.tensorflow.lite.DataType;
+import org.tensorflow.lite.Interpreter;
+import org.tensorflow.lite.Tensor;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+/**
+ * A TFLite image classifier run over several ROIs at once. The input's batch dimension is
+ * resized only when the batch size changes, so a steady number of watched regions per frame
+ * costs one tensor allocation in total. Quantized models take uint8 RGB and return uint8
+ * scores; everything else is float32.
+ */
+public final class TfliteBatchModel implements BatchModel, Closeable {
+    private final Interpreter interpreter;
+    private final int maxBatch;
+    private final int numClasses;
+    private final int[] inputShape; // [batch, height, width, channels]
+    private final DataType inputType;
+    private final Tensor.QuantizationParams outputQuantization; // null for float output
+    private final Object[] outputs; // Output array per batch size, created on first use
+    private int currentBatch;
+
+    TfliteBatchModel(Interpreter interpreter, int maxBatch) {
+        this.interpreter = interpreter;
+        this.maxBatch = maxBatch;
+        Tensor input = interpreter.getInputTensor(0);
+        inputShape = input.shape().clone();
+        inputType = input.dataType();
+        currentBatch = inputShape[0];
+        Tensor output = interpreter.getOutputTensor(0);
+        int[] outputShape = output.shape();
+        numClasses = outputShape[outputShape.length - 1];
+        outputQuantization = output.dataType() == DataType.UINT8 ? output.quantizationParams() : null;
+        outputs = new Object[maxBatch + 1];
+    }
+
+    /** A preprocessor producing this model's input layout for one ROI. */
+    public InputPreprocessor createPreprocessor() {
+        int height = inputShape[1];
+        int width = inputShape[2];
+        return inputType == DataType.UINT8
+                ? new QuantizedInputPreprocessor(width, height)
+                : new FloatInputPreprocessor(width, height);
+    }
+
+    @Override
+    public int getMaxBatchSize() {
+        return maxBatch;
+    }
+
+    @Override
+    public int getNumClasses() {
+        return numClasses;
+    }
+
+    @Override
+    public void run(ByteBuffer input, int count, float[] scores) {
+        if (count != currentBatch) {
+            inputShape[0] = count;
+            interpreter.resizeInput(0, inputShape);
+            interpreter.allocateTensors();
+            currentBatch = count;
+        }
+        if (outputQuantization != null) {
+            byte[][] output = (byte[][]) outputs[count];
+            if (output == null) outputs[count] = output = new byte[count][numClasses];
+            interpreter.run(input, output);
+            float scale = outputQuantization.getScale();
+            int zeroPoint = outputQuantization.getZeroPoint();
+            for (int i = 0; i < count; i++) {
+                for (int c = 0; c < numClasses; c++) {
+                    scores[i * numClasses + c] = ((output[i][c] & 0xFF) - zeroPoint) * scale;
+                }
+            }
+        } else {
+            float[][] output = (float[][]) outputs[count];
+            if (output == null) outputs[count] = output = new float[count][numClasses];
+            interpreter.run(input, output);
+            for (int i = 0; i < count; i++) {
+                System.arraycopy(output[i], 0, scores, i * numClasses, numClasses);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        interpreter.close();
+    }
+}
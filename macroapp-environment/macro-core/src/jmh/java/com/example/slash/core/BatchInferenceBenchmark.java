@@ -0,0 +1,87 @@
+package com.example.slash.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ROIs per second through {@link BatchInference} with a stand-in model that only reads its
+ * input, so the numbers cover preprocessing and packing. The TFLite runtime itself ships as an
+ * Android library; its share shows up on device in the pipeline metrics' ROIs/s line.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchInferenceBenchmark {
+    private static final int ROIS = 8;
+
+    @Param({"1", "4"})
+    public int batchSize;
+
+    private final RoiFrame[] frames = new RoiFrame[ROIS];
+    private final float[] scores = new float[ROIS * 3];
+    private BatchInference inference;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        for (int i = 0; i < ROIS; i++) {
+            frames[i] = new RoiFrame();
+            frames[i].reset(300, 40);
+            random.nextBytes(frames[i].getPixels());
+        }
+        inference = new BatchInference(new ChecksumModel(batchSize), new FloatInputPreprocessor(224, 224),
+                NanoClock.SYSTEM);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(ROIS)
+    public float[] classify() {
+        inference.classify(frames, ROIS, scores);
+        return scores;
+    }
+
+    private static final class ChecksumModel implements BatchModel {
+        private final int maxBatch;
+
+        ChecksumModel(int maxBatch) {
+            this.maxBatch = maxBatch;
+        }
+
+        @Override
+        public int getMaxBatchSize() {
+            return maxBatch;
+        }
+
+        @Override
+        public int getNumClasses() {
+            return 3;
+        }
+
+        @Override
+        public void run(ByteBuffer input, int count, float[] scores) {
+            int itemBytes = input.limit() / count;
+            for (int i = 0; i < count; i++) {
+                scores[i * 3] = input.getFloat(i * itemBytes);
+                scores[i * 3 + 1] = input.getFloat(i * itemBytes + itemBytes - 4);
+                scores[i * 3 + 2] = 0;
+            }
+        }
+    }
+}
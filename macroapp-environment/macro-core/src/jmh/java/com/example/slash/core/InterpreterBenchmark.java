@@ -0,0 +1,62 @@
+package com.example.slash.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Instructions per second through the replay interpreter: a loop that checks the monitored
+ * state and taps on every pass, with no waits. Thread start-up is amortised over the passes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InterpreterBenchmark {
+    private static final int PASSES = 1_000_000;
+    private static final int INSTRUCTIONS_PER_PASS = 3; // IF_STATE, TAP, END_LOOP
+
+    private MacroProgram program;
+    private ReplayEngine engine;
+    private volatile CountDownLatch ended;
+    private volatile GameState monitored = GameState.STAMINA_FULL;
+    private float sink;
+
+    @Setup
+    public void setUp() {
+        MacroProgram.Builder builder = new MacroProgram.Builder();
+        MacroProgram.Builder.Label exhausted = builder.newLabel();
+        builder.loop(PASSES)
+                .ifState(MacroProgram.mask(GameState.STAMINA_LOW, GameState.STAMINA_EMPTY), exhausted)
+                .tap(540, 1170)
+                .endLoop()
+                .end()
+                .bind(exhausted)
+                .halt();
+        program = builder.build();
+        engine = new ReplayEngine((kind, x, y) -> sink += x, () -> monitored,
+                state -> ended.countDown(), NanoClock.SYSTEM);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PASSES * INSTRUCTIONS_PER_PASS)
+    public long run() throws InterruptedException {
+        ended = new CountDownLatch(1);
+        engine.start(program);
+        ended.await();
+        return engine.getInstructionCount();
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.slash.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MacroCodec} against the layout it replaced: a List of {"x", "y", "timestamp"} maps, as
+ * still read from old Firestore documents. The setup prints both sizes, the maps counted the way
+ * Firestore bills a document (string bytes + 1 per key, 8 per number).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MacroCodecBenchmark {
+    @Param({"100", "10000"})
+    public int actions;
+
+    private Macro macro;
+    private byte[] encoded;
+    private List<Map<String, Object>> legacy;
+
+    @Setup
+    public void setUp() {
+        // A finger wandering around a 1080x2340 screen at roughly 60 Hz
+        Random random = new Random(42);
+        Macro.Builder builder = new Macro.Builder();
+        float x = 540, y = 1170;
+        for (int i = 0; i < actions; i++) {
+            x = Math.max(0, Math.min(1080, x + random.nextInt(41) - 20));
+            y = Math.max(0, Math.min(2340, y + random.nextInt(41) - 20));
+            builder.addDelta(x, y, i == 0 ? 0 : 16_000 + random.nextInt(1000));
+        }
+        macro = builder.build();
+        encoded = MacroCodec.encode(macro);
+        legacy = legacyEncode();
+        long legacySize = firestoreSize(legacy);
+        System.out.printf("%n%d actions: codec %d bytes (%.1f per action), maps %d bytes (%.1f per action)%n",
+                actions, encoded.length, (double) encoded.length / actions, legacySize, (double) legacySize / actions);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return MacroCodec.encode(macro);
+    }
+
+    @Benchmark
+    public Macro decode() throws IOException {
+        return MacroCodec.decode(ByteBuffer.wrap(encoded));
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> legacyEncode() {
+        List<Map<String, Object>> maps = new ArrayList<>(macro.size());
+        long timestampMillis = 0;
+        for (int i = 0; i < macro.size(); i++) {
+            timestampMillis += macro.getDeltaMicros(i) / 1000;
+            Map<String, Object> map = new HashMap<>();
+            map.put("x", macro.getX(i));
+            map.put("y", macro.getY(i));
+            map.put("timestamp", timestampMillis);
+            maps.add(map);
+        }
+        return maps;
+    }
+
+    @Benchmark
+    public Macro legacyDecode() {
+        Macro.Builder builder = new Macro.Builder();
+        for (Map<String, Object> map : legacy) {
+            float x = ((Number) map.get("x")).floatValue();
+            float y = ((Number) map.get("y")).floatValue();
+            long timestamp = ((Number) map.get("timestamp")).longValue();
+            builder.add(x, y, TimeUnit.MILLISECONDS.toNanos(timestamp));
+        }
+        return builder.build();
+    }
+
+    private static long firestoreSize(List<Map<String, Object>> maps) {
+        long size = "actions".getBytes(StandardCharsets.UTF_8).length + 1;
+        for (Map<String, Object> map : maps) {
+            for (String key : map.keySet()) size += key.getBytes(StandardCharsets.UTF_8).length + 1 + 8;
+        }
+        return size;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.slash.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/** Per-frame vision work: cropping a ROI from a 1080p plane and turning it into model input. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PreprocessBenchmark {
+    private static final int SCREEN_WIDTH = 1080;
+    private static final int SCREEN_HEIGHT = 2340;
+    private static final int ROW_PADDING = 64; // Typical ImageReader row stride slack
+
+    private ByteBuffer screen;
+    private final RoiFrame roi = new RoiFrame();
+    private final FloatInputPreprocessor floatPreprocessor = new FloatInputPreprocessor(224, 224);
+    private final QuantizedInputPreprocessor quantizedPreprocessor = new QuantizedInputPreprocessor(224, 224);
+    private ByteBuffer floatInput;
+    private ByteBuffer quantizedInput;
+    private final RoiFingerprint fingerprint = new RoiFingerprint();
+    private final BarFillClassifier barFill = new BarFillClassifier();
+    private final float[] scores = new float[3];
+
+    @Setup
+    public void setUp() {
+        int rowStride = SCREEN_WIDTH * RoiFrame.BYTES_PER_PIXEL + ROW_PADDING;
+        byte[] pixels = new byte[rowStride * SCREEN_HEIGHT];
+        new Random(42).nextBytes(pixels);
+        screen = ByteBuffer.allocateDirect(pixels.length);
+        screen.put(pixels).flip();
+        crop();
+        floatInput = ByteBuffer.allocateDirect(floatPreprocessor.getInputBytes()).order(ByteOrder.nativeOrder());
+        quantizedInput = ByteBuffer.allocateDirect(quantizedPreprocessor.getInputBytes());
+    }
+
+    @Benchmark
+    public boolean crop() {
+        return RoiExtractor.extract(screen, SCREEN_WIDTH, SCREEN_HEIGHT,
+                SCREEN_WIDTH * RoiFrame.BYTES_PER_PIXEL + ROW_PADDING, RoiFrame.BYTES_PER_PIXEL,
+                100, 200, 600, 60, roi);
+    }
+
+    @Benchmark
+    public ByteBuffer preprocessFloat() {
+        floatInput.clear();
+        floatPreprocessor.process(roi, floatInput);
+        return floatInput;
+    }
+
+    @Benchmark
+    public ByteBuffer preprocessQuantized() {
+        quantizedInput.clear();
+        quantizedPreprocessor.process(roi, quantizedInput);
+        return quantizedInput;
+    }
+
+    @Benchmark
+    public long fingerprint() {
+        return fingerprint.compute(roi);
+    }
+
+    @Benchmark
+    public float barFill() {
+        return barFill.classify(roi, scores);
+    }
+}
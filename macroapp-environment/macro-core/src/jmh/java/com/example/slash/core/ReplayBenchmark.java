@@ -0,0 +1,72 @@
+package com.example.slash.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replay scheduling. {@link #dispatchOverhead} replays actions with no delay between them,
+ * so it measures the engine's per-action cost. {@link #paced} replays 100 actions 1 ms
+ * apart; anything above 99 ms per operation is thread start-up plus accumulated lateness.
+ * Per-action lateness percentiles over a long paced replay come from {@link ReplayTimingHarness}.
+ */
+@State(Scope.Thread)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReplayBenchmark {
+    private static final int BURST_ACTIONS = 10_000;
+    private static final int PACED_ACTIONS = 100;
+
+    private Macro burst;
+    private Macro paced;
+    private volatile CountDownLatch ended;
+    private ReplayEngine engine;
+    private Blackhole blackhole;
+
+    @Setup
+    public void setUp(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        Macro.Builder builder = new Macro.Builder();
+        for (int i = 0; i < BURST_ACTIONS; i++) builder.addDelta(i % 1080, i % 2340, 0);
+        burst = builder.build();
+        builder.clear();
+        for (int i = 0; i < PACED_ACTIONS; i++) builder.addDelta(i, i, i == 0 ? 0 : 1000);
+        paced = builder.build();
+        engine = new ReplayEngine((kind, x, y) -> this.blackhole.consume(x + y), () -> GameState.IDLE,
+                state -> ended.countDown(), NanoClock.SYSTEM);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @OperationsPerInvocation(BURST_ACTIONS)
+    public void dispatchOverhead() throws InterruptedException {
+        replay(burst);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void paced() throws InterruptedException {
+        replay(paced);
+    }
+
+    private void replay(Macro macro) throws InterruptedException {
+        ended = new CountDownLatch(1);
+        engine.start(macro);
+        ended.await();
+    }
+}
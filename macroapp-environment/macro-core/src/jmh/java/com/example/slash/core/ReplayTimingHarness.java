@@ -0,0 +1,47 @@
+package com.example.slash.core;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a long paced macro in real time and reports how late actions were dispatched relative
+ * to their deadlines, the number the replay engine is built to keep small. JMH only reports the
+ * time per replay, so the percentiles come from the engine's own lateness histogram.
+ *
+ * <pre>
+ * ./gradlew :macro-core:replayTiming [-Pactions=10000] [-PintervalMicros=1000] [-Pruns=3]
+ * </pre>
+ */
+public final class ReplayTimingHarness {
+    private ReplayTimingHarness() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int actions = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int intervalMicros = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        Macro.Builder builder = new Macro.Builder();
+        for (int i = 0; i < actions; i++) builder.addDelta(i % 1080, i % 2340, i == 0 ? 0 : intervalMicros);
+        Macro macro = builder.build();
+        long plannedNanos = (actions - 1) * (long) intervalMicros * 1000;
+
+        System.out.printf("%d actions %d us apart (%d ms planned)%n", actions, intervalMicros,
+                TimeUnit.NANOSECONDS.toMillis(plannedNanos));
+        for (int run = 1; run <= runs; run++) {
+            CountDownLatch ended = new CountDownLatch(1);
+            ReplayEngine engine = new ReplayEngine((kind, x, y) -> { }, () -> GameState.IDLE,
+                    state -> ended.countDown(), NanoClock.SYSTEM);
+            long start = System.nanoTime();
+            engine.start(macro);
+            ended.await();
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("run %d: dispatched=%d p50=%dus p99=%dus max=%dus overrun=%dus%n", run,
+                    engine.getCompletedCount(),
+                    TimeUnit.NANOSECONDS.toMicros(engine.getLatenessPercentileNanos(0.5)),
+                    TimeUnit.NANOSECONDS.toMicros(engine.getLatenessPercentileNanos(0.99)),
+                    TimeUnit.NANOSECONDS.toMicros(engine.getMaxLatenessNanos()),
+                    TimeUnit.NANOSECONDS.toMicros(elapsed - plannedNanos));
+        }
+    }
+}
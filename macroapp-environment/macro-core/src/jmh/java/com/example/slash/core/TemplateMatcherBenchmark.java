@@ -0,0 +1,79 @@
+package com.example.slash.core;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Matches per second of a 64x64 icon searched over a whole synthetic 1920x1080 frame, the worst
+ * case of a trigger without a search area. The icon is cut from the frame, so every call finds it.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TemplateMatcherBenchmark {
+    private static final int WIDTH = 1920;
+    private static final int HEIGHT = 1080;
+    private static final int TEMPLATE_SIZE = 64;
+    private static final int TEMPLATE_X = 1337;
+    private static final int TEMPLATE_Y = 711;
+
+    @Param({"1", "4"})
+    public int strips;
+
+    private ExecutorService executor;
+    private GrayImage frame;
+    private TemplateMatcher matcher;
+    private final TemplateMatcher.Match match = new TemplateMatcher.Match();
+
+    @Setup
+    public void setUp() throws InterruptedException {
+        // Smooth gradients under noise, so the coarse levels still have structure
+        Random random = new Random(42);
+        byte[] pixels = new byte[WIDTH * HEIGHT];
+        for (int y = 0, i = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++, i++) {
+                double base = 96 + 48 * Math.sin(x / 57.0) * Math.cos(y / 43.0);
+                pixels[i] = (byte) Math.max(0, Math.min(255, (int) base + random.nextInt(64)));
+            }
+        }
+        frame = new GrayImage(WIDTH, HEIGHT, pixels);
+        byte[] icon = new byte[TEMPLATE_SIZE * TEMPLATE_SIZE];
+        for (int y = 0; y < TEMPLATE_SIZE; y++) {
+            System.arraycopy(pixels, (TEMPLATE_Y + y) * WIDTH + TEMPLATE_X, icon, y * TEMPLATE_SIZE, TEMPLATE_SIZE);
+        }
+        executor = strips > 1 ? Executors.newFixedThreadPool(strips) : null;
+        matcher = new TemplateMatcher(new GrayImage(TEMPLATE_SIZE, TEMPLATE_SIZE, icon), 4, executor, strips);
+        if (!match() || match.x != TEMPLATE_X || match.y != TEMPLATE_Y) {
+            throw new IllegalStateException("Icon not found at " + TEMPLATE_X + "," + TEMPLATE_Y
+                    + ", got " + match.x + "," + match.y + " score " + match.score);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (executor != null) executor.shutdown();
+    }
+
+    @Benchmark
+    public boolean match() throws InterruptedException {
+        return matcher.match(frame, 0.8f, match);
+    }
+}
@@ -0,0 +1,217 @@
+package com.example.slash.core;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams the stamina ROIs of a frame trace through {@link StatePipeline} as fast as possible and
+ * reports throughput, the state timeline and, given expected labels, where the two disagree.
+ * There is no TensorFlow Lite runtime off the device, so the model stage never runs and frames the
+ * bar-fill stage is unsure of keep its best guess, as on a phone whose model failed to load.
+ * Lives with the benchmarks so it stays out of the app.
+ *
+ * <pre>
+ * ./gradlew :macro-core:traceReplay -Ptrace=trace.slft [-Plabels=expected.txt] [-PnoCache]
+ * </pre>
+ *
+ * A labels file has one {@code <millis> <GameState>} line per expected transition, with times
+ * relative to the first stamina frame; blank lines and lines starting with '#' are ignored.
+ */
+public final class TraceReplayHarness {
+    private static final int NUM_CLASSES = 3; // full, low, empty
+    private static final int INFERENCE_CACHE_SIZE = 32;
+    private static final int FINGERPRINT_MAX_DISTANCE = 1;
+    private static final int FINGERPRINT_MAX_LUMA_DELTA = 16;
+    private static final float FAST_CLASSIFIER_CONFIDENCE = 0.9f;
+
+    private final List<Long> transitionMillis = new ArrayList<>();
+    private final List<GameState> transitionStates = new ArrayList<>();
+    private final PipelineMetrics metrics = new PipelineMetrics();
+    private final ClassifierCascade cascade = new ClassifierCascade(NanoClock.SYSTEM);
+    private final InferenceCache cache;
+    private final StatePipeline pipeline;
+    private long frameCount;
+    private long elapsedNanos;
+    private boolean labelled;
+    private final Mismatches mismatches = new Mismatches();
+
+    TraceReplayHarness(boolean useCache) {
+        cascade.addStage("bar-fill", new BarFillClassifier(), FAST_CLASSIFIER_CONFIDENCE)
+                .addStage("model (not available)", (frame, scores) -> 0f, 0f);
+        // No two fingerprints are within a negative distance, so every frame is classified
+        cache = new InferenceCache(useCache ? INFERENCE_CACHE_SIZE : 1, NUM_CLASSES, useCache ? FINGERPRINT_MAX_DISTANCE : -1,
+                FINGERPRINT_MAX_LUMA_DELTA);
+        pipeline = new StatePipeline(cascade, cache, 1, NUM_CLASSES, NanoClock.SYSTEM);
+        pipeline.setMetrics(metrics);
+        pipeline.getTracker().setLatencyHistogram(metrics.histogram(PipelineMetrics.Stage.STATE_DETECTION));
+    }
+
+    public static void main(String[] args) throws IOException {
+        File trace = null;
+        File labels = null;
+        boolean useCache = true;
+        for (String arg : args) {
+            if (arg.equals("--no-cache")) {
+                useCache = false;
+            } else if (trace == null) {
+                trace = new File(arg);
+            } else if (labels == null) {
+                labels = new File(arg);
+            } else {
+                trace = null;
+                break;
+            }
+        }
+        if (trace == null) {
+            System.err.println("Usage: TraceReplayHarness [--no-cache] <trace.slft> [expected-labels.txt]");
+            System.exit(2);
+        }
+        TraceReplayHarness harness = new TraceReplayHarness(useCache);
+        harness.run(trace, labels != null ? readLabels(labels) : null);
+        System.out.print(harness.report());
+        if (harness.mismatches.frames > 0) System.exit(1);
+    }
+
+    void run(File trace, Labels expected) throws IOException {
+        labelled = expected != null;
+        RoiFrame frame = new RoiFrame();
+        long firstTimestamp = 0;
+        GameState lastState = null;
+        try (FrameTraceReader reader = FrameTraceReader.open(trace)) {
+            long start = System.nanoTime();
+            while (reader.next()) {
+                if (reader.getRegion() != FrameTraceWriter.REGION_STAMINA) continue;
+                long cropStart = System.nanoTime();
+                if (!reader.extract(frame)) continue;
+                metrics.histogram(PipelineMetrics.Stage.CROP).recordSince(cropStart);
+                long frameStart = System.nanoTime();
+                pipeline.submit(frame);
+                pipeline.flush();
+                metrics.histogram(PipelineMetrics.Stage.FRAME_TO_STATE).recordSince(frameStart);
+                metrics.increment(PipelineMetrics.Counter.FRAMES_PROCESSED);
+                if (frameCount++ == 0) firstTimestamp = frame.getTimestampNanos();
+                long offset = TimeUnit.NANOSECONDS.toMillis(frame.getTimestampNanos() - firstTimestamp);
+                GameState state = pipeline.getState();
+                if (state != lastState) {
+                    transitionMillis.add(offset);
+                    transitionStates.add(state);
+                    lastState = state;
+                }
+                if (expected != null) mismatches.compare(offset, expected.at(offset), state);
+            }
+            elapsedNanos = System.nanoTime() - start;
+        }
+        mismatches.closeSpan();
+        metrics.set(PipelineMetrics.Counter.CACHE_UNCHANGED, cache.getUnchangedCount());
+        metrics.set(PipelineMetrics.Counter.CACHE_HITS, cache.getCachedCount());
+        metrics.set(PipelineMetrics.Counter.CACHE_MISSES, cache.getMissCount());
+    }
+
+    String report() {
+        StringBuilder sb = new StringBuilder();
+        long fps = elapsedNanos == 0 ? 0 : frameCount * 1_000_000_000L / elapsedNanos;
+        sb.append("Frames: ").append(frameCount).append(" in ").append(TimeUnit.NANOSECONDS.toMillis(elapsedNanos))
+                .append("ms (").append(fps).append(" fps)\n");
+        sb.append("Timeline:\n");
+        for (int i = 0; i < transitionMillis.size(); i++) {
+            sb.append("  ").append(transitionMillis.get(i)).append("ms ").append(transitionStates.get(i)).append('\n');
+        }
+        if (labelled) {
+            sb.append("Mismatches: ").append(mismatches.frames).append(" of ").append(frameCount).append(" frames\n");
+            sb.append(mismatches.spans);
+        }
+        sb.append("Classifier cascade: ").append(cascade).append('\n');
+        sb.append(metrics.summary());
+        return sb.toString();
+    }
+
+    /** Expected state as a step function of the offset from the first frame. */
+    static final class Labels {
+        final long[] millis;
+        final GameState[] states;
+
+        Labels(long[] millis, GameState[] states) {
+            this.millis = millis;
+            this.states = states;
+        }
+
+        /** @return null before the first label */
+        GameState at(long offsetMillis) {
+            int i = Arrays.binarySearch(millis, offsetMillis);
+            if (i < 0) i = -i - 2; // Last label before the offset
+            else while (i + 1 < millis.length && millis[i + 1] == offsetMillis) i++;
+            return i < 0 ? null : states[i];
+        }
+    }
+
+    /** Frames whose state disagrees with the labels, merged into spans that disagree the same way. */
+    static final class Mismatches {
+        final StringBuilder spans = new StringBuilder();
+        long frames;
+        // Current run of frames that disagree with the labels in the same way
+        private long spanStart = -1;
+        private long spanEnd;
+        private long spanFrames;
+        private GameState spanExpected;
+        private GameState spanActual;
+
+        /** {@code expected} is null where there is no label yet, which matches any state. */
+        void compare(long offset, GameState expected, GameState actual) {
+            boolean mismatch = expected != null && expected != actual;
+            if (spanStart >= 0 && (!mismatch || expected != spanExpected || actual != spanActual)) closeSpan();
+            if (!mismatch) return;
+            if (spanStart < 0) {
+                spanStart = offset;
+                spanExpected = expected;
+                spanActual = actual;
+            }
+            spanEnd = offset;
+            spanFrames++;
+            frames++;
+        }
+
+        void closeSpan() {
+            if (spanStart < 0) return;
+            spans.append("  ").append(spanStart).append('-').append(spanEnd).append("ms: expected ").append(spanExpected)
+                    .append(", got ").append(spanActual).append(" (").append(spanFrames).append(" frames)\n");
+            spanStart = -1;
+            spanFrames = 0;
+        }
+    }
+
+    static Labels readLabels(File file) throws IOException {
+        List<Long> millis = new ArrayList<>();
+        List<GameState> states = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] parts = line.split("\\s+");
+                try {
+                    long at = Long.parseLong(parts[0]);
+                    if (!millis.isEmpty() && at < millis.get(millis.size() - 1)) {
+                        throw new IOException(file + ":" + lineNumber + ": labels out of order");
+                    }
+                    millis.add(at);
+                    states.add(GameState.valueOf(parts[1]));
+                } catch (ArrayIndexOutOfBoundsException | IllegalArgumentException e) {
+                    throw new IOException(file + ":" + lineNumber + ": expected '<millis> <state>'", e);
+                }
+            }
+        }
+        long[] times = new long[millis.size()];
+        for (int i = 0; i < times.length; i++) times[i] = millis.get(i);
+        return new Labels(times, states.toArray(new GameState[0]));
+    }
+}
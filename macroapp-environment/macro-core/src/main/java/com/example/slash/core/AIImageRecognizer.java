@@ -0,0 +1,53 @@
+package com.example.slash.core;
+
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Recognises the trigger icon on screen. The template is cut from a captured frame once;
+ * each monitored frame then searches the trigger's search area with a {@link TemplateMatcher}.
+ * {@link #find} must only be called from one thread at a time.
+ */
+public class AIImageRecognizer {
+    private static final int PYRAMID_LEVELS = 4;
+
+    private final ExecutorService executor;
+    private final int threads;
+    private final GrayImage searchImage = new GrayImage();
+    private volatile TemplateMatcher matcher;
+
+    /**
+     * @param executor worker pool used to search image strips in parallel, or null
+     * @param threads  number of strips searched in parallel
+     */
+    public AIImageRecognizer(ExecutorService executor, int threads) {
+        this.executor = executor;
+        this.threads = threads;
+    }
+
+    /**
+     * Uses {@code frame} as the icon to look for.
+     *
+     * @throws IllegalArgumentException if the frame is uniform and cannot be matched
+     */
+    public void setTemplate(RoiFrame frame) {
+        GrayImage template = new GrayImage();
+        template.setFromRgba(frame);
+        matcher = new TemplateMatcher(template, PYRAMID_LEVELS, executor, threads);
+    }
+
+    public void clearTemplate() {
+        matcher = null;
+    }
+
+    public boolean hasTemplate() {
+        return matcher != null;
+    }
+
+    /** Looks for the icon in {@code searchArea}; match coordinates are relative to that area. */
+    public boolean find(RoiFrame searchArea, float threshold, TemplateMatcher.Match out) throws InterruptedException {
+        TemplateMatcher current = matcher;
+        if (current == null) return false;
+        searchImage.setFromRgba(searchArea);
+        return current.match(searchImage, threshold, out);
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.slash.core;
+
+/**
+ * Classifies a horizontal stamina bar from how far its coloured fill reaches. A column counts
+ * as filled when its pixels are bright and saturated enough; the fill ratio then maps to full
+ * (class 0), low (1) or empty (2). Confidence falls to 0 near a class boundary and when the
+ * filled columns do not form a single run from the left edge, i.e. the region does not look
+ * like a bar at all.
+ */
+public final class BarFillClassifier implements StateClassifier {
+    public static final int FULL = 0;
+    public static final int LOW = 1;
+    public static final int EMPTY = 2;
+
+    private static final int SAMPLE_ROWS = 3;
+    private static final float BOUNDARY_MARGIN = 0.1f; // Ratio distance from a boundary that counts as certain
+
+    private final int minValue;       // 0..255
+    private final int minSaturation;  // 0..255
+    private final float lowBelow;
+    private final float emptyBelow;
+    private float lastFillRatio;
+
+    public BarFillClassifier() {
+        this(96, 80, 0.3f, 0.05f);
+    }
+
+    /**
+     * @param lowBelow   fill ratio below which the bar is low
+     * @param emptyBelow fill ratio below which the bar is empty
+     */
+    public BarFillClassifier(int minValue, int minSaturation, float lowBelow, float emptyBelow) {
+        this.minValue = minValue;
+        this.minSaturation = minSaturation;
+        this.lowBelow = lowBelow;
+        this.emptyBelow = emptyBelow;
+    }
+
+    @Override
+    public float classify(RoiFrame frame, float[] scores) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        byte[] pixels = frame.getPixels();
+        int filled = 0;
+        int runs = 0;
+        int firstFilled = -1;
+        boolean previousFilled = false;
+        for (int x = 0; x < width; x++) {
+            int votes = 0;
+            for (int s = 1; s <= SAMPLE_ROWS; s++) {
+                if (isFill(pixels, ((s * height / (SAMPLE_ROWS + 1)) * width + x) * RoiFrame.BYTES_PER_PIXEL)) votes++;
+            }
+            boolean columnFilled = votes * 2 > SAMPLE_ROWS;
+            if (columnFilled) {
+                if (firstFilled < 0) firstFilled = x;
+                filled++;
+                if (!previousFilled) runs++;
+            }
+            previousFilled = columnFilled;
+        }
+        float ratio = width == 0 ? 0 : (float) filled / width;
+        lastFillRatio = ratio;
+
+        int state = ratio < emptyBelow ? EMPTY : ratio < lowBelow ? LOW : FULL;
+        for (int i = 0; i < scores.length; i++) scores[i] = 0;
+        scores[state] = 1;
+
+        // A bar fills from the left, allowing for a thin border
+        if (runs > 1 || firstFilled > width / 20) return 0;
+        float distance;
+        float band; // How far into the class its most certain ratio lies
+        if (state == EMPTY) {
+            distance = emptyBelow - ratio;
+            band = emptyBelow;
+        } else if (state == LOW) {
+            distance = Math.min(ratio - emptyBelow, lowBelow - ratio);
+            band = (lowBelow - emptyBelow) / 2;
+        } else {
+            distance = ratio - lowBelow;
+            band = 1 - lowBelow;
+        }
+        // A class narrower than the margin, such as empty, is certain at its far end
+        return Math.min(1f, distance / Math.min(BOUNDARY_MARGIN, band));
+    }
+
+    /** Fill ratio measured by the last {@link #classify} call. */
+    public float getLastFillRatio() {
+        return lastFillRatio;
+    }
+
+    private boolean isFill(byte[] pixels, int p) {
+        int r = pixels[p] & 0xFF;
+        int g = pixels[p + 1] & 0xFF;
+        int b = pixels[p + 2] & 0xFF;
+        int max = Math.max(r, Math.max(g, b));
+        int min = Math.min(r, Math.min(g, b));
+        return max >= minValue && (max - min) * 255 >= minSaturation * max;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.slash.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Preprocesses ROIs into one packed input buffer and classifies them with as few
+ * {@link BatchModel} runs as its batch size allows. Buffers are allocated once for the
+ * largest batch; {@link #classify} must be called from one thread at a time.
+ */
+public final class BatchInference {
+    private final BatchModel model;
+    private final InputPreprocessor preprocessor;
+    private final NanoClock clock;
+    private final int maxBatch;
+    private final int numClasses;
+    private final ByteBuffer input;
+    private final float[] batchScores;
+    private PipelineMetrics metrics;
+
+    public BatchInference(BatchModel model, InputPreprocessor preprocessor, NanoClock clock) {
+        this.model = model;
+        this.preprocessor = preprocessor;
+        this.clock = clock;
+        this.maxBatch = model.getMaxBatchSize();
+        this.numClasses = model.getNumClasses();
+        if (maxBatch < 1) throw new IllegalArgumentException("Batch size " + maxBatch);
+        input = ByteBuffer.allocateDirect(maxBatch * preprocessor.getInputBytes()).order(ByteOrder.nativeOrder());
+        batchScores = new float[maxBatch * numClasses];
+    }
+
+    /** Records preprocessing and inference times and ROI counts; null to stop. */
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public int getNumClasses() {
+        return numClasses;
+    }
+
+    /**
+     * Runs the model {@code runs} times on a zeroed batch of {@code batchSize}, so the first real
+     * frame does not pay for JIT compilation and tensor allocation. Not recorded in the metrics.
+     */
+    public void warmUp(int runs, int batchSize) {
+        int batch = Math.min(batchSize, maxBatch);
+        int bytes = batch * preprocessor.getInputBytes();
+        input.clear();
+        for (int b = 0; b < bytes; b++) input.put(b, (byte) 0);
+        for (int i = 0; i < runs; i++) {
+            input.position(0).limit(bytes);
+            model.run(input, batch, batchScores);
+        }
+    }
+
+    /** Scores for {@code frames[i]} go to {@code scores[i * numClasses ...]}. */
+    public void classify(RoiFrame[] frames, int count, float[] scores) {
+        for (int offset = 0; offset < count; offset += maxBatch) {
+            int batch = Math.min(maxBatch, count - offset);
+            long start = clock.nanoTime();
+            input.clear();
+            for (int i = 0; i < batch; i++) preprocessor.process(frames[offset + i], input);
+            input.flip();
+            long preprocessed = clock.nanoTime();
+            model.run(input, batch, batchScores);
+            long finished = clock.nanoTime();
+            System.arraycopy(batchScores, 0, scores, offset * numClasses, batch * numClasses);
+            PipelineMetrics m = metrics;
+            if (m != null) {
+                m.histogram(PipelineMetrics.Stage.PREPROCESS).record(preprocessed - start);
+                m.histogram(PipelineMetrics.Stage.INFERENCE).record(finished - preprocessed);
+                m.add(PipelineMetrics.Counter.MODEL_RUNS, 1);
+                m.add(PipelineMetrics.Counter.ROIS_INFERRED, batch);
+            }
+        }
+    }
+}
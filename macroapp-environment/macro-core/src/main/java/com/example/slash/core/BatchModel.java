@@ -0,0 +1,17 @@
+package com.example.slash.core;
+
+import java.nio.ByteBuffer;
+
+/** A classifier that scores several preprocessed ROIs in one call. */
+public interface BatchModel {
+    int getMaxBatchSize();
+
+    int getNumClasses();
+
+    /**
+     * Classifies the first {@code count} items packed back to back in {@code input}, whose
+     * position is 0 and limit covers exactly those items. Scores for item {@code i} go to
+     * {@code scores[i * numClasses ...]}.
+     */
+    void run(ByteBuffer input, int count, float[] scores);
+}
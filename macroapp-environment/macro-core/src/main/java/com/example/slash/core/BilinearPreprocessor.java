@@ -0,0 +1,91 @@
+package com.example.slash.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Shared bilinear resize for {@link InputPreprocessor}s producing HxWx3 RGB tensors.
+ * Sampling tables are rebuilt only when the source size changes, and rows are interpolated
+ * into a reused scratch array before the subclass encodes them into the destination.
+ */
+public abstract class BilinearPreprocessor implements InputPreprocessor {
+    protected static final int CHANNELS = 3;
+
+    protected final int outWidth;
+    protected final int outHeight;
+    private final int[] xLeft, xRight;   // Byte offsets of the neighbouring source pixels in a row
+    private final float[] xWeight;
+    private final int[] yTop, yBottom;   // Source row indices
+    private final float[] yWeight;
+    private final float[] rgbRow;
+    private int srcWidth = -1, srcHeight = -1;
+
+    protected BilinearPreprocessor(int outWidth, int outHeight) {
+        this.outWidth = outWidth;
+        this.outHeight = outHeight;
+        xLeft = new int[outWidth];
+        xRight = new int[outWidth];
+        xWeight = new float[outWidth];
+        yTop = new int[outHeight];
+        yBottom = new int[outHeight];
+        yWeight = new float[outHeight];
+        rgbRow = new float[outWidth * CHANNELS];
+    }
+
+    @Override
+    public void process(RoiFrame frame, ByteBuffer dst) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        if (width != srcWidth || height != srcHeight) {
+            buildTable(width, outWidth, xLeft, xRight, xWeight, RoiFrame.BYTES_PER_PIXEL);
+            buildTable(height, outHeight, yTop, yBottom, yWeight, 1);
+            srcWidth = width;
+            srcHeight = height;
+        }
+        byte[] src = frame.getPixels();
+        int srcRowBytes = width * RoiFrame.BYTES_PER_PIXEL;
+        beginFrame(dst);
+        for (int dy = 0; dy < outHeight; dy++) {
+            int top = yTop[dy] * srcRowBytes;
+            int bottom = yBottom[dy] * srcRowBytes;
+            float wy = yWeight[dy];
+            for (int dx = 0, o = 0; dx < outWidth; dx++) {
+                int l = xLeft[dx];
+                int r = xRight[dx];
+                float wx = xWeight[dx];
+                for (int c = 0; c < CHANNELS; c++, o++) {
+                    float t = (src[top + l + c] & 0xFF) + ((src[top + r + c] & 0xFF) - (src[top + l + c] & 0xFF)) * wx;
+                    float b = (src[bottom + l + c] & 0xFF) + ((src[bottom + r + c] & 0xFF) - (src[bottom + l + c] & 0xFF)) * wx;
+                    rgbRow[o] = t + (b - t) * wy;
+                }
+            }
+            writeRow(rgbRow, dst);
+        }
+        endFrame(dst);
+    }
+
+    /** Called once per frame before the first row; {@code dst.position()} is the tensor start. */
+    protected void beginFrame(ByteBuffer dst) {
+    }
+
+    /** Encodes one interpolated row of {@code outWidth * 3} RGB values in the 0..255 range. */
+    protected abstract void writeRow(float[] rgb, ByteBuffer dst);
+
+    /** Called once per frame after the last row; must leave {@code dst} advanced past the tensor. */
+    protected void endFrame(ByteBuffer dst) {
+    }
+
+    // Pixel-centre aligned mapping, the same convention as Bitmap.createScaledBitmap with filtering.
+    private static void buildTable(int srcSize, int dstSize, int[] lo, int[] hi, float[] weight, int scale) {
+        float ratio = (float) srcSize / dstSize;
+        for (int i = 0; i < dstSize; i++) {
+            float s = (i + 0.5f) * ratio - 0.5f;
+            if (s < 0) s = 0;
+            int s0 = (int) s;
+            if (s0 > srcSize - 1) s0 = srcSize - 1;
+            int s1 = Math.min(s0 + 1, srcSize - 1);
+            lo[i] = s0 * scale;
+            hi[i] = s1 * scale;
+            weight[i] = s - s0 > 1f ? 1f : s - s0;
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.slash.core;
+
+/** One-shot cancellation flag shared between a running task and whoever may stop it. */
+public final class CancellationToken {
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
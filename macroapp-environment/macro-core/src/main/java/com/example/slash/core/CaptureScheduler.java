@@ -0,0 +1,161 @@
+package com.example.slash.core;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Decides which captured frames get processed. {@link #onFrameAvailable()} is called from the
+ * capture thread for every new frame; frames arriving before the next sampling deadline are
+ * discarded unread, and while the processor is busy only the most recent frame is kept
+ * (latest wins). In adaptive mode the sampling interval drops to the minimum as soon as a
+ * processed frame changes state and backs off towards the maximum while the state is stable.
+ * The interval is never shorter than the last frame took to process, and a frame arriving after
+ * the source was quiet for longer than the maximum interval resets it to the minimum, since a
+ * virtual display only produces frames when the screen changes.
+ */
+public final class CaptureScheduler<F> {
+    public interface FrameSource<F> {
+        /** Returns the newest frame, or null if none is ready. */
+        F acquireLatest();
+
+        /** Drains pending frames without reading them. */
+        void discardLatest();
+
+        void release(F frame);
+    }
+
+    public interface FrameProcessor<F> {
+        /** @return true if the frame changed the observed state */
+        boolean process(F frame);
+    }
+
+    private final FrameSource<F> source;
+    private final FrameProcessor<F> processor;
+    private final Executor executor;
+    private final NanoClock clock;
+    private final AtomicReference<F> pending = new AtomicReference<>();
+    private final AtomicBoolean busy = new AtomicBoolean();
+    private final Runnable drainTask = this::drain;
+
+    private volatile boolean running;
+    private volatile long minIntervalNanos;
+    private volatile long maxIntervalNanos;
+    private volatile long intervalNanos;
+    private long lastSampleNanos;
+    private long lastFrameNanos;
+
+    private volatile long processedCount;
+    private volatile long droppedCount;
+    private volatile long skippedCount;
+
+    public CaptureScheduler(FrameSource<F> source, FrameProcessor<F> processor, Executor executor, NanoClock clock) {
+        this.source = source;
+        this.processor = processor;
+        this.executor = executor;
+        this.clock = clock;
+        setTargetFps(2f);
+    }
+
+    /** Samples at a fixed rate. */
+    public void setTargetFps(float fps) {
+        setAdaptiveFps(fps, fps);
+    }
+
+    /** Samples between {@code minFps} while stable and {@code maxFps} while the state is changing. */
+    public void setAdaptiveFps(float minFps, float maxFps) {
+        if (minFps <= 0 || maxFps < minFps) {
+            throw new IllegalArgumentException("Invalid frame rate range " + minFps + ".." + maxFps);
+        }
+        minIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / maxFps);
+        maxIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / minFps);
+        intervalNanos = minIntervalNanos;
+    }
+
+    public void start() {
+        intervalNanos = minIntervalNanos;
+        lastFrameNanos = clock.nanoTime();
+        lastSampleNanos = lastFrameNanos - maxIntervalNanos;
+        running = true;
+    }
+
+    public void stop() {
+        running = false;
+        F frame = pending.getAndSet(null);
+        if (frame != null) source.release(frame);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    /** Call on the capture thread whenever the source has a new frame. */
+    public void onFrameAvailable() {
+        long now = clock.nanoTime();
+        if (now - lastFrameNanos > maxIntervalNanos) intervalNanos = minIntervalNanos;
+        lastFrameNanos = now;
+        // Measured against the current interval, so a change seen by the processor takes effect
+        // on the next frame rather than after the deadline set with the old interval
+        if (!running || now - lastSampleNanos < intervalNanos) {
+            source.discardLatest();
+            if (running) skippedCount++;
+            return;
+        }
+        F frame = source.acquireLatest();
+        if (frame == null) return;
+        lastSampleNanos = now;
+        F replaced = pending.getAndSet(frame);
+        if (replaced != null) {
+            source.release(replaced);
+            droppedCount++;
+        }
+        if (busy.compareAndSet(false, true)) executor.execute(drainTask);
+    }
+
+    private void drain() {
+        F frame;
+        while ((frame = pending.getAndSet(null)) != null) {
+            boolean changed;
+            long startNanos = clock.nanoTime();
+            try {
+                changed = running && processor.process(frame);
+            } finally {
+                source.release(frame);
+            }
+            long tookNanos = clock.nanoTime() - startNanos;
+            processedCount++;
+            long interval = changed ? minIntervalNanos : Math.min(maxIntervalNanos, intervalNanos * 2);
+            // Sampling faster than frames can be processed would only drop more of them
+            intervalNanos = Math.max(interval, Math.min(maxIntervalNanos, tookNanos));
+        }
+        busy.set(false);
+        // A frame may have been posted between the last poll and clearing the busy flag
+        if (pending.get() != null && busy.compareAndSet(false, true)) executor.execute(drainTask);
+    }
+
+    public long getProcessedCount() {
+        return processedCount;
+    }
+
+    /** Frames replaced by a newer one while the processor was busy. */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /** Frames discarded because they arrived before the next sampling deadline. */
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+
+    public void resetCounters() {
+        processedCount = 0;
+        droppedCount = 0;
+        skippedCount = 0;
+    }
+
+    @Override
+    public String toString() {
+        return "processed=" + processedCount + ", dropped=" + droppedCount + ", skipped=" + skippedCount;
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.slash.core;
+
+/**
+ * Maps between screen pixels and the pixels of a downscaled screen capture. Regions map outward,
+ * so a mapped region always covers the one it came from. Capture sizes are rounded to even
+ * numbers, which some compositors require, so the two axes may scale slightly differently.
+ */
+public final class CaptureTransform {
+    /** A rectangle in either space; regions with no area are empty. */
+    public static final class Region {
+        public int x;
+        public int y;
+        public int width;
+        public int height;
+
+        public Region set(int x, int y, int width, int height) {
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            return this;
+        }
+
+        public Region set(Region other) {
+            return set(other.x, other.y, other.width, other.height);
+        }
+
+        public boolean isEmpty() {
+            return width <= 0 || height <= 0;
+        }
+
+        /** Grows this region to also cover {@code other}; empty regions add nothing. */
+        public Region union(Region other) {
+            if (other.isEmpty()) return this;
+            if (isEmpty()) return set(other);
+            int right = Math.max(x + width, other.x + other.width);
+            int bottom = Math.max(y + height, other.y + other.height);
+            x = Math.min(x, other.x);
+            y = Math.min(y, other.y);
+            width = right - x;
+            height = bottom - y;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + x + ", " + y + ") " + width + "x" + height;
+        }
+    }
+
+    private final int screenWidth;
+    private final int screenHeight;
+    private final int captureWidth;
+    private final int captureHeight;
+    private final float scaleX; // Capture pixels per screen pixel
+    private final float scaleY;
+
+    /** @param scale capture size as a fraction of the screen size, in (0, 1] */
+    public CaptureTransform(int screenWidth, int screenHeight, float scale) {
+        if (screenWidth <= 0 || screenHeight <= 0) {
+            throw new IllegalArgumentException("Bad screen size " + screenWidth + "x" + screenHeight);
+        }
+        if (!(scale > 0 && scale <= 1)) throw new IllegalArgumentException("Capture scale must be in (0, 1]: " + scale);
+        this.screenWidth = screenWidth;
+        this.screenHeight = screenHeight;
+        captureWidth = scale == 1 ? screenWidth : evenAtLeastTwo(screenWidth * scale);
+        captureHeight = scale == 1 ? screenHeight : evenAtLeastTwo(screenHeight * scale);
+        scaleX = (float) captureWidth / screenWidth;
+        scaleY = (float) captureHeight / screenHeight;
+    }
+
+    private static int evenAtLeastTwo(float size) {
+        return Math.max(2, Math.round(size / 2) * 2);
+    }
+
+    public int getScreenWidth() {
+        return screenWidth;
+    }
+
+    public int getScreenHeight() {
+        return screenHeight;
+    }
+
+    public int getCaptureWidth() {
+        return captureWidth;
+    }
+
+    public int getCaptureHeight() {
+        return captureHeight;
+    }
+
+    public boolean isIdentity() {
+        return captureWidth == screenWidth && captureHeight == screenHeight;
+    }
+
+    public float toCaptureX(float screenX) {
+        return screenX * scaleX;
+    }
+
+    public float toCaptureY(float screenY) {
+        return screenY * scaleY;
+    }
+
+    public float toScreenX(float captureX) {
+        return captureX / scaleX;
+    }
+
+    public float toScreenY(float captureY) {
+        return captureY / scaleY;
+    }
+
+    /** Maps a screen region into {@code out}, which may be {@code screen} itself. */
+    public Region toCapture(Region screen, Region out) {
+        return map(screen, scaleX, scaleY, out);
+    }
+
+    /** Maps a capture region into {@code out}, which may be {@code capture} itself. */
+    public Region toScreen(Region capture, Region out) {
+        return map(capture, 1 / scaleX, 1 / scaleY, out);
+    }
+
+    private static Region map(Region in, float sx, float sy, Region out) {
+        if (in.isEmpty()) return out.set(in.x, in.y, 0, 0);
+        // Products that land within rounding error of a whole pixel are not pushed out a pixel
+        int left = (int) Math.floor(in.x * sx + 1e-3f);
+        int top = (int) Math.floor(in.y * sy + 1e-3f);
+        int right = (int) Math.ceil((in.x + in.width) * sx - 1e-3f);
+        int bottom = (int) Math.ceil((in.y + in.height) * sy - 1e-3f);
+        return out.set(left, top, Math.max(1, right - left), Math.max(1, bottom - top));
+    }
+
+    @Override
+    public String toString() {
+        return screenWidth + "x" + screenHeight + " -> " + captureWidth + "x" + captureHeight;
+    }
+}
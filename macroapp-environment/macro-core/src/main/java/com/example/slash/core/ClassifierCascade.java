@@ -0,0 +1,134 @@
+package com.example.slash.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Runs cheap {@link StateClassifier}s before expensive ones. Each stage but the last has a
+ * minimum confidence; the first stage that reaches it decides the frame and later stages are
+ * skipped. The last stage always decides. Per-stage call counts, decisions and time are kept
+ * for tuning the thresholds. {@link #classify} must be called from one thread at a time.
+ */
+public final class ClassifierCascade {
+    public static final int UNDECIDED = -1;
+
+    private final NanoClock clock;
+    private final List<String> names = new ArrayList<>();
+    private final List<StateClassifier> stages = new ArrayList<>();
+    private float[] minConfidences = new float[0];
+    private AtomicLongArray calls = new AtomicLongArray(0);
+    private AtomicLongArray decisions = new AtomicLongArray(0);
+    private AtomicLongArray nanos = new AtomicLongArray(0);
+
+    public ClassifierCascade(NanoClock clock) {
+        this.clock = clock;
+    }
+
+    /** Appends a stage; its {@code minConfidence} is ignored while it is the last stage. */
+    public synchronized ClassifierCascade addStage(String name, StateClassifier classifier, float minConfidence) {
+        names.add(name);
+        stages.add(classifier);
+        int count = stages.size();
+        float[] confidences = new float[count];
+        System.arraycopy(minConfidences, 0, confidences, 0, count - 1);
+        confidences[count - 1] = minConfidence;
+        minConfidences = confidences;
+        calls = new AtomicLongArray(count);
+        decisions = new AtomicLongArray(count);
+        nanos = new AtomicLongArray(count);
+        return this;
+    }
+
+    public void setMinConfidence(int stage, float minConfidence) {
+        minConfidences[stage] = minConfidence;
+    }
+
+    /**
+     * Fills {@code scores} from the first confident stage.
+     *
+     * @return index of the stage that decided
+     */
+    public int classify(RoiFrame frame, float[] scores) {
+        int last = stages.size() - 1;
+        if (last < 0) throw new IllegalStateException("Cascade has no stages");
+        int stage = classifyBefore(last, frame, scores);
+        if (stage != UNDECIDED) return stage;
+        long start = clock.nanoTime();
+        stages.get(last).classify(frame, scores);
+        recordDecisions(last, 1, clock.nanoTime() - start);
+        return last;
+    }
+
+    /**
+     * Runs only the stages before {@code end}, leaving later ones to the caller, e.g. to batch
+     * the model stage across several ROIs. The caller reports them with {@link #recordDecisions}.
+     *
+     * @return index of the stage that decided, or {@link #UNDECIDED} if none was confident
+     */
+    public int classifyBefore(int end, RoiFrame frame, float[] scores) {
+        for (int i = 0; i < end; i++) {
+            long start = clock.nanoTime();
+            float confidence = stages.get(i).classify(frame, scores);
+            nanos.addAndGet(i, clock.nanoTime() - start);
+            calls.incrementAndGet(i);
+            if (confidence >= minConfidences[i]) {
+                decisions.incrementAndGet(i);
+                return i;
+            }
+        }
+        return UNDECIDED;
+    }
+
+    /** Accounts for {@code count} frames that {@code stage} decided outside {@link #classify}. */
+    public void recordDecisions(int stage, int count, long elapsedNanos) {
+        nanos.addAndGet(stage, elapsedNanos);
+        calls.addAndGet(stage, count);
+        decisions.addAndGet(stage, count);
+    }
+
+    public int getStageCount() {
+        return stages.size();
+    }
+
+    public String getStageName(int stage) {
+        return names.get(stage);
+    }
+
+    public long getCallCount(int stage) {
+        return calls.get(stage);
+    }
+
+    /** Frames this stage decided. */
+    public long getDecisionCount(int stage) {
+        return decisions.get(stage);
+    }
+
+    public long getAverageNanos(int stage) {
+        long count = calls.get(stage);
+        return count == 0 ? 0 : nanos.get(stage) / count;
+    }
+
+    public void resetCounters() {
+        for (int i = 0; i < stages.size(); i++) {
+            calls.set(i, 0);
+            decisions.set(i, 0);
+            nanos.set(i, 0);
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        long total = 0;
+        for (int i = 0; i < stages.size(); i++) total += decisions.get(i);
+        for (int i = 0; i < stages.size(); i++) {
+            if (i > 0) sb.append(", ");
+            long decided = decisions.get(i);
+            sb.append(names.get(i)).append(": decided ").append(decided)
+                    .append(" (").append(total == 0 ? 0 : decided * 100 / total).append("%)")
+                    .append(", avg ").append(getAverageNanos(i) / 1000).append("us");
+        }
+        return sb.toString();
+    }
+}
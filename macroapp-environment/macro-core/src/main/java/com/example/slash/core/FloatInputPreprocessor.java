@@ -0,0 +1,58 @@
+package com.example.slash.core;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+
+/** Float32 input: each channel becomes {@code (value - mean) / std}, written a row at a time. */
+public final class FloatInputPreprocessor extends BilinearPreprocessor {
+    private final float mean;
+    private final float invStd;
+    private final float[] row;
+    private ByteBuffer viewSource;
+    private FloatBuffer view;
+    private int rowIndex;
+
+    /** Same normalisation as the original convertBitmapToByteBuffer: value / 255. */
+    public FloatInputPreprocessor(int outWidth, int outHeight) {
+        this(outWidth, outHeight, 0f, 255f);
+    }
+
+    public FloatInputPreprocessor(int outWidth, int outHeight, float mean, float std) {
+        super(outWidth, outHeight);
+        this.mean = mean;
+        this.invStd = 1f / std;
+        row = new float[outWidth * CHANNELS];
+    }
+
+    @Override
+    public int getInputBytes() {
+        return outWidth * outHeight * CHANNELS * 4;
+    }
+
+    @Override
+    protected void beginFrame(ByteBuffer dst) {
+        if (dst != viewSource || view.order() != dst.order()) {
+            // Cache one float view per destination, spanning the whole buffer.
+            ByteBuffer whole = dst.duplicate();
+            whole.clear();
+            view = whole.order(dst.order()).asFloatBuffer();
+            viewSource = dst;
+        }
+        view.position(dst.position() / 4);
+        rowIndex = 0;
+    }
+
+    @Override
+    protected void writeRow(float[] rgb, ByteBuffer dst) {
+        for (int i = 0; i < row.length; i++) {
+            row[i] = (rgb[i] - mean) * invStd;
+        }
+        view.put(row, 0, row.length);
+        rowIndex++;
+    }
+
+    @Override
+    protected void endFrame(ByteBuffer dst) {
+        dst.position(dst.position() + rowIndex * row.length * 4);
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.slash.core;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Fans each captured frame out to every subscribed session, so one capture serves any number of
+ * watchers. Subscribers get a reference to the same {@link SharedFrame}, not a copy. Each
+ * subscription runs on its executor one frame at a time and keeps only the newest frame while
+ * busy (latest wins), so a slow session drops its own frames without holding up the others.
+ * Since every subscription has at most one task queued, a pool shared by all of them stays bounded.
+ *
+ * <p>{@link #publish} and {@link #watchedArea} must be called from one thread, normally the
+ * capture thread.
+ */
+public final class FrameBus {
+    public interface Subscriber {
+        /**
+         * Grows {@code out} to cover the capture area this subscriber reads from frames captured
+         * through {@code transform}. Called on the publishing thread before each frame is cut.
+         */
+        void addWatchedArea(CaptureTransform transform, CaptureTransform.Region out);
+
+        /** Called on the subscription's executor; {@code frame} is released when this returns. */
+        void onFrame(SharedFrame frame);
+    }
+
+    public final class Subscription {
+        private final String name;
+        private final Subscriber subscriber;
+        private final Executor executor;
+        private final AtomicReference<SharedFrame> pending = new AtomicReference<>();
+        private final AtomicBoolean busy = new AtomicBoolean();
+        private final Runnable drainTask = this::drain;
+        private volatile boolean active = true;
+        private volatile long deliveredCount;
+        private volatile long droppedCount;
+
+        Subscription(String name, Subscriber subscriber, Executor executor) {
+            this.name = name;
+            this.subscriber = subscriber;
+            this.executor = executor;
+        }
+
+        // Runs on the publishing thread.
+        void offer(SharedFrame frame) {
+            SharedFrame replaced = pending.getAndSet(frame.retain());
+            if (replaced != null) {
+                replaced.release();
+                droppedCount++;
+            }
+            if (busy.compareAndSet(false, true)) schedule();
+        }
+
+        private void schedule() {
+            try {
+                executor.execute(drainTask);
+            } catch (RejectedExecutionException e) {
+                // Shutting down; nothing will run this subscription again
+                busy.set(false);
+                discardPending();
+            }
+        }
+
+        private void drain() {
+            try {
+                SharedFrame frame;
+                while ((frame = pending.getAndSet(null)) != null) {
+                    try {
+                        if (active) subscriber.onFrame(frame);
+                    } finally {
+                        frame.release();
+                    }
+                    deliveredCount++;
+                }
+            } finally {
+                busy.set(false);
+            }
+            // A frame may have been offered between the last poll and clearing the busy flag
+            if (pending.get() != null && busy.compareAndSet(false, true)) schedule();
+        }
+
+        private void discardPending() {
+            SharedFrame frame = pending.getAndSet(null);
+            if (frame != null) frame.release();
+        }
+
+        /** Stops deliveries; a frame already being processed still finishes. */
+        public void cancel() {
+            active = false;
+            subscriptions.remove(this);
+            discardPending();
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getDeliveredCount() {
+            return deliveredCount;
+        }
+
+        /** Frames replaced by a newer one while this subscriber was busy. */
+        public long getDroppedCount() {
+            return droppedCount;
+        }
+
+        @Override
+        public String toString() {
+            return name + ": delivered=" + deliveredCount + ", dropped=" + droppedCount;
+        }
+    }
+
+    private final Executor pool;
+    private final CopyOnWriteArrayList<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+    /** @param pool runs subscriptions that do not bring their own executor */
+    public FrameBus(Executor pool) {
+        this.pool = pool;
+    }
+
+    public Subscription subscribe(String name, Subscriber subscriber) {
+        return subscribe(name, subscriber, pool);
+    }
+
+    /** Runs {@code subscriber} on {@code executor}, for sessions whose state is confined to one thread. */
+    public Subscription subscribe(String name, Subscriber subscriber, Executor executor) {
+        Subscription subscription = new Subscription(name, subscriber, executor);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+
+    public boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    /** Sets {@code out} to the union of the areas all subscribers read; empty if none do. */
+    public CaptureTransform.Region watchedArea(CaptureTransform transform, CaptureTransform.Region out) {
+        out.set(0, 0, 0, 0);
+        for (Subscription subscription : subscriptions) subscription.subscriber.addWatchedArea(transform, out);
+        return out;
+    }
+
+    /**
+     * Hands {@code frame} to every subscriber, each with a reference of its own. The caller keeps
+     * its reference and must still release it.
+     *
+     * @return the number of subscribers the frame went to
+     */
+    public int publish(SharedFrame frame) {
+        int count = 0;
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(frame);
+            count++;
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return subscriptions.toString();
+    }
+}
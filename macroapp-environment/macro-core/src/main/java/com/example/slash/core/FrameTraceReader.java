@@ -0,0 +1,121 @@
+package com.example.slash.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Iterates the records of a trace written by {@link FrameTraceWriter} through a read-only memory
+ * mapping, so pixels are copied once, straight from the page cache into the {@link RoiFrame}.
+ * Traces are limited to 2 GB, the size of one mapping.
+ */
+public final class FrameTraceReader implements Closeable {
+    private final RandomAccessFile file;
+    private final MappedByteBuffer map;
+    private long recordCount;
+    private int recordStart;
+    private int nextRecord = FrameTraceWriter.HEADER_BYTES;
+    private int region;
+    private long timestampNanos;
+    private int width;
+    private int height;
+
+    private FrameTraceReader(RandomAccessFile file, MappedByteBuffer map) {
+        this.file = file;
+        this.map = map;
+    }
+
+    public static FrameTraceReader open(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) throw new IOException("Trace larger than 2 GB: " + file);
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (size < FrameTraceWriter.HEADER_BYTES || map.getInt() != FrameTraceWriter.MAGIC) {
+                throw new IOException("Not a frame trace: " + file);
+            }
+            int version = map.get() & 0xFF;
+            if (version != FrameTraceWriter.VERSION) throw new IOException("Unsupported trace version " + version);
+            return new FrameTraceReader(raf, map);
+        } catch (IOException | RuntimeException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Moves to the next record.
+     *
+     * @return false at the end of the trace, including when the last record is incomplete
+     */
+    public boolean next() {
+        int available = map.limit() - nextRecord;
+        if (available < FrameTraceWriter.RECORD_HEADER_BYTES) return false;
+        int nextWidth = map.getShort(nextRecord + 9) & 0xFFFF;
+        int nextHeight = map.getShort(nextRecord + 11) & 0xFFFF;
+        long bytes = FrameTraceWriter.RECORD_HEADER_BYTES + (long) nextWidth * nextHeight * RoiFrame.BYTES_PER_PIXEL;
+        if (available < bytes) return false;
+        recordStart = nextRecord;
+        region = map.get(recordStart) & 0xFF;
+        timestampNanos = map.getLong(recordStart + 1);
+        width = nextWidth;
+        height = nextHeight;
+        nextRecord += (int) bytes;
+        recordCount++;
+        return true;
+    }
+
+    public int getRegion() {
+        return region;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /** Records read so far. */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /** Bytes up to the end of the current record; once {@link #next()} returns false, the usable trace length. */
+    public long getValidLength() {
+        return nextRecord;
+    }
+
+    /**
+     * Crops {@code (x, y, width, height)} of the current record into {@code dst}, like the capture
+     * path crops a screen image, and copies the record's timestamp.
+     *
+     * @return false if the clipped region is empty
+     */
+    public boolean extract(int x, int y, int width, int height, RoiFrame dst) {
+        map.position(recordStart + FrameTraceWriter.RECORD_HEADER_BYTES);
+        boolean extracted = RoiExtractor.extract(map, this.width, this.height, this.width * RoiFrame.BYTES_PER_PIXEL,
+                RoiFrame.BYTES_PER_PIXEL, x, y, width, height, dst);
+        if (extracted) dst.setTimestampNanos(timestampNanos);
+        return extracted;
+    }
+
+    /** Copies the whole current record into {@code dst}. */
+    public boolean extract(RoiFrame dst) {
+        return extract(0, 0, width, height, dst);
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.slash.core;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Appends captured ROIs to a frame trace, which {@link FrameTraceReader} maps back in for
+ * offline replay.
+ *
+ * <pre>
+ * magic "SLFT" | version u8 | records...
+ * record: region u8 | timestampNanos i64 | width u16 | height u16 | width x height RGBA_8888 pixels
+ * </pre>
+ *
+ * Records are only ever appended. A record cut short by a crash is ignored by the reader and
+ * overwritten the next time the trace is opened for writing. Records go through a buffer, so
+ * they reach the file in batches and on {@link #close()}.
+ */
+public final class FrameTraceWriter implements Closeable {
+    public static final int REGION_STAMINA = 0;
+    public static final int REGION_TRIGGER = 1;
+
+    static final int MAGIC = 0x534C4654; // "SLFT"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 5;
+    static final int RECORD_HEADER_BYTES = 13;
+    static final int MAX_DIMENSION = 0xFFFF;
+    private static final int BUFFER_BYTES = 256 * 1024;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES);
+    private long recordCount;
+
+    private FrameTraceWriter(RandomAccessFile file) {
+        this.file = file;
+        this.channel = file.getChannel();
+    }
+
+    /** Opens {@code file} for appending, creating it with a header if it is new or empty. */
+    public static FrameTraceWriter open(File file) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        long validLength = 0;
+        if (file.length() > 0) {
+            try (FrameTraceReader reader = FrameTraceReader.open(file)) {
+                while (reader.next()) {
+                    // Skip to the end of the last complete record
+                }
+                validLength = reader.getValidLength();
+            }
+        }
+        FrameTraceWriter writer = new FrameTraceWriter(new RandomAccessFile(file, "rw"));
+        try {
+            writer.channel.truncate(validLength);
+            writer.channel.position(validLength);
+            if (validLength == 0) {
+                writer.buffer.putInt(MAGIC).put((byte) VERSION);
+            }
+        } catch (IOException e) {
+            writer.file.close();
+            throw e;
+        }
+        return writer;
+    }
+
+    /** Appends the pixels of {@code frame}; its timestamp is recorded as is. */
+    public void append(int region, RoiFrame frame) throws IOException {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        if (width > MAX_DIMENSION || height > MAX_DIMENSION) {
+            throw new IllegalArgumentException("Frame too large for a trace: " + width + "x" + height);
+        }
+        if (buffer.remaining() < RECORD_HEADER_BYTES) flush();
+        buffer.put((byte) region)
+                .putLong(frame.getTimestampNanos())
+                .putShort((short) width)
+                .putShort((short) height);
+        byte[] pixels = frame.getPixels();
+        int offset = 0;
+        int remaining = frame.getByteCount();
+        while (remaining > 0) {
+            if (!buffer.hasRemaining()) flush();
+            int chunk = Math.min(remaining, buffer.remaining());
+            buffer.put(pixels, offset, chunk);
+            offset += chunk;
+            remaining -= chunk;
+        }
+        recordCount++;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /** Writes buffered records to the file. */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            file.close();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.slash.core;
+
+/** What the monitored screen regions currently show. */
+public enum GameState {
+    STAMINA_FULL, STAMINA_LOW, STAMINA_EMPTY, IN_BATTLE, IDLE;
+
+    /** Maps the highest of the full/low/empty classifier scores to a state. */
+    public static GameState fromScores(float[] scores) {
+        int maxIndex = 0;
+        for (int i = 1; i < scores.length; i++) {
+            if (scores[i] > scores[maxIndex]) maxIndex = i;
+        }
+        return fromClass(maxIndex);
+    }
+
+    /** Maps a {@link BarFillClassifier} class index to a state. */
+    public static GameState fromClass(int classIndex) {
+        switch (classIndex) {
+            case BarFillClassifier.FULL: return STAMINA_FULL;
+            case BarFillClassifier.LOW: return STAMINA_LOW;
+            case BarFillClassifier.EMPTY: return STAMINA_EMPTY;
+            default: throw new IllegalArgumentException("Unknown class " + classIndex);
+        }
+    }
+
+    public boolean isStaminaDepleted() {
+        return this == STAMINA_LOW || this == STAMINA_EMPTY;
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.slash.core;
+
+/** 8-bit luma image backed by a reusable byte array. */
+public final class GrayImage {
+    private byte[] pixels = new byte[0];
+    private int width;
+    private int height;
+
+    public GrayImage() {
+    }
+
+    public GrayImage(int width, int height, byte[] pixels) {
+        if (pixels.length < width * height) throw new IllegalArgumentException("Pixel array too small");
+        this.width = width;
+        this.height = height;
+        this.pixels = pixels;
+    }
+
+    public void reset(int width, int height) {
+        if (pixels.length < width * height) pixels = new byte[width * height];
+        this.width = width;
+        this.height = height;
+    }
+
+    /** Converts an RGBA frame using BT.601 weights. */
+    public void setFromRgba(RoiFrame frame) {
+        reset(frame.getWidth(), frame.getHeight());
+        byte[] rgba = frame.getPixels();
+        int count = width * height;
+        for (int i = 0, p = 0; i < count; i++, p += RoiFrame.BYTES_PER_PIXEL) {
+            pixels[i] = (byte) (((rgba[p] & 0xFF) * 77 + (rgba[p + 1] & 0xFF) * 150 + (rgba[p + 2] & 0xFF) * 29) >> 8);
+        }
+    }
+
+    /** Writes a half-resolution copy into {@code dst} using 2x2 box filtering. */
+    public void downsample(GrayImage dst) {
+        int w = width / 2;
+        int h = height / 2;
+        dst.reset(w, h);
+        byte[] out = dst.pixels;
+        for (int y = 0; y < h; y++) {
+            int top = 2 * y * width;
+            int bottom = top + width;
+            for (int x = 0, o = y * w; x < w; x++, o++) {
+                int s = (pixels[top + 2 * x] & 0xFF) + (pixels[top + 2 * x + 1] & 0xFF)
+                        + (pixels[bottom + 2 * x] & 0xFF) + (pixels[bottom + 2 * x + 1] & 0xFF);
+                out[o] = (byte) ((s + 2) >> 2);
+            }
+        }
+    }
+
+    public byte[] getPixels() {
+        return pixels;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.slash.core;
+
+/**
+ * Skips inference for frames whose {@link RoiFingerprint} matches the previous frame, and
+ * remembers class scores for a bounded set of recently seen fingerprints (least recently
+ * used entries are evicted). Two fingerprints match when their Hamming distance is at most
+ * {@code maxDistance} and their {@link RoiFingerprint#getMeanLuma() mean lumas} differ by at
+ * most {@code maxLumaDelta}. Lookups and stores must come from one thread; counters may be read
+ * from any thread.
+ */
+public final class InferenceCache {
+    public static final int MISS = 0;
+    public static final int UNCHANGED = 1; // Same as the previous frame; the current state still holds
+    public static final int CACHED = 2;    // Scores copied from an earlier frame
+
+    private final int maxDistance;
+    private final int maxLumaDelta;
+    private final long[] keys;
+    private final int[] lumas;
+    private final float[][] values;
+    private final long[] lastUsed;
+    private int size;
+    private long tick;
+    private boolean hasPrevious;
+    private long previous;
+    private int previousLuma;
+
+    private volatile long unchangedCount;
+    private volatile long cachedCount;
+    private volatile long missCount;
+
+    public InferenceCache(int capacity, int numClasses, int maxDistance, int maxLumaDelta) {
+        this.maxDistance = maxDistance;
+        this.maxLumaDelta = maxLumaDelta;
+        keys = new long[capacity];
+        lumas = new int[capacity];
+        values = new float[capacity][numClasses];
+        lastUsed = new long[capacity];
+    }
+
+    /** Classifies {@code fingerprint} as unchanged, cached (scores copied into {@code out}) or a miss. */
+    public int lookup(long fingerprint, int meanLuma, float[] out) {
+        if (hasPrevious && matches(previous, previousLuma, fingerprint, meanLuma)) {
+            unchangedCount++;
+            return UNCHANGED;
+        }
+        int best = -1;
+        int bestDistance = maxDistance + 1;
+        for (int i = 0; i < size; i++) {
+            if (Math.abs(lumas[i] - meanLuma) > maxLumaDelta) continue;
+            int d = RoiFingerprint.distance(keys[i], fingerprint);
+            if (d < bestDistance) {
+                best = i;
+                bestDistance = d;
+            }
+        }
+        if (best < 0) {
+            missCount++;
+            return MISS;
+        }
+        lastUsed[best] = ++tick;
+        System.arraycopy(values[best], 0, out, 0, out.length);
+        previous = fingerprint;
+        previousLuma = meanLuma;
+        hasPrevious = true;
+        cachedCount++;
+        return CACHED;
+    }
+
+    /** Records the scores computed for a fingerprint that missed. */
+    public void store(long fingerprint, int meanLuma, float[] scores) {
+        int slot;
+        if (size < keys.length) {
+            slot = size++;
+        } else {
+            slot = 0;
+            for (int i = 1; i < size; i++) {
+                if (lastUsed[i] < lastUsed[slot]) slot = i;
+            }
+        }
+        keys[slot] = fingerprint;
+        lumas[slot] = meanLuma;
+        lastUsed[slot] = ++tick;
+        System.arraycopy(scores, 0, values[slot], 0, values[slot].length);
+        previous = fingerprint;
+        previousLuma = meanLuma;
+        hasPrevious = true;
+    }
+
+    private boolean matches(long a, int aLuma, long b, int bLuma) {
+        return RoiFingerprint.distance(a, b) <= maxDistance && Math.abs(aLuma - bLuma) <= maxLumaDelta;
+    }
+
+    /** Forgets every entry, e.g. after the watched region or the model changes. */
+    public void clear() {
+        size = 0;
+        hasPrevious = false;
+    }
+
+    public void resetCounters() {
+        unchangedCount = 0;
+        cachedCount = 0;
+        missCount = 0;
+    }
+
+    public long getUnchangedCount() {
+        return unchangedCount;
+    }
+
+    public long getCachedCount() {
+        return cachedCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /** Inferences avoided so far, i.e. unchanged plus cached frames. */
+    public long getSavedCount() {
+        return unchangedCount + cachedCount;
+    }
+
+    @Override
+    public String toString() {
+        return "unchanged=" + unchangedCount + ", cached=" + cachedCount + ", misses=" + missCount;
+    }
+}
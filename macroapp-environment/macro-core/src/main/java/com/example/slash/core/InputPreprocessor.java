@@ -0,0 +1,12 @@
+package com.example.slash.core;
+
+import java.nio.ByteBuffer;
+
+/** Converts a captured {@link RoiFrame} into the model's input tensor layout. */
+public interface InputPreprocessor {
+    /** Number of bytes written per frame. */
+    int getInputBytes();
+
+    /** Writes one input tensor at {@code dst.position()} and advances it by {@link #getInputBytes()}. */
+    void process(RoiFrame frame, ByteBuffer dst);
+}
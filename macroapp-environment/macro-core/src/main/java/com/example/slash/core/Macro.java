@@ -0,0 +1,144 @@
+package com.example.slash.core;
+
+import java.util.Arrays;
+
+/**
+ * Recorded macro stored as parallel primitive arrays: the action kind, its position and the time
+ * since the previous action in microseconds (0 for the first action). A gesture is a
+ * {@link #DOWN}, any number of {@link #MOVE}s and an {@link #UP}; a {@link #TAP} is a complete
+ * press at one point. Instances are immutable; use {@link Builder} while recording.
+ */
+public final class Macro {
+    public static final byte TAP = 0;
+    public static final byte DOWN = 1;
+    public static final byte MOVE = 2;
+    public static final byte UP = 3;
+
+    private static final String[] KIND_NAMES = {"TAP", "DOWN", "MOVE", "UP"};
+
+    public static final Macro EMPTY = new Macro(new byte[0], new float[0], new float[0], new int[0]);
+
+    private final byte[] kinds;
+    private final float[] x;
+    private final float[] y;
+    private final int[] deltaMicros;
+
+    /** A macro of taps only. */
+    public Macro(float[] x, float[] y, int[] deltaMicros) {
+        this(new byte[x.length], x, y, deltaMicros);
+    }
+
+    public Macro(byte[] kinds, float[] x, float[] y, int[] deltaMicros) {
+        if (kinds.length != x.length || x.length != y.length || x.length != deltaMicros.length) {
+            throw new IllegalArgumentException("Array lengths differ");
+        }
+        this.kinds = kinds;
+        this.x = x;
+        this.y = y;
+        this.deltaMicros = deltaMicros;
+    }
+
+    public int size() {
+        return x.length;
+    }
+
+    public static String kindName(byte kind) {
+        return kind >= 0 && kind < KIND_NAMES.length ? KIND_NAMES[kind] : "KIND_" + kind;
+    }
+
+    public byte getKind(int index) {
+        return kinds[index];
+    }
+
+    public float getX(int index) {
+        return x[index];
+    }
+
+    public float getY(int index) {
+        return y[index];
+    }
+
+    public int getDeltaMicros(int index) {
+        return deltaMicros[index];
+    }
+
+    /** Total duration from the first to the last action. */
+    public long getDurationMicros() {
+        long total = 0;
+        for (int i = 1; i < deltaMicros.length; i++) total += deltaMicros[i];
+        return total;
+    }
+
+    public boolean isEmpty() {
+        return x.length == 0;
+    }
+
+    /**
+     * Actions {@code from} (inclusive) to {@code to} (exclusive). Deltas are kept as they are, so
+     * slices played back to back time out like the whole macro.
+     */
+    public Macro slice(int from, int to) {
+        return new Macro(Arrays.copyOfRange(kinds, from, to), Arrays.copyOfRange(x, from, to),
+                Arrays.copyOfRange(y, from, to), Arrays.copyOfRange(deltaMicros, from, to));
+    }
+
+    public static final class Builder {
+        private byte[] kinds = new byte[64];
+        private float[] x = new float[64];
+        private float[] y = new float[64];
+        private int[] deltaMicros = new int[64];
+        private int size;
+        private long lastTimestampNanos;
+
+        /** Appends a tap recorded at {@code timestampNanos} (any monotonic time base). */
+        public Builder add(float x, float y, long timestampNanos) {
+            return add(TAP, x, y, timestampNanos);
+        }
+
+        public Builder add(byte kind, float x, float y, long timestampNanos) {
+            long delta = size == 0 ? 0 : (timestampNanos - lastTimestampNanos) / 1000;
+            return append(kind, x, y, (int) Math.max(0, Math.min(Integer.MAX_VALUE, delta)), timestampNanos);
+        }
+
+        private Builder append(byte kind, float x, float y, int deltaMicros, long timestampNanos) {
+            if (size == this.x.length) {
+                int capacity = size * 2;
+                this.kinds = Arrays.copyOf(this.kinds, capacity);
+                this.x = Arrays.copyOf(this.x, capacity);
+                this.y = Arrays.copyOf(this.y, capacity);
+                this.deltaMicros = Arrays.copyOf(this.deltaMicros, capacity);
+            }
+            this.kinds[size] = kind;
+            this.x[size] = x;
+            this.y[size] = y;
+            this.deltaMicros[size] = deltaMicros;
+            size++;
+            lastTimestampNanos = timestampNanos;
+            return this;
+        }
+
+        /** Appends a tap {@code deltaMicros} after the previous action. */
+        public Builder addDelta(float x, float y, int deltaMicros) {
+            return addDelta(TAP, x, y, deltaMicros);
+        }
+
+        public Builder addDelta(byte kind, float x, float y, int deltaMicros) {
+            // Actions run in order, and MacroCodec sizes its buffer for non-negative delays
+            if (deltaMicros < 0) throw new IllegalArgumentException("Negative delay " + deltaMicros);
+            return append(kind, x, y, deltaMicros, lastTimestampNanos + deltaMicros * 1000L);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void clear() {
+            size = 0;
+        }
+
+        public Macro build() {
+            return new Macro(Arrays.copyOf(kinds, size), Arrays.copyOf(x, size), Arrays.copyOf(y, size),
+                    Arrays.copyOf(deltaMicros, size));
+        }
+    }
+}
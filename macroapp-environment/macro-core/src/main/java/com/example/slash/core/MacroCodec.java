@@ -0,0 +1,161 @@
+package com.example.slash.core;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Versioned binary encoding for {@link Macro}s.
+ *
+ * <pre>
+ * magic "SLMC" | version u8 | count varint | count x (deltaMicros &lt;&lt; 2 | kind varint, dx zigzag varint, dy zigzag varint)
+ * </pre>
+ *
+ * Coordinates are stored in 1/16 px fixed point as differences from the previous action, so
+ * repeated taps on nearby buttons take a byte or two each. Version 1 files have no kind bits
+ * and decode as taps.
+ */
+public final class MacroCodec {
+    public static final int VERSION = 2;
+    private static final int VERSION_TAPS_ONLY = 1;
+    private static final int MAGIC = 0x534C4D43; // "SLMC"
+    private static final float FIXED_POINT_SCALE = 16f;
+    private static final int MIN_ACTION_BYTES = 3; // One byte per varint
+
+    private MacroCodec() {
+    }
+
+    public static byte[] encode(Macro macro) {
+        int count = macro.size();
+        byte[] out = new byte[10 + count * 15]; // Worst case: three 5-byte varints per action
+        int p = 0;
+        out[p++] = (byte) (MAGIC >>> 24);
+        out[p++] = (byte) (MAGIC >>> 16);
+        out[p++] = (byte) (MAGIC >>> 8);
+        out[p++] = (byte) MAGIC;
+        out[p++] = VERSION;
+        p = writeVarint(out, p, count);
+        int lastX = 0, lastY = 0;
+        for (int i = 0; i < count; i++) {
+            int fx = Math.round(macro.getX(i) * FIXED_POINT_SCALE);
+            int fy = Math.round(macro.getY(i) * FIXED_POINT_SCALE);
+            p = writeVarint(out, p, ((long) macro.getDeltaMicros(i) << 2) | macro.getKind(i));
+            p = writeVarint(out, p, zigzag(fx - lastX));
+            p = writeVarint(out, p, zigzag(fy - lastY));
+            lastX = fx;
+            lastY = fy;
+        }
+        return Arrays.copyOf(out, p);
+    }
+
+    /** Decodes a macro starting at {@code in.position()}; the buffer is left after the last action. */
+    public static Macro decode(ByteBuffer in) throws IOException {
+        try {
+            if (in.getInt() != MAGIC) throw new IOException("Not a macro file");
+            int version = in.get() & 0xFF;
+            if (version != VERSION && version != VERSION_TAPS_ONLY) {
+                throw new IOException("Unsupported macro version " + version);
+            }
+            int count = readVarint(in);
+            // Every action takes at least three bytes, so a corrupt count fails here, not in new[]
+            if (count < 0 || count > in.remaining() / MIN_ACTION_BYTES) {
+                throw new IOException("Bad action count " + count + " for " + in.remaining() + " bytes");
+            }
+            byte[] kinds = new byte[count];
+            float[] x = new float[count];
+            float[] y = new float[count];
+            int[] deltaMicros = new int[count];
+            int fx = 0, fy = 0;
+            for (int i = 0; i < count; i++) {
+                if (version == VERSION_TAPS_ONLY) {
+                    deltaMicros[i] = readVarint(in);
+                } else {
+                    long timing = readVarint64(in);
+                    kinds[i] = (byte) (timing & 3);
+                    deltaMicros[i] = (int) (timing >>> 2);
+                }
+                if (deltaMicros[i] < 0) throw new IOException("Bad delay " + deltaMicros[i] + " at action " + i);
+                fx += unzigzag(readVarint(in));
+                fy += unzigzag(readVarint(in));
+                x[i] = fx / FIXED_POINT_SCALE;
+                y[i] = fy / FIXED_POINT_SCALE;
+            }
+            return new Macro(kinds, x, y, deltaMicros);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated macro data", e);
+        }
+    }
+
+    /** Writes the encoded macro to {@code file}, replacing it atomically. */
+    public static void write(Macro macro, File file) throws IOException {
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temp)) {
+            out.write(encode(macro));
+            out.getFD().sync();
+        }
+        if (!temp.renameTo(file)) throw new IOException("Cannot replace " + file);
+    }
+
+    /** Reads a macro file through a read-only memory mapping. */
+    public static Macro read(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    static int writeVarint(byte[] out, int p, int value) {
+        while ((value & ~0x7F) != 0) {
+            out[p++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[p++] = (byte) value;
+        return p;
+    }
+
+    static int writeVarint(byte[] out, int p, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out[p++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[p++] = (byte) value;
+        return p;
+    }
+
+    static long readVarint64(ByteBuffer in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static int readVarint(ByteBuffer in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.slash.core;
+
+/**
+ * Compiles a recorded {@link Macro} into a {@link MacroProgram}, optionally wrapped in game
+ * rules: repeat the recording, stop or recover when the monitor reports certain states, and
+ * resume once a state returns. The layout is
+ *
+ * <pre>
+ *   main:     LOOP repeats; CALL body; END_LOOP; END
+ *   body:     per action: WAIT delta; [IF_STATE haltMask -&gt; trouble]; TAP | SWIPE | TOUCH; ... RET
+ *   trouble:  [CALL recovery] then WAIT_UNTIL resumeMask; RET (next pass) or HALT
+ *   recovery: the recovery macro; RET
+ * </pre>
+ *
+ * State checks sit only in front of taps and gesture starts, so a gesture is never cut in half.
+ * {@link #compileStream} moves the body last so it can grow page by page while it runs.
+ */
+public final class MacroCompiler {
+    private int repeats = 1;
+    private int haltStateMask;
+    private Macro recovery;
+    private int resumeStateMask;
+
+    /** Runs the recording {@code times} times, or forever for 0. */
+    public MacroCompiler repeat(int times) {
+        if (times < 0) throw new IllegalArgumentException("Negative repeat count " + times);
+        repeats = times;
+        return this;
+    }
+
+    /** Abandons the current pass when the monitored state is in {@code stateMask}. */
+    public MacroCompiler stopWhen(int stateMask) {
+        haltStateMask = stateMask;
+        return this;
+    }
+
+    /** Played after a pass is abandoned, e.g. tapping a rest button; null for none. */
+    public MacroCompiler recoverWith(Macro macro) {
+        recovery = macro;
+        return this;
+    }
+
+    /**
+     * After recovering, waits for a state in {@code stateMask} and continues with the next pass
+     * instead of halting; 0 halts.
+     */
+    public MacroCompiler resumeWhen(int stateMask) {
+        resumeStateMask = stateMask;
+        return this;
+    }
+
+    public MacroProgram compile(Macro macro) {
+        MacroProgram.Builder program = new MacroProgram.Builder();
+        MacroProgram.Builder.Label body = program.newLabel();
+        MacroProgram.Builder.Label trouble = program.newLabel();
+
+        program.loop(repeats).call(body).endLoop().end();
+
+        program.bind(body);
+        emitActions(program, macro, haltStateMask, trouble);
+        program.ret();
+
+        emitTrouble(program, trouble);
+        return program.build();
+    }
+
+    /**
+     * Compiles a macro that is still loading. The body starts out empty and is extended with
+     * {@link ProgramStream#append} for each page; replay can start as soon as the first one is in.
+     */
+    public ProgramStream compileStream() {
+        MacroProgram.Builder program = new MacroProgram.Builder();
+        MacroProgram.Builder.Label body = program.newLabel();
+        MacroProgram.Builder.Label trouble = program.newLabel();
+
+        program.loop(repeats).call(body).endLoop().end();
+        emitTrouble(program, trouble);
+        program.bind(body);
+        return new ProgramStream(program, haltStateMask, trouble);
+    }
+
+    private void emitTrouble(MacroProgram.Builder program, MacroProgram.Builder.Label trouble) {
+        if (haltStateMask == 0) return;
+        MacroProgram.Builder.Label recoveryStart = program.newLabel();
+        program.bind(trouble);
+        if (recovery != null && !recovery.isEmpty()) program.call(recoveryStart);
+        if (resumeStateMask != 0) {
+            program.waitUntil(resumeStateMask, 0).ret();
+        } else {
+            program.halt();
+        }
+        if (recovery != null && !recovery.isEmpty()) {
+            program.bind(recoveryStart);
+            emitActions(program, recovery, 0, null);
+            program.ret();
+        }
+    }
+
+    static void emitActions(MacroProgram.Builder program, Macro macro, int checkMask,
+                                     MacroProgram.Builder.Label onMatch) {
+        int i = 0;
+        int count = macro.size();
+        while (i < count) {
+            byte kind = macro.getKind(i);
+            program.waitMicros(macro.getDeltaMicros(i));
+            if (checkMask != 0 && kind != Macro.MOVE && kind != Macro.UP) program.ifState(checkMask, onMatch);
+            if (kind == Macro.DOWN && i + 1 < count && macro.getKind(i + 1) == Macro.UP) {
+                // A gesture simplified down to its endpoints is a straight swipe
+                program.swipe(macro.getX(i), macro.getY(i), macro.getX(i + 1), macro.getY(i + 1),
+                        macro.getDeltaMicros(i + 1));
+                i += 2;
+            } else if (kind == Macro.TAP) {
+                program.tap(macro.getX(i), macro.getY(i));
+                i++;
+            } else {
+                program.touch(kind, macro.getX(i), macro.getY(i));
+                i++;
+            }
+        }
+    }
+}
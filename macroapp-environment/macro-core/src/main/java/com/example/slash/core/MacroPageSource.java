@@ -0,0 +1,36 @@
+package com.example.slash.core;
+
+import java.io.IOException;
+
+/**
+ * Remote store that keeps each macro as a manifest plus {@link MacroPages pages}, so a macro can
+ * be fetched a page at a time. Calls are made from a background thread and may block.
+ */
+public interface MacroPageSource {
+    final class Manifest {
+        public final String name;
+        public final long version;
+        public final int pageCount;
+        public final int actionCount;
+        /** The whole macro for stores that kept it in the manifest itself; null when paged. */
+        public final byte[] inlineData;
+
+        public Manifest(String name, long version, int pageCount, int actionCount, byte[] inlineData) {
+            this.name = name;
+            this.version = version;
+            this.pageCount = pageCount;
+            this.actionCount = actionCount;
+            this.inlineData = inlineData;
+        }
+    }
+
+    /** Returns the named macro's manifest, or null if it does not exist remotely. */
+    Manifest fetchManifest(String name) throws IOException;
+
+    /**
+     * Returns page {@code index} of {@code manifest}'s macro in {@link MacroCodec} encoding.
+     *
+     * @throws IOException also if the page is missing or belongs to another version of the macro
+     */
+    byte[] fetchPage(Manifest manifest, int index) throws IOException;
+}
@@ -0,0 +1,51 @@
+package com.example.slash.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits macros into pages small enough to store and fetch one at a time, and joins them back.
+ * Pages end after a tap or the end of a gesture where possible, so waiting for the next page
+ * never leaves a finger on the screen.
+ */
+public final class MacroPages {
+    public static final int DEFAULT_PAGE_ACTIONS = 1000; // About 5 KB encoded
+
+    private MacroPages() {
+    }
+
+    /** Splits {@code macro} into pages of at most {@code maxActions} actions; none for an empty macro. */
+    public static List<Macro> split(Macro macro, int maxActions) {
+        if (maxActions <= 0) throw new IllegalArgumentException("Page size must be positive: " + maxActions);
+        List<Macro> pages = new ArrayList<>();
+        int count = macro.size();
+        int from = 0;
+        while (from < count) {
+            int to = Math.min(from + maxActions, count);
+            if (to < count) {
+                // Back off to the last gesture boundary; a single gesture longer than a page is cut
+                int end = to;
+                while (end > from && !endsGesture(macro.getKind(end - 1))) end--;
+                if (end > from) to = end;
+            }
+            pages.add(macro.slice(from, to));
+            from = to;
+        }
+        return pages;
+    }
+
+    public static Macro join(List<Macro> pages) {
+        if (pages.size() == 1) return pages.get(0);
+        Macro.Builder builder = new Macro.Builder();
+        for (Macro page : pages) {
+            for (int i = 0; i < page.size(); i++) {
+                builder.addDelta(page.getKind(i), page.getX(i), page.getY(i), page.getDeltaMicros(i));
+            }
+        }
+        return builder.build();
+    }
+
+    private static boolean endsGesture(byte kind) {
+        return kind == Macro.TAP || kind == Macro.UP;
+    }
+}
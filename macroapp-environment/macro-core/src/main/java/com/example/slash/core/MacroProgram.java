@@ -0,0 +1,249 @@
+package com.example.slash.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A macro compiled to a flat int array of instructions, each an opcode followed by its operands.
+ * Coordinates are stored as raw float bits, times in microseconds, jump targets as code offsets
+ * and state conditions as masks of {@code 1 << GameState.ordinal()}. Execution starts at offset
+ * 0; see {@link ReplayEngine} for the semantics.
+ */
+public final class MacroProgram {
+    public static final int END = 0;         // Finish normally
+    public static final int TAP = 1;         // x, y
+    public static final int TOUCH = 2;       // kind, x, y (a DOWN, MOVE or UP of a longer gesture)
+    public static final int SWIPE = 3;       // x1, y1, x2, y2, durationMicros
+    public static final int WAIT = 4;        // micros
+    public static final int WAIT_UNTIL = 5;  // stateMask, timeoutMicros (0 waits forever)
+    public static final int IF_STATE = 6;    // stateMask, target
+    public static final int JUMP = 7;        // target
+    public static final int LOOP = 8;        // count (0 repeats forever); the body follows
+    public static final int END_LOOP = 9;    // bodyStart
+    public static final int CALL = 10;       // target
+    public static final int RET = 11;
+    public static final int HALT = 12;       // Stop because a rule said so
+    public static final int MORE = 13;       // Wait for a ProgramStream to load what follows
+
+    private static final String[] NAMES = {"END", "TAP", "TOUCH", "SWIPE", "WAIT", "WAIT_UNTIL", "IF_STATE",
+            "JUMP", "LOOP", "END_LOOP", "CALL", "RET", "HALT", "MORE"};
+    private static final int[] OPERANDS = {0, 2, 3, 5, 1, 2, 2, 1, 1, 1, 1, 0, 0, 0};
+
+    private final int[] code;
+
+    private MacroProgram(int[] code) {
+        this.code = code;
+    }
+
+    /** The instructions; shared, not copied, so callers must not modify it. */
+    int[] code() {
+        return code;
+    }
+
+    public int length() {
+        return code.length;
+    }
+
+    public static int mask(GameState state) {
+        return 1 << state.ordinal();
+    }
+
+    public static int mask(GameState... states) {
+        int mask = 0;
+        for (GameState state : states) mask |= mask(state);
+        return mask;
+    }
+
+    static int operandCount(int opcode) {
+        return OPERANDS[opcode];
+    }
+
+    /** One instruction per line, for logs. */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int pc = 0; pc < code.length; pc += 1 + OPERANDS[code[pc]]) {
+            int op = code[pc];
+            sb.append(pc).append(": ").append(NAMES[op]);
+            for (int i = 1; i <= OPERANDS[op]; i++) {
+                boolean isFloat = (op == TAP && i <= 2) || (op == TOUCH && i >= 2) || (op == SWIPE && i <= 4);
+                sb.append(' ');
+                if (isFloat) sb.append(Float.intBitsToFloat(code[pc + i]));
+                else sb.append(code[pc + i]);
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Assembles a program. Forward jumps use {@link Label}s that are bound once their position
+     * is known; {@link #build} fails if any label used is still unbound.
+     */
+    public static final class Builder {
+        private int[] code = new int[64];
+        private int size;
+        private int lastOpcodeAt = -1;
+        private final List<Label> labels = new ArrayList<>();
+        private int[] loopStarts = new int[8]; // Body starts of the open loops
+        private int openLoops;
+
+        public static final class Label {
+            private int position = -1;
+            private int[] uses = new int[4];
+            private int useCount;
+        }
+
+        public Label newLabel() {
+            Label label = new Label();
+            labels.add(label);
+            return label;
+        }
+
+        /** Points {@code label} at the next instruction. */
+        public Builder bind(Label label) {
+            if (label.position >= 0) throw new IllegalStateException("Label bound twice");
+            label.position = size;
+            return this;
+        }
+
+        public Builder tap(float x, float y) {
+            return emit(TAP).floatOperand(x).floatOperand(y);
+        }
+
+        public Builder touch(byte kind, float x, float y) {
+            return emit(TOUCH).operand(kind).floatOperand(x).floatOperand(y);
+        }
+
+        public Builder swipe(float x1, float y1, float x2, float y2, int durationMicros) {
+            return emit(SWIPE).floatOperand(x1).floatOperand(y1).floatOperand(x2).floatOperand(y2)
+                    .operand(durationMicros);
+        }
+
+        /** Waits that follow each other are merged into one instruction. */
+        public Builder waitMicros(int micros) {
+            if (micros <= 0) return this;
+            if (lastOpcodeAt >= 0 && code[lastOpcodeAt] == WAIT && !isJumpTarget(size)) {
+                code[size - 1] = (int) Math.min(Integer.MAX_VALUE, (long) code[size - 1] + micros);
+                return this;
+            }
+            return emit(WAIT).operand(micros);
+        }
+
+        public Builder waitUntil(int stateMask, int timeoutMicros) {
+            return emit(WAIT_UNTIL).operand(stateMask).operand(timeoutMicros);
+        }
+
+        public Builder ifState(int stateMask, Label target) {
+            return emit(IF_STATE).operand(stateMask).target(target);
+        }
+
+        public Builder jump(Label target) {
+            return emit(JUMP).target(target);
+        }
+
+        /** Starts a loop body that runs {@code count} times, or forever for 0; close it with {@link #endLoop}. */
+        public Builder loop(int count) {
+            if (count < 0) throw new IllegalArgumentException("Negative loop count " + count);
+            emit(LOOP).operand(count);
+            push(size);
+            openLoops++;
+            return this;
+        }
+
+        public Builder endLoop() {
+            if (openLoops == 0) throw new IllegalStateException("endLoop without loop");
+            openLoops--;
+            return emit(END_LOOP).operand(pop());
+        }
+
+        public Builder call(Label target) {
+            return emit(CALL).target(target);
+        }
+
+        public Builder ret() {
+            return emit(RET);
+        }
+
+        public Builder end() {
+            return emit(END);
+        }
+
+        public Builder halt() {
+            return emit(HALT);
+        }
+
+        public Builder more() {
+            return emit(MORE);
+        }
+
+        public int position() {
+            return size;
+        }
+
+        public MacroProgram build() {
+            if (openLoops != 0) throw new IllegalStateException(openLoops + " loops not closed");
+            for (Label label : labels) {
+                if (label.useCount == 0) continue;
+                if (label.position < 0) throw new IllegalStateException("Unbound label");
+                for (int i = 0; i < label.useCount; i++) code[label.uses[i]] = label.position;
+            }
+            return new MacroProgram(Arrays.copyOf(linkInPlace(), size));
+        }
+
+        /**
+         * Resolves the jumps emitted so far in place and returns the builder's own array, valid up
+         * to {@link #position()}. Instructions emitted later only go after that, into this array
+         * or a longer copy of it, so the returned prefix never changes. For {@link ProgramStream}.
+         */
+        int[] linkInPlace() {
+            if (openLoops != 0) throw new IllegalStateException(openLoops + " loops not closed");
+            for (Label label : labels) {
+                if (label.useCount == 0) continue;
+                if (label.position < 0) throw new IllegalStateException("Unbound label");
+                for (int i = 0; i < label.useCount; i++) code[label.uses[i]] = label.position;
+                label.useCount = 0;
+            }
+            return code;
+        }
+
+        private void push(int bodyStart) {
+            if (openLoops == loopStarts.length) loopStarts = Arrays.copyOf(loopStarts, openLoops * 2);
+            loopStarts[openLoops] = bodyStart;
+        }
+
+        private int pop() {
+            return loopStarts[openLoops];
+        }
+
+        private boolean isJumpTarget(int position) {
+            for (Label label : labels) {
+                if (label.position == position) return true;
+            }
+            return false;
+        }
+
+        private Builder emit(int opcode) {
+            lastOpcodeAt = size;
+            return operand(opcode);
+        }
+
+        private Builder operand(int value) {
+            if (size == code.length) code = Arrays.copyOf(code, size * 2);
+            code[size++] = value;
+            return this;
+        }
+
+        private Builder floatOperand(float value) {
+            return operand(Float.floatToRawIntBits(value));
+        }
+
+        private Builder target(Label label) {
+            if (label.position >= 0) return operand(label.position); // Backward jump, nothing to patch
+            if (label.useCount == label.uses.length) label.uses = Arrays.copyOf(label.uses, label.useCount * 2);
+            label.uses[label.useCount++] = size;
+            return operand(label.position);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.slash.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Named macros kept in app storage: one {@link MacroCodec} file per macro plus a small index of
+ * names, versions and sync state. Reads are served from memory once a macro has been loaded.
+ * Every save bumps the macro's version; {@link #markSynced} records which version the remote
+ * copy has, so only changed macros need to be uploaded.
+ */
+public final class MacroRepository {
+    public interface Listener {
+        void onMacroSaved(Entry entry);
+    }
+
+    public static final class Entry {
+        public final String name;
+        public final long version;
+        public final long syncedVersion;
+        public final int actionCount;
+        public final long updatedAtMillis;
+
+        Entry(String name, long version, long syncedVersion, int actionCount, long updatedAtMillis) {
+            this.name = name;
+            this.version = version;
+            this.syncedVersion = syncedVersion;
+            this.actionCount = actionCount;
+            this.updatedAtMillis = updatedAtMillis;
+        }
+
+        public boolean isDirty() {
+            return version > syncedVersion;
+        }
+    }
+
+    private static final int INDEX_MAGIC = 0x534C4958; // "SLIX"
+    private static final int INDEX_VERSION = 1;
+
+    private final File directory;
+    private final File indexFile;
+    private final Map<String, Entry> index = new LinkedHashMap<>();
+    private final Map<String, Macro> cache = new HashMap<>();
+    private Listener listener;
+
+    public MacroRepository(File directory) throws IOException {
+        this.directory = directory;
+        this.indexFile = new File(directory, "index.bin");
+        if (!directory.isDirectory() && !directory.mkdirs()) throw new IOException("Cannot create " + directory);
+        readIndex();
+    }
+
+    public synchronized void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public synchronized List<Entry> list() {
+        return new ArrayList<>(index.values());
+    }
+
+    public synchronized Entry getEntry(String name) {
+        return index.get(name);
+    }
+
+    /** Returns the named macro, or null if there is none. */
+    public synchronized Macro load(String name) throws IOException {
+        Macro macro = cache.get(name);
+        if (macro == null && index.containsKey(name)) {
+            macro = MacroCodec.read(macroFile(name));
+            cache.put(name, macro);
+        }
+        return macro;
+    }
+
+    /** Stores a local edit as a new version. */
+    public Entry save(String name, Macro macro) throws IOException {
+        Entry entry;
+        Listener current;
+        synchronized (this) {
+            Entry previous = index.get(name);
+            long version = previous == null ? 1 : previous.version + 1;
+            long synced = previous == null ? 0 : previous.syncedVersion;
+            entry = store(name, macro, version, synced);
+            current = listener;
+        }
+        if (current != null) current.onMacroSaved(entry);
+        return entry;
+    }
+
+    /**
+     * Stores a copy fetched from the remote side; it is already in sync at {@code version}. Local
+     * unsynced edits and copies at least as new win, checked under the same lock as {@link #save},
+     * so an edit made while the copy was downloading is not overwritten.
+     *
+     * @return the new entry, or null if the local copy was kept
+     */
+    public synchronized Entry saveRemote(String name, Macro macro, long version) throws IOException {
+        Entry local = index.get(name);
+        if (local != null && (local.isDirty() || local.version >= version)) return null;
+        return store(name, macro, version, version);
+    }
+
+    public synchronized void markSynced(String name, long version) throws IOException {
+        Entry entry = index.get(name);
+        if (entry == null || entry.syncedVersion >= version) return;
+        index.put(name, new Entry(name, entry.version, version, entry.actionCount, entry.updatedAtMillis));
+        writeIndex();
+    }
+
+    public synchronized boolean delete(String name) throws IOException {
+        if (index.remove(name) == null) return false;
+        cache.remove(name);
+        writeIndex();
+        return macroFile(name).delete();
+    }
+
+    private Entry store(String name, Macro macro, long version, long syncedVersion) throws IOException {
+        MacroCodec.write(macro, macroFile(name));
+        Entry entry = new Entry(name, version, syncedVersion, macro.size(), System.currentTimeMillis());
+        index.put(name, entry);
+        cache.put(name, macro);
+        writeIndex();
+        return entry;
+    }
+
+    private File macroFile(String name) {
+        try {
+            return new File(directory, URLEncoder.encode(name, "UTF-8") + ".slm");
+        } catch (UnsupportedEncodingException e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    private void readIndex() throws IOException {
+        if (!indexFile.exists()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != INDEX_MAGIC) throw new IOException("Not a macro index");
+            int version = in.readUnsignedByte();
+            if (version != INDEX_VERSION) throw new IOException("Unsupported index version " + version);
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String name = in.readUTF();
+                index.put(name, new Entry(name, in.readLong(), in.readLong(), in.readInt(), in.readLong()));
+            }
+        }
+    }
+
+    private void writeIndex() throws IOException {
+        File temp = new File(indexFile.getPath() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeByte(INDEX_VERSION);
+            out.writeInt(index.size());
+            for (Entry entry : index.values()) {
+                out.writeUTF(entry.name);
+                out.writeLong(entry.version);
+                out.writeLong(entry.syncedVersion);
+                out.writeInt(entry.actionCount);
+                out.writeLong(entry.updatedAtMillis);
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        if (!temp.renameTo(indexFile)) throw new IOException("Cannot replace " + indexFile);
+    }
+}
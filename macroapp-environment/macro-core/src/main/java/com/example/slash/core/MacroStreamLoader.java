@@ -0,0 +1,69 @@
+package com.example.slash.core;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Fetches a paged macro from a {@link MacroPageSource} one page after another on a background
+ * executor and hands each page over as soon as it is decoded, so a caller can start replaying
+ * the first page while the rest are still on their way.
+ */
+public final class MacroStreamLoader {
+    public interface Listener {
+        /** Called on the loader's executor for each page, in order. */
+        void onPage(int index, int pageCount, Macro page);
+
+        /** Called after the last page with the whole macro; empty if the macro has no actions. */
+        void onComplete(Macro macro, long version);
+
+        /** Called instead of further pages; a {@link FileNotFoundException} if there is no such macro. */
+        void onFailed(IOException e);
+    }
+
+    private final MacroPageSource source;
+    private final Executor executor;
+
+    public MacroStreamLoader(MacroPageSource source, Executor executor) {
+        this.source = source;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts loading; once the token is cancelled the listener hears nothing more, though a call
+     * already under way still finishes.
+     */
+    public CancellationToken load(String name, Listener listener) {
+        CancellationToken token = new CancellationToken();
+        executor.execute(() -> {
+            try {
+                // Fetches block, so the token is checked again after each one
+                MacroPageSource.Manifest manifest = source.fetchManifest(name);
+                if (token.isCancelled()) return;
+                if (manifest == null) throw new FileNotFoundException("No remote macro " + name);
+                if (manifest.inlineData != null) {
+                    Macro macro = MacroCodec.decode(ByteBuffer.wrap(manifest.inlineData));
+                    if (!macro.isEmpty()) listener.onPage(0, 1, macro);
+                    if (token.isCancelled()) return;
+                    listener.onComplete(macro, manifest.version);
+                    return;
+                }
+                List<Macro> pages = new ArrayList<>(manifest.pageCount);
+                for (int i = 0; i < manifest.pageCount; i++) {
+                    Macro page = MacroCodec.decode(ByteBuffer.wrap(source.fetchPage(manifest, i)));
+                    if (token.isCancelled()) return;
+                    pages.add(page);
+                    listener.onPage(i, manifest.pageCount, page);
+                }
+                if (token.isCancelled()) return;
+                listener.onComplete(MacroPages.join(pages), manifest.version);
+            } catch (IOException e) {
+                if (!token.isCancelled()) listener.onFailed(e);
+            }
+        });
+        return token;
+    }
+}
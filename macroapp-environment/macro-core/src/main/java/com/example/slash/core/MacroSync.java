@@ -0,0 +1,165 @@
+package com.example.slash.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind replication of a {@link MacroRepository}. Saves only mark a macro dirty; a flush
+ * scheduled {@code delayMillis} after the first pending save uploads every macro whose local
+ * version is ahead of its synced version, in batches. Rapid saves of the same macro therefore
+ * collapse into one write. Failed flushes are retried with exponential backoff.
+ */
+public final class MacroSync implements MacroRepository.Listener {
+    public interface Callback {
+        void onSyncFailed(IOException e);
+    }
+
+    private static final long MIN_RETRY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    private static final long MAX_RETRY_DELAY_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    private final MacroRepository repository;
+    private final MacroSyncBackend backend;
+    private final ScheduledExecutorService executor;
+    private final long delayMillis;
+    private final Set<String> dirty = new LinkedHashSet<>();
+    private boolean flushScheduled;
+    private long retryDelayMillis;
+    private volatile Callback callback;
+
+    private volatile long pushedCount;
+    private volatile long batchCount;
+
+    public MacroSync(MacroRepository repository, MacroSyncBackend backend, ScheduledExecutorService executor,
+                     long delayMillis) {
+        this.repository = repository;
+        this.backend = backend;
+        this.executor = executor;
+        this.delayMillis = delayMillis;
+        this.retryDelayMillis = Math.max(delayMillis, MIN_RETRY_DELAY_MILLIS);
+        for (MacroRepository.Entry entry : repository.list()) {
+            if (entry.isDirty()) dirty.add(entry.name); // Left over from a previous session
+        }
+    }
+
+    public void setCallback(Callback callback) {
+        this.callback = callback;
+    }
+
+    /** Starts replication: pending local edits are scheduled and newer remote macros pulled. */
+    public void start() {
+        repository.setListener(this);
+        synchronized (this) {
+            if (!dirty.isEmpty()) scheduleFlush(delayMillis);
+        }
+        executor.execute(() -> {
+            try {
+                pull();
+            } catch (IOException e) {
+                notifyFailure(e);
+            }
+        });
+    }
+
+    @Override
+    public synchronized void onMacroSaved(MacroRepository.Entry entry) {
+        dirty.add(entry.name);
+        scheduleFlush(delayMillis);
+    }
+
+    /** Uploads all dirty macros now; runs on the caller's thread. */
+    public void flush() throws IOException {
+        List<String> names;
+        synchronized (this) {
+            flushScheduled = false;
+            names = new ArrayList<>(dirty);
+            dirty.clear();
+        }
+        List<MacroSyncBackend.Record> batch = new ArrayList<>();
+        try {
+            for (String name : names) {
+                MacroRepository.Entry entry = repository.getEntry(name);
+                if (entry == null || !entry.isDirty()) continue;
+                Macro macro = repository.load(name);
+                batch.add(new MacroSyncBackend.Record(name, entry.version, MacroCodec.encode(macro)));
+                if (batch.size() == backend.getMaxBatchSize()) pushBatch(batch);
+            }
+            if (!batch.isEmpty()) pushBatch(batch);
+        } catch (IOException e) {
+            synchronized (this) {
+                for (String name : names) {
+                    MacroRepository.Entry entry = repository.getEntry(name);
+                    if (entry != null && entry.isDirty()) dirty.add(name);
+                }
+            }
+            throw e;
+        }
+    }
+
+    /** Copies remote macros that are newer than the local ones; local unsynced edits win. */
+    public void pull() throws IOException {
+        for (Map.Entry<String, Long> remote : backend.fetchVersions().entrySet()) {
+            // Saves the download when the local copy already wins; saveRemote decides for real
+            MacroRepository.Entry local = repository.getEntry(remote.getKey());
+            if (local != null && (local.isDirty() || local.version >= remote.getValue())) continue;
+            MacroSyncBackend.Record record = backend.fetch(remote.getKey());
+            if (record == null) continue;
+            Macro macro = MacroCodec.decode(ByteBuffer.wrap(record.data));
+            repository.saveRemote(record.name, macro, record.version);
+        }
+    }
+
+    private void pushBatch(List<MacroSyncBackend.Record> batch) throws IOException {
+        backend.push(batch);
+        batchCount++;
+        pushedCount += batch.size();
+        for (MacroSyncBackend.Record record : batch) repository.markSynced(record.name, record.version);
+        batch.clear();
+    }
+
+    private void scheduleFlush(long delay) {
+        if (flushScheduled) return;
+        flushScheduled = true;
+        executor.schedule(this::flushInBackground, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void flushInBackground() {
+        try {
+            flush();
+            synchronized (this) {
+                retryDelayMillis = Math.max(delayMillis, MIN_RETRY_DELAY_MILLIS);
+            }
+        } catch (IOException e) {
+            notifyFailure(e);
+            synchronized (this) {
+                scheduleFlush(retryDelayMillis);
+                retryDelayMillis = Math.min(MAX_RETRY_DELAY_MILLIS, retryDelayMillis * 2);
+            }
+        }
+    }
+
+    private void notifyFailure(IOException e) {
+        Callback current = callback;
+        if (current != null) current.onSyncFailed(e);
+    }
+
+    public synchronized int getPendingCount() {
+        return dirty.size();
+    }
+
+    /** Macros uploaded so far. */
+    public long getPushedCount() {
+        return pushedCount;
+    }
+
+    /** Remote writes issued so far; each covers up to {@link MacroSyncBackend#getMaxBatchSize()} macros. */
+    public long getBatchCount() {
+        return batchCount;
+    }
+}
@@ -0,0 +1,32 @@
+package com.example.slash.core;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/** Remote side of {@link MacroSync}. Calls are made from the sync thread and may block. */
+public interface MacroSyncBackend {
+    final class Record {
+        public final String name;
+        public final long version;
+        public final byte[] data; // MacroCodec encoding
+
+        public Record(String name, long version, byte[] data) {
+            this.name = name;
+            this.version = version;
+            this.data = data;
+        }
+    }
+
+    /** Maximum number of records accepted by one {@link #push} call. */
+    int getMaxBatchSize();
+
+    /** Writes all records atomically. */
+    void push(List<Record> records) throws IOException;
+
+    /** Remote macro names mapped to their versions. */
+    Map<String, Long> fetchVersions() throws IOException;
+
+    /** Returns the named macro, or null if it does not exist remotely. */
+    Record fetch(String name) throws IOException;
+}
@@ -0,0 +1,8 @@
+package com.example.slash.core;
+
+/** Monotonic time source, replaceable by a fake clock off-device. */
+public interface NanoClock {
+    NanoClock SYSTEM = System::nanoTime;
+
+    long nanoTime();
+}
@@ -0,0 +1,86 @@
+package com.example.slash.core;
+
+import java.util.Arrays;
+
+/**
+ * Ramer-Douglas-Peucker polyline simplification: keeps the endpoints and every point that lies
+ * further than the tolerance from the chord of the kept points around it. Iterative with
+ * scratch arrays that only grow, so simplifying strokes of a similar length does not allocate.
+ * Not thread-safe.
+ */
+public final class PathSimplifier {
+    private final float tolerance;
+    private int[] stack = new int[64];
+    private boolean[] keep = new boolean[64];
+
+    public PathSimplifier(float tolerance) {
+        if (tolerance < 0) throw new IllegalArgumentException("Negative tolerance " + tolerance);
+        this.tolerance = tolerance;
+    }
+
+    public float getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * Simplifies the {@code count} points starting at {@code offset}.
+     *
+     * @param kept receives the offsets (relative to {@code offset}) of the points to keep,
+     *             in ascending order; needs room for {@code count} entries
+     * @return number of points kept
+     */
+    public int simplify(float[] x, float[] y, int offset, int count, int[] kept) {
+        if (count <= 2) {
+            for (int i = 0; i < count; i++) kept[i] = i;
+            return count;
+        }
+        if (keep.length < count) keep = new boolean[Math.max(count, keep.length * 2)];
+        Arrays.fill(keep, 0, count, false);
+        keep[0] = true;
+        keep[count - 1] = true;
+        float toleranceSquared = tolerance * tolerance;
+        int top = 0;
+        top = push(top, 0, count - 1);
+        while (top > 0) {
+            int last = stack[--top];
+            int first = stack[--top];
+            float ax = x[offset + first], ay = y[offset + first];
+            float dx = x[offset + last] - ax, dy = y[offset + last] - ay;
+            float lengthSquared = dx * dx + dy * dy;
+            float maxDistance = -1;
+            int farthest = -1;
+            for (int i = first + 1; i < last; i++) {
+                float px = x[offset + i] - ax, py = y[offset + i] - ay;
+                float distance;
+                if (lengthSquared == 0) {
+                    distance = px * px + py * py; // Chord is a point, e.g. a stroke that returns to its start
+                } else {
+                    float cross = px * dy - py * dx;
+                    distance = cross * cross / lengthSquared;
+                }
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    farthest = i;
+                }
+            }
+            if (maxDistance > toleranceSquared) {
+                keep[farthest] = true;
+                top = push(top, first, farthest);
+                top = push(top, farthest, last);
+            }
+        }
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) kept[n++] = i;
+        }
+        return n;
+    }
+
+    private int push(int top, int first, int last) {
+        if (last - first < 2) return top; // Nothing between them to drop
+        if (top + 2 > stack.length) stack = Arrays.copyOf(stack, stack.length * 2);
+        stack[top++] = first;
+        stack[top++] = last;
+        return top;
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.slash.core;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency histograms for each stage of the vision and replay pipeline, plus event counters.
+ * Safe to record from any thread; all storage is allocated up front.
+ */
+public final class PipelineMetrics {
+    public enum Stage {
+        CAPTURE,         // Frame timestamp to acquisition by the capture thread
+        CROP,            // ROI extraction from the image plane
+        FINGERPRINT,
+        PREPROCESS,      // Resize and normalisation into the model input
+        INFERENCE,       // Interpreter run
+        CLASSIFY,        // Whole classifier cascade
+        TRIGGER_MATCH,
+        FRAME_TO_STATE,  // Frame timestamp to game state update
+        STATE_DETECTION, // First frame showing a new state to the tracker switching to it
+        DISPATCH,        // Click dispatch
+        REPLAY_LATENESS  // Action dispatch time minus its deadline
+    }
+
+    public enum Counter {
+        FRAMES_PROCESSED,
+        FRAMES_DROPPED,
+        FRAMES_SKIPPED,
+        CACHE_UNCHANGED,
+        CACHE_HITS,
+        CACHE_MISSES,
+        ACTIONS_DISPATCHED,
+        TRIGGER_TAPS,
+        MODEL_RUNS,
+        ROIS_INFERRED
+    }
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[Stage.values().length];
+    private final AtomicLongArray counters = new AtomicLongArray(Counter.values().length);
+
+    public PipelineMetrics() {
+        for (int i = 0; i < histograms.length; i++) histograms[i] = new LatencyHistogram();
+    }
+
+    public LatencyHistogram histogram(Stage stage) {
+        return histograms[stage.ordinal()];
+    }
+
+    public void increment(Counter counter) {
+        counters.incrementAndGet(counter.ordinal());
+    }
+
+    public void add(Counter counter, long delta) {
+        counters.addAndGet(counter.ordinal(), delta);
+    }
+
+    /** Overwrites a counter, for components that keep their own running totals. */
+    public void set(Counter counter, long value) {
+        counters.set(counter.ordinal(), value);
+    }
+
+    public long get(Counter counter) {
+        return counters.get(counter.ordinal());
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) histogram.reset();
+        for (int i = 0; i < counters.length(); i++) counters.set(i, 0);
+    }
+
+    /** Human-readable table: count, mean, p50, p99 and max per stage, then the counters. */
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram h = histogram(stage);
+            if (h.getCount() == 0) continue;
+            sb.append(stage.name()).append(": n=").append(h.getCount())
+                    .append(" mean=").append(micros(h.getMeanNanos()))
+                    .append(" p50=").append(micros(h.getPercentileNanos(0.5)))
+                    .append(" p99=").append(micros(h.getPercentileNanos(0.99)))
+                    .append(" max=").append(micros(h.getMaxNanos())).append('\n');
+        }
+        for (Counter counter : Counter.values()) {
+            sb.append(counter.name()).append(": ").append(get(counter)).append('\n');
+        }
+        long inferenceNanos = histogram(Stage.INFERENCE).getSumNanos();
+        if (inferenceNanos > 0) {
+            // Throughput while the model is busy, i.e. excluding idle time between frames
+            sb.append("ROIs/s: ").append(get(Counter.ROIS_INFERRED) * 1_000_000_000L / inferenceNanos).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes every non-empty histogram and all counters, one line each:
+     * <pre>
+     * slash-metrics 1 &lt;epochMillis&gt;
+     * H &lt;stage&gt; &lt;count&gt; &lt;sumNanos&gt; &lt;maxNanos&gt; &lt;bucket&gt;:&lt;count&gt; ...
+     * C &lt;counter&gt; &lt;value&gt;
+     * </pre>
+     * Bucket indexes follow {@link LatencyHistogram}'s log-linear layout.
+     */
+    public void writeTo(Writer out, long epochMillis) throws IOException {
+        out.write("slash-metrics " + FORMAT_VERSION + " " + epochMillis + "\n");
+        for (Stage stage : Stage.values()) {
+            LatencyHistogram h = histogram(stage);
+            if (h.getCount() == 0) continue;
+            out.write("H " + stage.name() + " " + h.getCount() + " " + h.getSumNanos() + " " + h.getMaxNanos());
+            for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+                long n = h.getBucketCount(i);
+                if (n != 0) out.write(" " + i + ":" + n);
+            }
+            out.write('\n');
+        }
+        for (Counter counter : Counter.values()) {
+            out.write("C " + counter.name() + " " + get(counter) + "\n");
+        }
+        out.flush();
+    }
+
+    private static String micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos) + "us";
+    }
+}
@@ -0,0 +1,111 @@
+package com.example.slash.core;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A {@link MacroProgram} whose body is still loading, built by {@link MacroCompiler#compileStream}.
+ * The body always ends in a {@link MacroProgram#MORE}; each {@link #append} adds a page of actions
+ * and a new MORE behind it, and {@link #finish} closes the body. Pages are appended to the
+ * builder's array in place, so a page costs only its own instructions. Instructions already
+ * published never change, so the replay thread can keep running the array it has until it
+ * reaches the MORE and then pick up the published length, and the array if it has grown.
+ */
+public final class ProgramStream {
+    private final MacroProgram.Builder builder; // Guarded by this
+    private final int haltStateMask;
+    private final MacroProgram.Builder.Label trouble;
+    private volatile int[] code;  // Written before length; past length it may be mid-write
+    private volatile int length;
+    private volatile boolean finished;
+    private volatile String failure;
+    private boolean failed; // Guarded by this
+    private volatile Thread waiter;
+    private int pageCount;
+
+    ProgramStream(MacroProgram.Builder builder, int haltStateMask, MacroProgram.Builder.Label trouble) {
+        this.builder = builder;
+        this.haltStateMask = haltStateMask;
+        this.trouble = trouble;
+        builder.more();
+        publish();
+    }
+
+    /** Adds the next page of the macro; ignored once the stream has failed, e.g. was cancelled. */
+    public synchronized void append(Macro page) {
+        if (failed) return; // A page that was on its way when the load was cancelled
+        if (finished) throw new IllegalStateException("Stream already finished");
+        MacroCompiler.emitActions(builder, page, haltStateMask, trouble);
+        builder.more();
+        pageCount++;
+        publish();
+    }
+
+    /** Marks the last page as added; the replay runs to the end of what it has. */
+    public synchronized void finish() {
+        if (finished) return;
+        builder.ret();
+        publish();
+        finished = true;
+        LockSupport.unpark(waiter);
+    }
+
+    /** Stops the stream; a replay waiting for more ends as FAILED with {@code message}. */
+    public synchronized void fail(String message) {
+        if (finished) return;
+        failure = message;
+        failed = true;
+        finished = true;
+        LockSupport.unpark(waiter);
+    }
+
+    private void publish() {
+        // All labels the body jumps to are bound before it starts, so every snapshot links
+        code = builder.linkInPlace();
+        length = builder.position();
+        LockSupport.unpark(waiter);
+    }
+
+    /** The code published so far, up to and including its last MORE or the closing RET. */
+    int[] code() {
+        return code;
+    }
+
+    /** Returns the code if instructions after the MORE at {@code pc} are published, else null. */
+    int[] codeAfter(int pc) {
+        // Length first: the array read after it is the one published with it or a longer copy
+        return length > pc + 1 ? code : null;
+    }
+
+    /**
+     * Called by the replay thread at a MORE at {@code pc}: waits until the instructions after it
+     * are loaded, the stream fails or {@code token} is cancelled.
+     *
+     * @return the code with more instructions, or null if there will be none
+     */
+    int[] awaitMore(int pc, CancellationToken token) {
+        waiter = Thread.currentThread();
+        try {
+            while (true) {
+                int[] current = codeAfter(pc);
+                if (current != null) return current;
+                if (finished || token.isCancelled()) return null;
+                LockSupport.park(this);
+            }
+        } finally {
+            waiter = null;
+        }
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /** Why the stream failed, or null. */
+    public String getFailure() {
+        return failure;
+    }
+
+    public synchronized int getPageCount() {
+        return pageCount;
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.slash.core;
+
+import java.nio.ByteBuffer;
+
+/** Uint8 input for quantized models: interpolated channels are rounded straight into bytes. */
+public final class QuantizedInputPreprocessor extends BilinearPreprocessor {
+    private final byte[] row;
+
+    public QuantizedInputPreprocessor(int outWidth, int outHeight) {
+        super(outWidth, outHeight);
+        row = new byte[outWidth * CHANNELS];
+    }
+
+    @Override
+    public int getInputBytes() {
+        return outWidth * outHeight * CHANNELS;
+    }
+
+    @Override
+    protected void writeRow(float[] rgb, ByteBuffer dst) {
+        for (int i = 0; i < row.length; i++) {
+            row[i] = (byte) (int) (rgb[i] + 0.5f);
+        }
+        dst.put(row, 0, row.length);
+    }
+}
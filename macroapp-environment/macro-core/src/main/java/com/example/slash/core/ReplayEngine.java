@@ -0,0 +1,427 @@
+package com.example.slash.core;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Runs a {@link MacroProgram} on a thread of its executor. Waits accumulate into an absolute
+ * deadline measured from the replay start, so sleep overshoot never accumulates: a late action
+ * simply shortens the wait before the next one. The thread parks until shortly before each deadline
+ * and yields for the remainder. Time spent paused shifts all later deadlines.
+ *
+ * <p>Actions, state checks and {@code WAIT_UNTIL} first wait for the pending deadline. A state
+ * check stops waiting early once its state shows up, and the timeline restarts from then.
+ * {@code WAIT_UNTIL} then polls the {@link StateSource} and restarts the timeline once the state
+ * matches or the timeout passes. {@link #stateChanged()} wakes either wait without the poll
+ * delay. Loop counters and return addresses live in fixed-size stacks, so the interpreter loop
+ * does not allocate.
+ */
+public final class ReplayEngine {
+    public enum State { IDLE, RUNNING, PAUSED, FINISHED, CANCELLED, HALTED, FAILED }
+
+    public interface Dispatcher {
+        /** Called on the replay thread with one of the {@link Macro} action kinds. */
+        void dispatch(byte kind, float x, float y);
+    }
+
+    public interface StateSource {
+        /** Read before state checks; must be cheap and safe to call from the replay thread. */
+        GameState getState();
+    }
+
+    public interface Listener {
+        /** Called on the replay thread with FINISHED, CANCELLED, HALTED or FAILED. */
+        void onReplayEnded(State state);
+    }
+
+    private static final long SPIN_THRESHOLD_NANOS = 2_000_000L; // Park until 2 ms before a deadline
+    private static final long STATE_POLL_NANOS = 5_000_000L;
+    private static final int WAIT_CANCELLED = 0;
+    private static final int WAIT_DEADLINE = 1;
+    private static final int WAIT_STATE = 2;
+    static final int MAX_CALL_DEPTH = 16;
+    static final int MAX_LOOP_DEPTH = 16;
+
+    private final Dispatcher dispatcher;
+    private final StateSource stateSource;
+    private final Listener listener;
+    private final NanoClock clock;
+    private final Executor executor;
+    private final AtomicReference<State> state = new AtomicReference<>(State.IDLE);
+    private final LatencyHistogram lateness = new LatencyHistogram();
+
+    // Interpreter stacks, only touched by the replay thread
+    private final int[] returnAddresses = new int[MAX_CALL_DEPTH];
+    private final int[] returnLoopDepths = new int[MAX_CALL_DEPTH];
+    private final int[] loopRemaining = new int[MAX_LOOP_DEPTH];
+
+    private volatile Thread worker;
+    private volatile CancellationToken token;
+    private volatile int completedCount;
+    private volatile long instructionCount;
+    private volatile LatencyHistogram latenessHistogram;
+    private volatile String failure;
+
+    // Timeline of the running replay, only touched by the replay thread
+    private long deadline;
+    private long pausedNanos;
+
+    /** Runs each replay on a new max-priority thread. */
+    public ReplayEngine(Dispatcher dispatcher, StateSource stateSource, Listener listener, NanoClock clock) {
+        this(dispatcher, stateSource, listener, clock, command -> {
+            Thread thread = new Thread(command, "MacroReplay");
+            thread.setPriority(Thread.MAX_PRIORITY);
+            thread.start();
+        });
+    }
+
+    /** Runs replays on {@code executor}, which should have a thread free whenever a replay starts. */
+    public ReplayEngine(Dispatcher dispatcher, StateSource stateSource, Listener listener, NanoClock clock,
+                        Executor executor) {
+        this.dispatcher = dispatcher;
+        this.stateSource = stateSource;
+        this.listener = listener;
+        this.clock = clock;
+        this.executor = executor;
+    }
+
+    /** Also records each action's lateness into {@code histogram}; null to stop. */
+    public void setLatenessHistogram(LatencyHistogram histogram) {
+        this.latenessHistogram = histogram;
+    }
+
+    /** Replays a recorded macro once, without any state rules. */
+    public CancellationToken start(Macro macro) {
+        return start(new MacroCompiler().compile(macro));
+    }
+
+    /**
+     * Starts running {@code program}; its first action is dispatched immediately.
+     *
+     * @throws IllegalStateException if a replay is already running or paused
+     */
+    public CancellationToken start(MacroProgram program) {
+        return start(program.code(), null);
+    }
+
+    /**
+     * Starts running a program that is still loading. At each {@link MacroProgram#MORE} the
+     * replay waits for {@code stream} to load more; when it had to wait, the timeline restarts
+     * from the moment the instructions arrived rather than rushing to catch up.
+     *
+     * @throws IllegalStateException if a replay is already running or paused
+     */
+    public CancellationToken start(ProgramStream stream) {
+        return start(stream.code(), stream);
+    }
+
+    private synchronized CancellationToken start(int[] code, ProgramStream stream) {
+        State current = state.get();
+        if (current == State.RUNNING || current == State.PAUSED) {
+            throw new IllegalStateException("Replay already " + current);
+        }
+        completedCount = 0;
+        instructionCount = 0;
+        failure = null;
+        lateness.reset();
+        CancellationToken runToken = new CancellationToken();
+        token = runToken;
+        state.set(State.RUNNING);
+        executor.execute(() -> run(code, stream, runToken));
+        return runToken;
+    }
+
+    public boolean pause() {
+        return state.compareAndSet(State.RUNNING, State.PAUSED);
+    }
+
+    public boolean resume() {
+        if (!state.compareAndSet(State.PAUSED, State.RUNNING)) return false;
+        LockSupport.unpark(worker);
+        return true;
+    }
+
+    /** Tells a waiting replay to look at the {@link StateSource} again; safe from any thread. */
+    public void stateChanged() {
+        Thread thread = worker;
+        if (thread != null) LockSupport.unpark(thread);
+    }
+
+    public void cancel() {
+        CancellationToken runToken = token;
+        if (runToken != null) runToken.cancel();
+        Thread thread = worker;
+        if (thread != null) LockSupport.unpark(thread);
+    }
+
+    public State getState() {
+        return state.get();
+    }
+
+    public boolean isActive() {
+        State current = state.get();
+        return current == State.RUNNING || current == State.PAUSED;
+    }
+
+    private void run(int[] code, ProgramStream stream, CancellationToken runToken) {
+        // Set before the first wait; pause and cancel only unpark a thread that may be parked
+        worker = Thread.currentThread();
+        State end = execute(code, stream, runToken);
+        worker = null;
+        state.set(end);
+        listener.onReplayEnded(end);
+    }
+
+    private State execute(int[] code, ProgramStream stream, CancellationToken runToken) {
+        deadline = clock.nanoTime();
+        pausedNanos = 0;
+        int callDepth = 0;
+        int loopDepth = 0;
+        boolean pressed = false; // A gesture is down at (pressedX, pressedY)
+        float pressedX = 0, pressedY = 0;
+        long executed = 0;
+        int pc = 0;
+        State end = State.FINISHED;
+        loop:
+        while (true) {
+            executed++;
+            switch (code[pc]) {
+                case MacroProgram.END:
+                    break loop;
+                case MacroProgram.HALT:
+                    end = State.HALTED;
+                    break loop;
+                case MacroProgram.TAP:
+                    if (!awaitDeadline(runToken)) {
+                        end = State.CANCELLED;
+                        break loop;
+                    }
+                    dispatch(Macro.TAP, Float.intBitsToFloat(code[pc + 1]), Float.intBitsToFloat(code[pc + 2]));
+                    pc += 3;
+                    break;
+                case MacroProgram.TOUCH: {
+                    if (!awaitDeadline(runToken)) {
+                        end = State.CANCELLED;
+                        break loop;
+                    }
+                    byte kind = (byte) code[pc + 1];
+                    pressedX = Float.intBitsToFloat(code[pc + 2]);
+                    pressedY = Float.intBitsToFloat(code[pc + 3]);
+                    dispatch(kind, pressedX, pressedY);
+                    pressed = kind == Macro.DOWN || kind == Macro.MOVE;
+                    pc += 4;
+                    break;
+                }
+                case MacroProgram.SWIPE:
+                    if (!awaitDeadline(runToken)) {
+                        end = State.CANCELLED;
+                        break loop;
+                    }
+                    pressedX = Float.intBitsToFloat(code[pc + 1]);
+                    pressedY = Float.intBitsToFloat(code[pc + 2]);
+                    dispatch(Macro.DOWN, pressedX, pressedY);
+                    pressed = true;
+                    deadline += code[pc + 5] * 1000L;
+                    if (!awaitDeadline(runToken)) {
+                        end = State.CANCELLED;
+                        break loop;
+                    }
+                    pressedX = Float.intBitsToFloat(code[pc + 3]);
+                    pressedY = Float.intBitsToFloat(code[pc + 4]);
+                    dispatch(Macro.MOVE, pressedX, pressedY);
+                    dispatch(Macro.UP, pressedX, pressedY);
+                    pressed = false;
+                    pc += 6;
+                    break;
+                case MacroProgram.WAIT:
+                    deadline += code[pc + 1] * 1000L;
+                    pc += 2;
+                    break;
+                case MacroProgram.WAIT_UNTIL:
+                    if (!awaitDeadline(runToken) || !awaitState(code[pc + 1], code[pc + 2], runToken)) {
+                        end = State.CANCELLED;
+                        break loop;
+                    }
+                    pc += 3;
+                    break;
+                case MacroProgram.IF_STATE: {
+                    int waited = awaitDeadlineOrState(code[pc + 1], runToken);
+                    if (waited == WAIT_CANCELLED) {
+                        end = State.CANCELLED;
+                        break loop;
+                    }
+                    pc = waited == WAIT_STATE || matches(code[pc + 1]) ? code[pc + 2] : pc + 3;
+                    break;
+                }
+                case MacroProgram.JUMP:
+                    pc = code[pc + 1];
+                    break;
+                case MacroProgram.LOOP:
+                    if (loopDepth == MAX_LOOP_DEPTH) {
+                        end = fail("Loops nested deeper than " + MAX_LOOP_DEPTH);
+                        break loop;
+                    }
+                    loopRemaining[loopDepth++] = code[pc + 1];
+                    pc += 2;
+                    break;
+                case MacroProgram.END_LOOP: {
+                    int remaining = loopRemaining[loopDepth - 1];
+                    if (remaining == 0) {
+                        pc = code[pc + 1]; // Forever
+                    } else if (remaining > 1) {
+                        loopRemaining[loopDepth - 1] = remaining - 1;
+                        pc = code[pc + 1];
+                    } else {
+                        loopDepth--;
+                        pc += 2;
+                    }
+                    break;
+                }
+                case MacroProgram.CALL:
+                    if (callDepth == MAX_CALL_DEPTH) {
+                        end = fail("Calls nested deeper than " + MAX_CALL_DEPTH);
+                        break loop;
+                    }
+                    returnAddresses[callDepth] = pc + 2;
+                    returnLoopDepths[callDepth++] = loopDepth;
+                    pc = code[pc + 1];
+                    break;
+                case MacroProgram.RET:
+                    if (callDepth == 0) break loop; // Returning from the top level ends the program
+                    pc = returnAddresses[--callDepth];
+                    loopDepth = returnLoopDepths[callDepth]; // Drops loops a branch left early
+                    break;
+                case MacroProgram.MORE:
+                    if (stream == null) {
+                        end = fail("MORE outside a program stream at " + pc);
+                        break loop;
+                    }
+                    int[] more = stream.codeAfter(pc); // Published since the last look
+                    if (more == null) {
+                        more = stream.awaitMore(pc, runToken);
+                        if (more == null) {
+                            end = runToken.isCancelled() ? State.CANCELLED : fail("Macro stream failed: " + stream.getFailure());
+                            break loop;
+                        }
+                        deadline = clock.nanoTime() - pausedNanos; // The next page was late; don't rush to catch up
+                    }
+                    code = more;
+                    pc++;
+                    break;
+                default:
+                    end = fail("Bad opcode " + code[pc] + " at " + pc);
+                    break loop;
+            }
+            if (runToken.isCancelled()) {
+                end = State.CANCELLED;
+                break;
+            }
+            if ((executed & 0xFF) == 0) instructionCount = executed;
+        }
+        instructionCount = executed;
+        // Never leave a pointer down when a gesture is cut short
+        if (pressed) dispatcher.dispatch(Macro.UP, pressedX, pressedY);
+        return end;
+    }
+
+    private void dispatch(byte kind, float x, float y) {
+        long late = clock.nanoTime() - (deadline + pausedNanos);
+        lateness.record(late);
+        LatencyHistogram histogram = latenessHistogram;
+        if (histogram != null) histogram.record(late);
+        dispatcher.dispatch(kind, x, y);
+        completedCount++;
+    }
+
+    private boolean matches(int stateMask) {
+        return (stateMask & MacroProgram.mask(stateSource.getState())) != 0;
+    }
+
+    /** @return false if cancelled while waiting */
+    private boolean awaitDeadline(CancellationToken runToken) {
+        return awaitDeadlineOrState(0, runToken) != WAIT_CANCELLED;
+    }
+
+    /**
+     * Like {@link #awaitDeadline} but also stops once the state is in {@code stateMask}, moving
+     * the deadline up to now.
+     *
+     * @return WAIT_DEADLINE, WAIT_STATE or WAIT_CANCELLED
+     */
+    private int awaitDeadlineOrState(int stateMask, CancellationToken runToken) {
+        while (true) {
+            if (runToken.isCancelled()) return WAIT_CANCELLED;
+            if (state.get() == State.PAUSED) {
+                awaitResume(runToken);
+                continue;
+            }
+            long now = clock.nanoTime();
+            long remaining = deadline + pausedNanos - now;
+            if (remaining <= 0) return WAIT_DEADLINE;
+            if (stateMask != 0 && matches(stateMask)) {
+                deadline = now - pausedNanos;
+                return WAIT_STATE;
+            }
+            if (remaining > SPIN_THRESHOLD_NANOS) {
+                LockSupport.parkNanos(this, remaining - SPIN_THRESHOLD_NANOS);
+            } else {
+                Thread.yield();
+            }
+        }
+    }
+
+    /** Polls until the state matches or the timeout passes, then restarts the timeline from now. */
+    private boolean awaitState(int stateMask, int timeoutMicros, CancellationToken runToken) {
+        long start = clock.nanoTime();
+        while (!matches(stateMask)) {
+            if (runToken.isCancelled()) return false;
+            if (state.get() == State.PAUSED) {
+                awaitResume(runToken);
+                continue;
+            }
+            if (timeoutMicros > 0 && clock.nanoTime() - start >= timeoutMicros * 1000L) break;
+            LockSupport.parkNanos(this, STATE_POLL_NANOS);
+        }
+        deadline = clock.nanoTime() - pausedNanos;
+        return !runToken.isCancelled();
+    }
+
+    private void awaitResume(CancellationToken runToken) {
+        long pauseStart = clock.nanoTime();
+        while (state.get() == State.PAUSED && !runToken.isCancelled()) LockSupport.park(this);
+        pausedNanos += clock.nanoTime() - pauseStart;
+    }
+
+    private State fail(String message) {
+        failure = message;
+        return State.FAILED;
+    }
+
+    /** Number of actions dispatched by the current or last replay. */
+    public int getCompletedCount() {
+        return completedCount;
+    }
+
+    /** Instructions executed by the current or last replay; updated every 256 while running. */
+    public long getInstructionCount() {
+        return instructionCount;
+    }
+
+    /** Why the last replay ended FAILED, or null. */
+    public String getFailure() {
+        return failure;
+    }
+
+    /**
+     * Lateness of dispatched actions relative to their deadlines, e.g. 0.5 for the median or
+     * 0.99 for p99. Only meaningful once the replay has ended.
+     */
+    public long getLatenessPercentileNanos(double percentile) {
+        return lateness.getPercentileNanos(percentile);
+    }
+
+    public long getMaxLatenessNanos() {
+        return lateness.getMaxNanos();
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.slash.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Copies a rectangular region out of a single-plane RGBA image buffer, honouring the
+ * plane's row and pixel strides. Only the rows inside the region are touched.
+ */
+public final class RoiExtractor {
+    private RoiExtractor() {
+    }
+
+    /**
+     * Extracts {@code (x, y, width, height)}, clipped to the source bounds, into {@code dst}.
+     *
+     * @return false if the clipped region is empty, in which case {@code dst} is left untouched
+     */
+    public static boolean extract(ByteBuffer src, int srcWidth, int srcHeight, int rowStride, int pixelStride,
+                                  int x, int y, int width, int height, RoiFrame dst) {
+        if (pixelStride < RoiFrame.BYTES_PER_PIXEL) {
+            throw new IllegalArgumentException("Unsupported pixel stride " + pixelStride);
+        }
+        int left = Math.max(x, 0);
+        int top = Math.max(y, 0);
+        int right = Math.min(x + width, srcWidth);
+        int bottom = Math.min(y + height, srcHeight);
+        if (right <= left || bottom <= top) return false;
+
+        int roiWidth = right - left;
+        int roiHeight = bottom - top;
+        dst.reset(roiWidth, roiHeight);
+        byte[] out = dst.getPixels();
+        int rowBytes = roiWidth * RoiFrame.BYTES_PER_PIXEL;
+        int originalPosition = src.position();
+        int base = src.position();
+
+        if (pixelStride == RoiFrame.BYTES_PER_PIXEL) {
+            // Packed pixels: one bulk copy per row, skipping the row padding.
+            for (int row = 0; row < roiHeight; row++) {
+                src.position(base + (top + row) * rowStride + left * pixelStride);
+                src.get(out, row * rowBytes, rowBytes);
+            }
+        } else {
+            int o = 0;
+            for (int row = 0; row < roiHeight; row++) {
+                int p = base + (top + row) * rowStride + left * pixelStride;
+                for (int col = 0; col < roiWidth; col++, p += pixelStride) {
+                    out[o++] = src.get(p);
+                    out[o++] = src.get(p + 1);
+                    out[o++] = src.get(p + 2);
+                    out[o++] = src.get(p + 3);
+                }
+            }
+        }
+        src.position(originalPosition);
+        return true;
+    }
+
+    /**
+     * Extracts from tightly packed RGBA pixels, such as another {@link RoiFrame}'s. Only reads
+     * {@code src}, so several threads may cut regions out of the same pixels at once.
+     *
+     * @return false if the clipped region is empty, in which case {@code dst} is left untouched
+     */
+    public static boolean extract(byte[] src, int srcWidth, int srcHeight,
+                                  int x, int y, int width, int height, RoiFrame dst) {
+        int left = Math.max(x, 0);
+        int top = Math.max(y, 0);
+        int right = Math.min(x + width, srcWidth);
+        int bottom = Math.min(y + height, srcHeight);
+        if (right <= left || bottom <= top) return false;
+
+        int roiWidth = right - left;
+        int roiHeight = bottom - top;
+        dst.reset(roiWidth, roiHeight);
+        byte[] out = dst.getPixels();
+        int rowBytes = roiWidth * RoiFrame.BYTES_PER_PIXEL;
+        int srcRowBytes = srcWidth * RoiFrame.BYTES_PER_PIXEL;
+        for (int row = 0; row < roiHeight; row++) {
+            System.arraycopy(src, (top + row) * srcRowBytes + left * RoiFrame.BYTES_PER_PIXEL,
+                    out, row * rowBytes, rowBytes);
+        }
+        return true;
+    }
+}
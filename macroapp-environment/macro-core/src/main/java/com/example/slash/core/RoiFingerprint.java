@@ -0,0 +1,72 @@
+package com.example.slash.core;
+
+import java.util.Arrays;
+
+/**
+ * 64-bit difference hash of a {@link RoiFrame}: the region is averaged down to a 9x8 luma
+ * grid and each bit records whether a cell is brighter than its right-hand neighbour. The hash
+ * of a horizontal bar such as a stamina gauge only changes when its fill edge crosses into
+ * another cell, a ninth of the bar's width, so the region's mean luma is kept as well, in
+ * 1/256ths of a level, which moves with every column the bar gains or loses.
+ * Not thread-safe; keep one instance per capture thread.
+ */
+public final class RoiFingerprint {
+    private static final int GRID_COLUMNS = 9;
+    private static final int GRID_ROWS = 8;
+
+    private final int[] cellSums = new int[GRID_COLUMNS * GRID_ROWS];
+    private final int[] cellCounts = new int[GRID_COLUMNS * GRID_ROWS];
+    private int[] columnCells = new int[0];
+    private int meanLuma;
+
+    public long compute(RoiFrame frame) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        if (columnCells.length < width) columnCells = new int[width];
+        for (int x = 0; x < width; x++) {
+            columnCells[x] = x * GRID_COLUMNS / width;
+        }
+        Arrays.fill(cellSums, 0);
+        Arrays.fill(cellCounts, 0);
+
+        byte[] pixels = frame.getPixels();
+        long lumaSum = 0;
+        int p = 0;
+        for (int y = 0; y < height; y++) {
+            int rowCell = (y * GRID_ROWS / height) * GRID_COLUMNS;
+            for (int x = 0; x < width; x++, p += RoiFrame.BYTES_PER_PIXEL) {
+                int luma = ((pixels[p] & 0xFF) * 77 + (pixels[p + 1] & 0xFF) * 150 + (pixels[p + 2] & 0xFF) * 29) >> 8;
+                int cell = rowCell + columnCells[x];
+                cellSums[cell] += luma;
+                cellCounts[cell]++;
+                lumaSum += luma;
+            }
+        }
+        int pixelCount = width * height;
+        meanLuma = pixelCount == 0 ? 0 : (int) ((lumaSum << 8) / pixelCount);
+
+        long hash = 0;
+        for (int row = 0; row < GRID_ROWS; row++) {
+            for (int col = 0; col < GRID_COLUMNS - 1; col++) {
+                int cell = row * GRID_COLUMNS + col;
+                hash <<= 1;
+                if (average(cell) > average(cell + 1)) hash |= 1;
+            }
+        }
+        return hash;
+    }
+
+    /** Mean luma of the region last passed to {@link #compute}, in 1/256ths of a level. */
+    public int getMeanLuma() {
+        return meanLuma;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    private int average(int cell) {
+        // Regions narrower or shorter than the grid leave some cells empty
+        return cellCounts[cell] == 0 ? 0 : cellSums[cell] / cellCounts[cell];
+    }
+}
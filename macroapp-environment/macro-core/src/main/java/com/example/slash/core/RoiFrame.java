@@ -0,0 +1,58 @@
+package com.example.slash.core;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Tightly packed RGBA_8888 pixels for one region of a captured frame.
+ * Instances are recycled through {@link RoiFramePool}, so the backing array only grows.
+ */
+public final class RoiFrame {
+    public static final int BYTES_PER_PIXEL = 4;
+
+    private byte[] pixels = new byte[0];
+    private ByteBuffer pixelBuffer = ByteBuffer.wrap(pixels);
+    private int width;
+    private int height;
+    private long timestampNanos;
+
+    void reset(int width, int height) {
+        int byteCount = width * height * BYTES_PER_PIXEL;
+        if (pixels.length < byteCount) {
+            pixels = new byte[byteCount];
+            pixelBuffer = ByteBuffer.wrap(pixels);
+        }
+        this.width = width;
+        this.height = height;
+    }
+
+    public byte[] getPixels() {
+        return pixels;
+    }
+
+    /** Wraps {@link #getPixels()} without allocating; positioned at 0 and limited to this frame's bytes. */
+    public ByteBuffer asByteBuffer() {
+        pixelBuffer.clear();
+        pixelBuffer.limit(getByteCount());
+        return pixelBuffer;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getByteCount() {
+        return width * height * BYTES_PER_PIXEL;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public void setTimestampNanos(long timestampNanos) {
+        this.timestampNanos = timestampNanos;
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.slash.core;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/** Bounded pool of {@link RoiFrame}s shared between the capture and inference threads. */
+public final class RoiFramePool {
+    private final ArrayBlockingQueue<RoiFrame> free;
+
+    public RoiFramePool(int capacity) {
+        free = new ArrayBlockingQueue<>(capacity);
+    }
+
+    public RoiFrame acquire() {
+        RoiFrame frame = free.poll();
+        return frame != null ? frame : new RoiFrame();
+    }
+
+    public void release(RoiFrame frame) {
+        if (frame != null) free.offer(frame); // Dropped when the pool is already full
+    }
+}
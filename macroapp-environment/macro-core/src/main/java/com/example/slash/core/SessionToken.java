@@ -0,0 +1,33 @@
+package com.example.slash.core;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+
+/**
+ * An access token that passed validation, with its expiry. Expirations are ISO-8601 instants such
+ * as {@code 2025-01-31T12:00:00.000Z}, parsed with {@code java.time}, which is thread-safe and
+ * reads the trailing Z as UTC.
+ */
+public final class SessionToken {
+    public final String token;
+    public final long expiresAtMillis;
+
+    public SessionToken(String token, long expiresAtMillis) {
+        this.token = token;
+        this.expiresAtMillis = expiresAtMillis;
+    }
+
+    /** @throws IllegalArgumentException if the token is empty or the expiration is not an instant */
+    public static SessionToken parse(String token, String expiration) {
+        if (token == null || token.isEmpty()) throw new IllegalArgumentException("Empty token");
+        try {
+            return new SessionToken(token, Instant.parse(expiration).toEpochMilli());
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Bad expiration " + expiration, e);
+        }
+    }
+
+    public boolean isValidAt(long nowMillis) {
+        return nowMillis < expiresAtMillis;
+    }
+}
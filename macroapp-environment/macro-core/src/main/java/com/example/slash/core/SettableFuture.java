@@ -0,0 +1,103 @@
+package com.example.slash.core;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A future completed by whoever produces the value, with listeners run on a chosen executor.
+ * Stands in for CompletableFuture, which needs API 24. A listener added after completion runs
+ * right away on its executor.
+ */
+public final class SettableFuture<T> implements Future<T> {
+    private final List<Runnable> listeners = new ArrayList<>();
+    private boolean done;
+    private boolean cancelled;
+    private T value;
+    private Throwable failure;
+
+    public boolean set(T value) {
+        return complete(value, null, false);
+    }
+
+    public boolean setException(Throwable failure) {
+        if (failure == null) throw new NullPointerException("failure");
+        return complete(null, failure, false);
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return complete(null, null, true);
+    }
+
+    public void addListener(Runnable listener, Executor executor) {
+        Runnable task = () -> executor.execute(listener);
+        synchronized (this) {
+            if (!done) {
+                listeners.add(task);
+                return;
+            }
+        }
+        task.run();
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    /** True once completed with a value rather than an exception or cancellation. */
+    public synchronized boolean isSuccessful() {
+        return done && failure == null && !cancelled;
+    }
+
+    @Override
+    public synchronized T get() throws InterruptedException, ExecutionException {
+        while (!done) wait();
+        return result();
+    }
+
+    @Override
+    public synchronized T get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!done) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) throw new TimeoutException();
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return result();
+    }
+
+    private T result() throws ExecutionException {
+        if (cancelled) throw new CancellationException();
+        if (failure != null) throw new ExecutionException(failure);
+        return value;
+    }
+
+    private boolean complete(T value, Throwable failure, boolean cancelled) {
+        List<Runnable> toRun;
+        synchronized (this) {
+            if (done) return false;
+            this.value = value;
+            this.failure = failure;
+            this.cancelled = cancelled;
+            done = true;
+            notifyAll();
+            toRun = new ArrayList<>(listeners);
+            listeners.clear();
+        }
+        for (Runnable listener : toRun) listener.run();
+        return true;
+    }
+}
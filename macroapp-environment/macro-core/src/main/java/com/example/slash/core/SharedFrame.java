@@ -0,0 +1,128 @@
+package com.example.slash.core;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A captured area handed to several readers without copying it. Each reader holds a reference;
+ * the frame goes back to its {@link Pool} when the last one is released. The pixels must not be
+ * changed while more than one reference is out, so readers cut their own regions with
+ * {@link #cut}.
+ */
+public final class SharedFrame {
+    /** Bounded pool; frames released while it is full are left to the garbage collector. */
+    public static final class Pool {
+        private final ArrayBlockingQueue<SharedFrame> free;
+
+        public Pool(int capacity) {
+            free = new ArrayBlockingQueue<>(capacity);
+        }
+
+        /** Returns a frame holding one reference, owned by the caller. */
+        public SharedFrame acquire() {
+            SharedFrame frame = free.poll();
+            if (frame == null) frame = new SharedFrame(this);
+            frame.refs.set(1);
+            return frame;
+        }
+
+        void recycle(SharedFrame frame) {
+            free.offer(frame);
+        }
+    }
+
+    private final Pool pool;
+    private final AtomicInteger refs = new AtomicInteger();
+    private final RoiFrame pixels = new RoiFrame();
+    private CaptureTransform transform;
+    private int originX, originY;
+
+    private SharedFrame(Pool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Copies {@code region} of a capture into this frame; only valid while the caller holds the
+     * sole reference.
+     *
+     * @return false if the region lies outside the capture
+     */
+    public boolean fill(ByteBuffer src, int width, int height, int rowStride, int pixelStride,
+                        CaptureTransform.Region region, CaptureTransform transform, long timestampNanos) {
+        if (refs.get() != 1) throw new IllegalStateException("Frame is shared");
+        if (!RoiExtractor.extract(src, width, height, rowStride, pixelStride,
+                region.x, region.y, region.width, region.height, pixels)) {
+            return false;
+        }
+        this.transform = transform;
+        originX = Math.max(region.x, 0);
+        originY = Math.max(region.y, 0);
+        pixels.setTimestampNanos(timestampNanos);
+        return true;
+    }
+
+    /** Adds a reference for another reader. */
+    public SharedFrame retain() {
+        for (;;) {
+            int count = refs.get();
+            if (count <= 0) throw new IllegalStateException("Frame already released");
+            if (refs.compareAndSet(count, count + 1)) return this;
+        }
+    }
+
+    /** Drops one reference; the frame must not be used afterwards. */
+    public void release() {
+        int count = refs.decrementAndGet();
+        if (count == 0) {
+            pool.recycle(this);
+        } else if (count < 0) {
+            throw new IllegalStateException("Frame released too often");
+        }
+    }
+
+    public int getRefCount() {
+        return refs.get();
+    }
+
+    /**
+     * Copies {@code region}, in capture coordinates, into {@code out}; the parts outside this frame
+     * are clipped off, so the copy starts at {@code (max(x, originX), max(y, originY))}. Safe to call
+     * from several threads at once.
+     *
+     * @return false if none of the region is in this frame
+     */
+    public boolean cut(CaptureTransform.Region region, RoiFrame out) {
+        if (!RoiExtractor.extract(pixels.getPixels(), pixels.getWidth(), pixels.getHeight(),
+                region.x - originX, region.y - originY, region.width, region.height, out)) {
+            return false;
+        }
+        out.setTimestampNanos(pixels.getTimestampNanos());
+        return true;
+    }
+
+    /** The capture this frame was cut from, for mapping regions into it. */
+    public CaptureTransform getTransform() {
+        return transform;
+    }
+
+    public int getOriginX() {
+        return originX;
+    }
+
+    public int getOriginY() {
+        return originY;
+    }
+
+    public int getWidth() {
+        return pixels.getWidth();
+    }
+
+    public int getHeight() {
+        return pixels.getHeight();
+    }
+
+    public long getTimestampNanos() {
+        return pixels.getTimestampNanos();
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.slash.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Time from startup to each milestone. Only the first time a milestone is reached counts, so
+ * marking it again, e.g. after the model is reloaded, is harmless. The app keeps one for the whole
+ * process, started when the process was, so these are cold-start times.
+ */
+public final class StartupTimings {
+    public enum Milestone {
+        SESSION_CHECKED, // Decided between the saved session and asking for a token
+        MACRO_SCREEN,    // Macro screen first laid out
+        MODEL_LOADED,
+        MODEL_WARMED,
+        INTERACTIVE,     // Replay became available
+        FIRST_FRAME,
+        FIRST_INFERENCE
+    }
+
+    private final NanoClock clock;
+    private final AtomicLongArray reachedAt = new AtomicLongArray(Milestone.values().length);
+    private volatile long startNanos;
+
+    public StartupTimings(NanoClock clock) {
+        this.clock = clock;
+    }
+
+    public void start() {
+        startNanos = clock.nanoTime();
+    }
+
+    /** Starts from an earlier {@link NanoClock} reading, e.g. when the process was started. */
+    public void start(long startNanos) {
+        this.startNanos = startNanos;
+    }
+
+    /** Records the milestone if it has not been reached yet. */
+    public void mark(Milestone milestone) {
+        if (reachedAt.get(milestone.ordinal()) != 0) return;
+        reachedAt.compareAndSet(milestone.ordinal(), 0, Math.max(1, clock.nanoTime() - startNanos));
+    }
+
+    public boolean isReached(Milestone milestone) {
+        return reachedAt.get(milestone.ordinal()) != 0;
+    }
+
+    /** Milliseconds from start to the milestone, or -1 if it has not been reached. */
+    public long getMillis(Milestone milestone) {
+        long nanos = reachedAt.get(milestone.ordinal());
+        return nanos == 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Milestone milestone : Milestone.values()) {
+            long millis = getMillis(milestone);
+            if (millis < 0) continue;
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(milestone.name()).append('=').append(millis).append("ms");
+        }
+        return sb.length() == 0 ? "no milestones" : sb.toString();
+    }
+}
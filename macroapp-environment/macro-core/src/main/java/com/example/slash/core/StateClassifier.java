@@ -0,0 +1,11 @@
+package com.example.slash.core;
+
+/** One stage of a {@link ClassifierCascade}. */
+public interface StateClassifier {
+    /**
+     * Writes one score per class into {@code scores}.
+     *
+     * @return confidence in the scores, from 0 (no idea) to 1 (certain)
+     */
+    float classify(RoiFrame frame, float[] scores);
+}
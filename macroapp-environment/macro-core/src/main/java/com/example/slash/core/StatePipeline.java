@@ -0,0 +1,136 @@
+package com.example.slash.core;
+
+/**
+ * Turns stamina-bar ROIs into a {@link GameState}: fingerprint, cache lookup, the cascade stages
+ * before the model, then one batched model run for the ROIs those stages left undecided. Shared
+ * by the app's capture path and the trace replay harness, so both classify frames the same way.
+ * The per-frame scores go through a {@link StateTracker}, which smooths them into the state.
+ * Frames are submitted and flushed from one thread; {@link #getState()} may be read from any.
+ */
+public final class StatePipeline {
+    private final ClassifierCascade cascade;
+    private final InferenceCache cache;
+    private final NanoClock clock;
+    private final int numClasses;
+    private final RoiFingerprint roiFingerprint = new RoiFingerprint();
+    private final float[] cachedResults;
+    private final float[] cascadeResults;
+    private final float[] lastResults; // Scores of the last classified frame, for unchanged ones
+    private final StateTracker tracker;
+    // ROIs the cheap cascade stages left undecided this frame, classified together in one run
+    private final RoiFrame[] pendingFrames;
+    private final long[] pendingFingerprints;
+    private final int[] pendingLumas;
+    private final float[] batchResults;
+    private int pendingCount;
+
+    private volatile BatchInference model;
+    private PipelineMetrics metrics;
+    private StartupTimings startupTimings;
+    private boolean inferred; // Whether FIRST_INFERENCE has been marked
+
+    /** The last stage of {@code cascade} is taken to be the model stage that {@link #flush()} batches. */
+    public StatePipeline(ClassifierCascade cascade, InferenceCache cache, int maxBatch, int numClasses, NanoClock clock) {
+        this.cascade = cascade;
+        this.cache = cache;
+        this.clock = clock;
+        this.numClasses = numClasses;
+        cachedResults = new float[numClasses];
+        cascadeResults = new float[numClasses];
+        lastResults = new float[numClasses];
+        tracker = new StateTracker(numClasses);
+        pendingFrames = new RoiFrame[maxBatch];
+        pendingFingerprints = new long[maxBatch];
+        pendingLumas = new int[maxBatch];
+        batchResults = new float[maxBatch * numClasses];
+    }
+
+    /** Null until the model has loaded; undecided ROIs then fall back to the cheap stages' guess. */
+    public void setModel(BatchInference model) {
+        this.model = model;
+    }
+
+    public void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /** Marks {@link StartupTimings.Milestone#FIRST_INFERENCE} on the first model run. */
+    public void setStartupTimings(StartupTimings startupTimings) {
+        this.startupTimings = startupTimings;
+    }
+
+    public GameState getState() {
+        return tracker.getState();
+    }
+
+    /** For thresholds and transition listeners. */
+    public StateTracker getTracker() {
+        return tracker;
+    }
+
+    /**
+     * Classifies {@code frame}, or queues it for the next {@link #flush()} if only the model can
+     * decide it. A queued frame must stay untouched until then.
+     *
+     * @return false if the frame was queued
+     */
+    public boolean submit(RoiFrame frame) {
+        if (pendingCount == pendingFrames.length) flush();
+        long start = clock.nanoTime();
+        long fingerprint = roiFingerprint.compute(frame);
+        int meanLuma = roiFingerprint.getMeanLuma();
+        if (metrics != null) metrics.histogram(PipelineMetrics.Stage.FINGERPRINT).record(clock.nanoTime() - start);
+        switch (cache.lookup(fingerprint, meanLuma, cachedResults)) {
+            case InferenceCache.UNCHANGED:
+                // Same scores as last time, which still count towards the state
+                tracker.update(lastResults, frame.getTimestampNanos());
+                return true;
+            case InferenceCache.CACHED:
+                updateGameState(cachedResults, frame.getTimestampNanos());
+                return true;
+            default:
+                long classifyStart = clock.nanoTime();
+                int modelStage = cascade.getStageCount() - 1;
+                int stage = cascade.classifyBefore(modelStage, frame, cascadeResults);
+                if (metrics != null) metrics.histogram(PipelineMetrics.Stage.CLASSIFY).record(clock.nanoTime() - classifyStart);
+                if (stage != ClassifierCascade.UNDECIDED) {
+                    cache.store(fingerprint, meanLuma, cascadeResults);
+                    updateGameState(cascadeResults, frame.getTimestampNanos());
+                } else if (model != null) {
+                    pendingFrames[pendingCount] = frame;
+                    pendingFingerprints[pendingCount] = fingerprint;
+                    pendingLumas[pendingCount++] = meanLuma;
+                    return false;
+                } else {
+                    // Best guess from the cheap stages, left uncached so the model can revisit it
+                    updateGameState(cascadeResults, frame.getTimestampNanos());
+                }
+                return true;
+        }
+    }
+
+    /** Classifies every queued ROI in one batched model run. */
+    public void flush() {
+        if (pendingCount == 0) return;
+        long start = clock.nanoTime();
+        model.classify(pendingFrames, pendingCount, batchResults);
+        if (!inferred && startupTimings != null) {
+            inferred = true;
+            startupTimings.mark(StartupTimings.Milestone.FIRST_INFERENCE);
+        }
+        cascade.recordDecisions(cascade.getStageCount() - 1, pendingCount, clock.nanoTime() - start);
+        // Only the stamina bar is watched so far; further regions would be dispatched here
+        for (int i = 0; i < pendingCount; i++) {
+            System.arraycopy(batchResults, i * numClasses, cascadeResults, 0, numClasses);
+            cache.store(pendingFingerprints[i], pendingLumas[i], cascadeResults);
+            updateGameState(cascadeResults, pendingFrames[i].getTimestampNanos());
+            pendingFrames[i] = null;
+        }
+        pendingCount = 0;
+    }
+
+    private void updateGameState(float[] results, long timestampNanos) {
+        System.arraycopy(results, 0, lastResults, 0, numClasses);
+        tracker.update(results, timestampNanos);
+    }
+}
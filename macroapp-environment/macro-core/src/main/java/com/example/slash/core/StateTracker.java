@@ -0,0 +1,177 @@
+package com.example.slash.core;
+
+import java.util.Arrays;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Smooths per-frame classifier scores into a {@link GameState}. Each class keeps an exponentially
+ * weighted confidence whose weight depends on the time between frames rather than the frame rate,
+ * and no single frame counts for more than half, so one noisy frame cannot flip the state. The
+ * state moves to the leading class once its confidence reaches that class's enter threshold and
+ * the current class has fallen below its exit threshold. Depleted stamina enters at a lower
+ * threshold than full by default, so a real drop is reported quickly while a recovery needs more
+ * evidence.
+ *
+ * <p>Transitions go to the listeners straight from {@link #update}, which must be called from one
+ * thread. Detection latency is measured from the first frame of the run of frames that showed the
+ * new state. {@link #getState()} and {@link #reset()} may be called from any thread.
+ */
+public final class StateTracker {
+    public interface Listener {
+        /** Called on the updating thread; {@code from} is IDLE for the first state. */
+        void onStateChanged(GameState from, GameState to, long latencyNanos);
+    }
+
+    private static final long DEFAULT_HALF_LIFE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final float MAX_FRAME_WEIGHT = 0.5f; // At low frame rates, still two frames to switch
+
+    private final int numClasses;
+    private final float[] confidence;
+    private final float[] enter;
+    private final float[] exit;
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private volatile LatencyHistogram latencyHistogram;
+    private volatile long halfLifeNanos = DEFAULT_HALF_LIFE_NANOS;
+
+    // Only touched by the updating thread
+    private boolean started;
+    private long lastTimestampNanos;
+    private int current = -1; // Class of the current state, -1 while IDLE
+    private int rawClass = -1;
+    private long rawSinceNanos;
+
+    private volatile GameState state = GameState.IDLE;
+    private volatile long transitionCount;
+    private volatile boolean resetPending;
+
+    public StateTracker(int numClasses) {
+        this.numClasses = numClasses;
+        confidence = new float[numClasses];
+        enter = new float[numClasses];
+        exit = new float[numClasses];
+        for (int i = 0; i < numClasses; i++) setThresholds(i, 0.6f, 0.4f);
+        setThresholds(BarFillClassifier.FULL, 0.7f, 0.4f);
+    }
+
+    /** Time after which a frame's weight in the confidence has halved. */
+    public void setHalfLife(long nanos) {
+        if (nanos < 0) throw new IllegalArgumentException("Negative half-life " + nanos);
+        halfLifeNanos = nanos;
+    }
+
+    /** Set before the first {@link #update}; {@code exit} must not exceed {@code enter}. */
+    public void setThresholds(int classIndex, float enter, float exit) {
+        if (exit < 0 || exit > enter || enter > 1) {
+            throw new IllegalArgumentException("Bad thresholds enter=" + enter + " exit=" + exit);
+        }
+        this.enter[classIndex] = enter;
+        this.exit[classIndex] = exit;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Also records each transition's detection latency into {@code histogram}; null to stop. */
+    public void setLatencyHistogram(LatencyHistogram histogram) {
+        this.latencyHistogram = histogram;
+    }
+
+    /**
+     * Folds in the scores of a frame captured at {@code timestampNanos}. Scores are read as
+     * non-negative weights and normalised; a frame without any is ignored.
+     *
+     * @return the state after this frame
+     */
+    public GameState update(float[] scores, long timestampNanos) {
+        if (resetPending) {
+            resetPending = false;
+            Arrays.fill(confidence, 0);
+            started = false;
+            current = -1;
+            rawClass = -1;
+            state = GameState.IDLE; // In case a transition raced with reset()
+        }
+        float sum = 0;
+        int best = 0;
+        for (int i = 0; i < numClasses; i++) {
+            sum += Math.max(0, scores[i]);
+            if (scores[i] > scores[best]) best = i;
+        }
+        if (sum <= 0) return state;
+
+        float weight = 1;
+        if (started) {
+            long elapsed = Math.max(0, timestampNanos - lastTimestampNanos);
+            long halfLife = halfLifeNanos;
+            weight = halfLife == 0 ? 1 : (float) (1 - Math.pow(0.5, (double) elapsed / halfLife));
+            weight = Math.min(weight, MAX_FRAME_WEIGHT);
+        }
+        started = true;
+        lastTimestampNanos = timestampNanos;
+        for (int i = 0; i < numClasses; i++) {
+            confidence[i] += weight * (Math.max(0, scores[i]) / sum - confidence[i]);
+        }
+        if (best != rawClass) {
+            rawClass = best;
+            rawSinceNanos = timestampNanos;
+        }
+
+        int leader = 0;
+        for (int i = 1; i < numClasses; i++) {
+            if (confidence[i] > confidence[leader]) leader = i;
+        }
+        if (leader != current && confidence[leader] >= enter[leader]
+                && (current < 0 || confidence[current] < exit[current])) {
+            transition(leader, timestampNanos);
+        }
+        return state;
+    }
+
+    private void transition(int to, long timestampNanos) {
+        GameState from = state;
+        current = to;
+        state = GameState.fromClass(to);
+        transitionCount++;
+        long latencyNanos = to == rawClass ? timestampNanos - rawSinceNanos : 0;
+        latency.record(latencyNanos);
+        LatencyHistogram histogram = latencyHistogram;
+        if (histogram != null) histogram.record(latencyNanos);
+        for (Listener listener : listeners) listener.onStateChanged(from, state, latencyNanos);
+    }
+
+    public GameState getState() {
+        return state;
+    }
+
+    /**
+     * Forgets the smoothed confidences and goes back to IDLE without telling the listeners, so a
+     * new session does not start from the last one's state. {@link #getState()} reads IDLE at
+     * once; the updating thread clears the rest before its next frame. Counters and latencies are
+     * kept.
+     */
+    public void reset() {
+        state = GameState.IDLE;
+        resetPending = true;
+    }
+
+    /** Smoothed confidence in {@code classIndex}, 0 to 1; only meaningful on the updating thread. */
+    public float getConfidence(int classIndex) {
+        return confidence[classIndex];
+    }
+
+    public long getTransitionCount() {
+        return transitionCount;
+    }
+
+    /** Detection latency of every transition so far. */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+}
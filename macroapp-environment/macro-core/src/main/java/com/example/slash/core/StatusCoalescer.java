@@ -0,0 +1,78 @@
+package com.example.slash.core;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Hands the latest of a stream of status values from busy threads to a slower consumer, such as
+ * the UI thread. {@link #post} only swaps a reference and, at most once per delivery, schedules
+ * one; statuses posted in between replace each other. Deliveries are at least
+ * {@code minIntervalNanos} apart, so a burst of updates costs the consumer a single callback.
+ */
+public final class StatusCoalescer<T> {
+    public interface Sink<T> {
+        /** Called on the scheduler's thread with the latest status. */
+        void onStatus(T status);
+    }
+
+    public interface Scheduler {
+        /** Runs {@code task} on the consumer's thread after roughly {@code delayNanos}. */
+        void schedule(Runnable task, long delayNanos);
+    }
+
+    private final Scheduler scheduler;
+    private final long minIntervalNanos;
+    private final NanoClock clock;
+    private final AtomicReference<T> latest = new AtomicReference<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Runnable deliver = this::deliver;
+    private volatile Sink<T> sink;
+    private volatile long lastDeliveryNanos;
+    private final AtomicLong postedCount = new AtomicLong();
+    private volatile long deliveredCount;
+
+    public StatusCoalescer(Scheduler scheduler, long minIntervalNanos, NanoClock clock) {
+        this.scheduler = scheduler;
+        this.minIntervalNanos = minIntervalNanos;
+        this.clock = clock;
+        lastDeliveryNanos = clock.nanoTime() - minIntervalNanos;
+    }
+
+    /** Null stops deliveries; the latest status is still kept for {@link #getLatest()}. */
+    public void setSink(Sink<T> sink) {
+        this.sink = sink;
+    }
+
+    /** Never blocks; safe from any thread. */
+    public void post(T status) {
+        latest.set(status);
+        postedCount.incrementAndGet();
+        if (!scheduled.compareAndSet(false, true)) return; // The pending delivery will pick it up
+        long wait = lastDeliveryNanos + minIntervalNanos - clock.nanoTime();
+        scheduler.schedule(deliver, Math.max(0, wait));
+    }
+
+    private void deliver() {
+        // Cleared before reading, so a status posted meanwhile schedules another delivery
+        scheduled.set(false);
+        lastDeliveryNanos = clock.nanoTime();
+        T status = latest.get();
+        Sink<T> current = sink;
+        if (current == null || status == null) return;
+        deliveredCount++;
+        current.onStatus(status);
+    }
+
+    public T getLatest() {
+        return latest.get();
+    }
+
+    public long getPostedCount() {
+        return postedCount.get();
+    }
+
+    public long getDeliveredCount() {
+        return deliveredCount;
+    }
+}
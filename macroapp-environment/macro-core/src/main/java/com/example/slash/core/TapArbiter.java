@@ -0,0 +1,95 @@
+package com.example.slash.core;
+
+/**
+ * Decides whose touches reach the screen when several sessions tap at once. Each session
+ * dispatches through its own {@link Lane}. The lane that touched last holds the screen for
+ * {@code holdNanos} after each action, during which lanes of lower priority are turned away;
+ * lanes of equal or higher priority take over otherwise. A stroke it has started (DOWN or MOVE
+ * without the UP yet) is not cut into by anyone until its UP, however long that takes, so a lane
+ * must always finish its strokes; {@link ReplayEngine} sends the UP even when cancelled.
+ * Turned-away actions are dropped and counted; the caller decides whether to try again.
+ */
+public final class TapArbiter {
+    /** A session's way to the screen; usable as a {@link ReplayEngine.Dispatcher}. */
+    public final class Lane implements ReplayEngine.Dispatcher {
+        private final String name;
+        private final int priority;
+        private volatile long dispatchedCount;
+        private volatile long rejectedCount;
+
+        Lane(String name, int priority) {
+            this.name = name;
+            this.priority = priority;
+        }
+
+        @Override
+        public void dispatch(byte kind, float x, float y) {
+            offer(kind, x, y);
+        }
+
+        /** @return false if the action was turned away */
+        public boolean offer(byte kind, float x, float y) {
+            return TapArbiter.this.offer(this, kind, x, y);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public long getDispatchedCount() {
+            return dispatchedCount;
+        }
+
+        public long getRejectedCount() {
+            return rejectedCount;
+        }
+
+        @Override
+        public String toString() {
+            return name + "(" + priority + "): dispatched=" + dispatchedCount + ", rejected=" + rejectedCount;
+        }
+    }
+
+    private final ReplayEngine.Dispatcher target;
+    private final long holdNanos;
+    private final NanoClock clock;
+
+    // Guarded by this
+    private Lane owner;
+    private long holdUntilNanos;
+    private boolean strokeOpen;
+
+    /** @param target receives the actions that get through, one at a time */
+    public TapArbiter(ReplayEngine.Dispatcher target, long holdNanos, NanoClock clock) {
+        this.target = target;
+        this.holdNanos = holdNanos;
+        this.clock = clock;
+    }
+
+    public Lane lane(String name, int priority) {
+        return new Lane(name, priority);
+    }
+
+    private synchronized boolean offer(Lane lane, byte kind, float x, float y) {
+        long now = clock.nanoTime();
+        if (owner != null && owner != lane && (strokeOpen || now < holdUntilNanos && lane.priority < owner.priority)) {
+            lane.rejectedCount++;
+            return false;
+        }
+        target.dispatch(kind, x, y);
+        owner = lane;
+        holdUntilNanos = now + holdNanos;
+        strokeOpen = kind == Macro.DOWN || kind == Macro.MOVE;
+        lane.dispatchedCount++;
+        return true;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "owner=" + (owner != null ? owner.name : "none");
+    }
+}
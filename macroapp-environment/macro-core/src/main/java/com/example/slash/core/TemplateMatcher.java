@@ -0,0 +1,381 @@
+package com.example.slash.core;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Finds a template in a grayscale image by normalized cross-correlation (NCC).
+ *
+ * <p>Both images are reduced to a pyramid of half-resolution levels. The coarsest level is
+ * searched exhaustively, split into horizontal strips that run in parallel, with window means
+ * and variances taken from integral images. Each strip keeps its best few distinct peaks, and
+ * the best of those across all strips are refined within a few pixels at each finer level, so a
+ * coarse peak that turns out worse at full resolution does not hide the true match. Scores range from -1 to 1; 1 is a perfect match up to brightness
+ * and contrast. All buffers are reused between calls, so one instance must not be used from
+ * several threads at once.
+ */
+public final class TemplateMatcher {
+    public static final class Match {
+        public int x;      // Top-left corner in image coordinates
+        public int y;
+        public int width;  // Template size
+        public int height;
+        public float score;
+
+        public int centerX() {
+            return x + width / 2;
+        }
+
+        public int centerY() {
+            return y + height / 2;
+        }
+    }
+
+    private static final int MIN_TEMPLATE_SIZE = 8;  // Smallest template side kept in the pyramid
+    private static final int REFINE_RADIUS = 2;      // Search radius in pixels at each finer level
+    private static final int CANDIDATES = 3;         // Coarse candidates carried into refinement
+    private static final int PEAK_RADIUS = 2;        // Coarse positions this close are one peak
+    private static final int MIN_STRIP_ROWS = 16;
+
+    private final ExecutorService executor;
+    private final int strips;
+    private final int templateLevels;
+    private final int[][] templates;      // Template pixels per level
+    private final double[] templateMeans;
+    private final int[] templateWidths;
+    private final int[] templateHeights;
+    private final double[] templateNorms; // Sum of squared deviations from the template mean
+    private final GrayImage[] pyramid;
+    private int[] sums = new int[0];
+    private long[] squareSums = new long[0];
+
+    private final StripTask[] stripTasks;
+    // Best peaks of each strip, CANDIDATES slots per strip, best first
+    private final float[] stripScores;
+    private final int[] stripX;
+    private final int[] stripY;
+    private final int[] stripCounts;
+    private final float[] candidateScores = new float[CANDIDATES];
+    private final int[] candidateX = new int[CANDIDATES];
+    private final int[] candidateY = new int[CANDIDATES];
+
+    /**
+     * @param executor runs coarse-level strips in parallel; null searches on the calling thread
+     * @param strips   number of parallel strips, typically the number of worker threads
+     */
+    public TemplateMatcher(GrayImage template, int maxLevels, ExecutorService executor, int strips) {
+        this.executor = executor;
+        this.strips = executor == null ? 1 : Math.max(1, strips);
+        GrayImage[] levels = new GrayImage[Math.max(1, maxLevels)];
+        levels[0] = template;
+        int count = 1;
+        while (count < levels.length && levels[count - 1].getWidth() / 2 >= MIN_TEMPLATE_SIZE
+                && levels[count - 1].getHeight() / 2 >= MIN_TEMPLATE_SIZE) {
+            levels[count] = new GrayImage();
+            levels[count - 1].downsample(levels[count]);
+            count++;
+        }
+        templateLevels = count;
+        templates = new int[count][];
+        templateMeans = new double[count];
+        templateWidths = new int[count];
+        templateHeights = new int[count];
+        templateNorms = new double[count];
+        for (int l = 0; l < count; l++) {
+            GrayImage level = levels[l];
+            int n = level.getWidth() * level.getHeight();
+            byte[] pixels = level.getPixels();
+            double mean = 0;
+            for (int i = 0; i < n; i++) mean += pixels[i] & 0xFF;
+            mean /= n;
+            int[] values = new int[n];
+            double norm = 0;
+            for (int i = 0; i < n; i++) {
+                values[i] = pixels[i] & 0xFF;
+                norm += (values[i] - mean) * (values[i] - mean);
+            }
+            if (norm == 0) throw new IllegalArgumentException("Template has no contrast");
+            templates[l] = values;
+            templateMeans[l] = mean;
+            templateWidths[l] = level.getWidth();
+            templateHeights[l] = level.getHeight();
+            templateNorms[l] = norm;
+        }
+        pyramid = new GrayImage[count];
+        for (int l = 1; l < count; l++) pyramid[l] = new GrayImage();
+        stripTasks = new StripTask[this.strips];
+        for (int i = 0; i < this.strips; i++) stripTasks[i] = new StripTask(i);
+        stripScores = new float[this.strips * CANDIDATES];
+        stripX = new int[this.strips * CANDIDATES];
+        stripY = new int[this.strips * CANDIDATES];
+        stripCounts = new int[this.strips];
+    }
+
+    public int getTemplateWidth() {
+        return templateWidths[0];
+    }
+
+    public int getTemplateHeight() {
+        return templateHeights[0];
+    }
+
+    /**
+     * Searches the whole of {@code image}, which callers usually extract from the screen's
+     * search region, for the best match scoring at least {@code threshold}.
+     *
+     * @return true if a match was found, in which case {@code out} describes it
+     */
+    public boolean match(GrayImage image, float threshold, Match out) throws InterruptedException {
+        if (image.getWidth() < templateWidths[0] || image.getHeight() < templateHeights[0]) return false;
+        pyramid[0] = image;
+        int top = 0;
+        while (top + 1 < templateLevels
+                && pyramid[top].getWidth() / 2 >= templateWidths[top + 1]
+                && pyramid[top].getHeight() / 2 >= templateHeights[top + 1]) {
+            pyramid[top].downsample(pyramid[top + 1]);
+            top++;
+        }
+
+        searchCoarse(top);
+        int candidates = pickCandidates();
+
+        float bestScore = -1;
+        int bestX = 0, bestY = 0;
+        for (int c = 0; c < candidates; c++) {
+            int x = candidateX[c];
+            int y = candidateY[c];
+            float score = 0;
+            for (int l = top - 1; l >= 0; l--) {
+                int cx = x * 2;
+                int cy = y * 2;
+                score = -1;
+                int maxX = pyramid[l].getWidth() - templateWidths[l];
+                int maxY = pyramid[l].getHeight() - templateHeights[l];
+                for (int ty = Math.max(0, cy - REFINE_RADIUS); ty <= Math.min(maxY, cy + REFINE_RADIUS); ty++) {
+                    for (int tx = Math.max(0, cx - REFINE_RADIUS); tx <= Math.min(maxX, cx + REFINE_RADIUS); tx++) {
+                        float s = scoreDirect(l, tx, ty);
+                        if (s > score) {
+                            score = s;
+                            x = tx;
+                            y = ty;
+                        }
+                    }
+                }
+            }
+            if (top == 0) score = scoreDirect(0, x, y);
+            if (score > bestScore) {
+                bestScore = score;
+                bestX = x;
+                bestY = y;
+            }
+        }
+        if (bestScore < threshold) return false;
+        out.x = bestX;
+        out.y = bestY;
+        out.width = templateWidths[0];
+        out.height = templateHeights[0];
+        out.score = bestScore;
+        return true;
+    }
+
+    private void searchCoarse(int level) throws InterruptedException {
+        GrayImage image = pyramid[level];
+        buildIntegral(image);
+        int rows = image.getHeight() - templateHeights[level] + 1;
+        int used = Math.max(1, Math.min(strips, rows / MIN_STRIP_ROWS));
+        for (int i = 0; i < strips; i++) stripCounts[i] = 0; // Unused strips add no candidates
+        if (used == 1) {
+            stripTasks[0].prepare(level, 0, rows, null);
+            stripTasks[0].run();
+            return;
+        }
+        CountDownLatch done = new CountDownLatch(used);
+        for (int i = 0; i < used; i++) {
+            stripTasks[i].prepare(level, rows * i / used, rows * (i + 1) / used, done);
+            executor.execute(stripTasks[i]);
+        }
+        done.await();
+    }
+
+    // Keeps the best CANDIDATES peaks of all strips, best first; a peak on a strip boundary may
+    // have been found by both strips.
+    private int pickCandidates() {
+        int count = 0;
+        for (int i = 0; i < strips; i++) {
+            for (int k = i * CANDIDATES, end = k + stripCounts[i]; k < end; k++) {
+                count = offerPeak(candidateScores, candidateX, candidateY, 0, count, stripScores[k], stripX[k], stripY[k]);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Adds {@code (x, y)} to the {@code count} peaks kept best first from {@code base}, unless a
+     * better one within {@link #PEAK_RADIUS} is kept already; worse ones that close are dropped.
+     *
+     * @return the new number of peaks, at most {@link #CANDIDATES}
+     */
+    private static int offerPeak(float[] scores, int[] xs, int[] ys, int base, int count, float score, int x, int y) {
+        for (int i = 0; i < count; i++) {
+            int k = base + i;
+            if (Math.abs(xs[k] - x) > PEAK_RADIUS || Math.abs(ys[k] - y) > PEAK_RADIUS) continue;
+            if (scores[k] >= score) return count;
+            count--;
+            System.arraycopy(scores, k + 1, scores, k, count - i);
+            System.arraycopy(xs, k + 1, xs, k, count - i);
+            System.arraycopy(ys, k + 1, ys, k, count - i);
+            i--;
+        }
+        if (count == CANDIDATES && score <= scores[base + count - 1]) return count;
+        int pos = Math.min(count, CANDIDATES - 1);
+        while (pos > 0 && scores[base + pos - 1] < score) {
+            scores[base + pos] = scores[base + pos - 1];
+            xs[base + pos] = xs[base + pos - 1];
+            ys[base + pos] = ys[base + pos - 1];
+            pos--;
+        }
+        scores[base + pos] = score;
+        xs[base + pos] = x;
+        ys[base + pos] = y;
+        return Math.min(count + 1, CANDIDATES);
+    }
+
+    private void buildIntegral(GrayImage image) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        int size = (w + 1) * (h + 1);
+        if (sums.length < size) {
+            sums = new int[size];
+            squareSums = new long[size];
+        }
+        byte[] pixels = image.getPixels();
+        for (int x = 0; x <= w; x++) {
+            sums[x] = 0;
+            squareSums[x] = 0;
+        }
+        for (int y = 1; y <= h; y++) {
+            int rowSum = 0;
+            long rowSquareSum = 0;
+            int o = y * (w + 1);
+            sums[o] = 0;
+            squareSums[o] = 0;
+            for (int x = 1; x <= w; x++) {
+                int v = pixels[(y - 1) * w + x - 1] & 0xFF;
+                rowSum += v;
+                rowSquareSum += v * v;
+                sums[o + x] = sums[o + x - w - 1] + rowSum;
+                squareSums[o + x] = squareSums[o + x - w - 1] + rowSquareSum;
+            }
+        }
+    }
+
+    // NCC at (x, y) using the integral images of the coarse level for the window statistics.
+    private float scoreIntegral(int level, int x, int y) {
+        GrayImage image = pyramid[level];
+        int w = image.getWidth();
+        int tw = templateWidths[level];
+        int th = templateHeights[level];
+        int stride = w + 1;
+        int a = y * stride + x;
+        int b = a + tw;
+        int c = a + th * stride;
+        int d = c + tw;
+        double sum = sums[d] - sums[b] - sums[c] + sums[a];
+        double squareSum = squareSums[d] - squareSums[b] - squareSums[c] + squareSums[a];
+        double variance = squareSum - sum * sum / (tw * th);
+        if (variance <= 1e-6) return 0;
+        // sum(I * (T - mean(T))) = sum(I * T) - mean(T) * sum(I)
+        double corr = dot(level, x, y) - templateMeans[level] * sum;
+        return (float) (corr / Math.sqrt(variance * templateNorms[level]));
+    }
+
+    // NCC at (x, y) computing the window statistics while correlating; used for the few refinement positions.
+    private float scoreDirect(int level, int x, int y) {
+        GrayImage image = pyramid[level];
+        byte[] pixels = image.getPixels();
+        int w = image.getWidth();
+        int tw = templateWidths[level];
+        int th = templateHeights[level];
+        int[] template = templates[level];
+        long dot = 0;
+        long sum = 0;
+        long squareSum = 0;
+        for (int j = 0; j < th; j++) {
+            int row = (y + j) * w + x;
+            int t = j * tw;
+            int rowDot = 0;
+            for (int i = 0; i < tw; i++) {
+                int v = pixels[row + i] & 0xFF;
+                rowDot += v * template[t + i];
+                sum += v;
+                squareSum += v * v;
+            }
+            dot += rowDot;
+        }
+        double variance = squareSum - (double) sum * sum / (tw * th);
+        if (variance <= 1e-6) return 0;
+        double corr = dot - templateMeans[level] * sum;
+        return (float) (corr / Math.sqrt(variance * templateNorms[level]));
+    }
+
+    // Integer dot product of the template with the window at (x, y); row sums fit in an int.
+    private long dot(int level, int x, int y) {
+        GrayImage image = pyramid[level];
+        byte[] pixels = image.getPixels();
+        int w = image.getWidth();
+        int tw = templateWidths[level];
+        int th = templateHeights[level];
+        int[] template = templates[level];
+        long dot = 0;
+        for (int j = 0; j < th; j++) {
+            int row = (y + j) * w + x;
+            int t = j * tw;
+            int rowDot = 0;
+            for (int i = 0; i < tw; i++) {
+                rowDot += (pixels[row + i] & 0xFF) * template[t + i];
+            }
+            dot += rowDot;
+        }
+        return dot;
+    }
+
+    private final class StripTask implements Runnable {
+        private final int index;
+        private int level;
+        private int fromRow;
+        private int toRow;
+        private CountDownLatch done;
+
+        StripTask(int index) {
+            this.index = index;
+        }
+
+        void prepare(int level, int fromRow, int toRow, CountDownLatch done) {
+            this.level = level;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            try {
+                int maxX = pyramid[level].getWidth() - templateWidths[level];
+                int base = index * CANDIDATES;
+                int count = 0;
+                float worstKept = -1;
+                for (int y = fromRow; y < toRow; y++) {
+                    for (int x = 0; x <= maxX; x++) {
+                        float s = scoreIntegral(level, x, y);
+                        if (count == CANDIDATES && s <= worstKept) continue;
+                        count = offerPeak(stripScores, stripX, stripY, base, count, s, x, y);
+                        worstKept = stripScores[base + count - 1];
+                    }
+                }
+                stripCounts[index] = count;
+            } finally {
+                if (done != null) done.countDown();
+            }
+        }
+    }
+}
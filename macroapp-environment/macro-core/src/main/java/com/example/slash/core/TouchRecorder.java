@@ -0,0 +1,176 @@
+package com.example.slash.core;
+
+import java.util.Arrays;
+
+/**
+ * Collects raw touch samples into a preallocated ring of primitive arrays, then turns complete
+ * strokes into {@link Macro} actions. Recording a sample never allocates. Draining at the end of
+ * each stroke keeps the ring down to the stroke in progress; a stroke that fills the ring on its
+ * own is simplified in place, keeping its first and latest samples, and an UP is always accepted.
+ * Samples are only dropped when the ring is full of samples that were never drained.
+ * Single-threaded, typically the UI thread.
+ */
+public final class TouchRecorder {
+    private final PathSimplifier simplifier;
+    private final int mask;
+    private final byte[] kinds;
+    private final float[] xs;
+    private final float[] ys;
+    private final long[] timesNanos;
+    private int head;  // Oldest sample
+    private int size;
+    private long droppedCount;
+    private long compactionCount;
+
+    // Scratch for one stroke laid out contiguously, grown only for unusually long strokes
+    private float[] strokeX = new float[256];
+    private float[] strokeY = new float[256];
+    private long[] strokeTimes = new long[256];
+    private int[] kept = new int[256];
+
+    /**
+     * @param capacity   samples the ring holds, rounded up to a power of two
+     * @param simplifier simplifies drained strokes and strokes that fill the ring
+     */
+    public TouchRecorder(int capacity, PathSimplifier simplifier) {
+        this.simplifier = simplifier;
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = size - 1;
+        kinds = new byte[size];
+        xs = new float[size];
+        ys = new float[size];
+        timesNanos = new long[size];
+    }
+
+    /** @return false if the ring was full and the sample was dropped */
+    public boolean record(byte kind, float x, float y, long timeNanos) {
+        // The last slot is kept for an UP, so a stroke that filled the ring can still end
+        int limit = kind == Macro.UP ? mask + 1 : mask;
+        if (size >= limit && (!compactOpenStroke() || size >= limit)) {
+            droppedCount++;
+            return false;
+        }
+        int i = (head + size) & mask;
+        kinds[i] = kind;
+        xs[i] = x;
+        ys[i] = y;
+        timesNanos[i] = timeNanos;
+        size++;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /** Times a stroke in progress filled the ring and was simplified in place. */
+    public long getCompactionCount() {
+        return compactionCount;
+    }
+
+    public void clear() {
+        head = 0;
+        size = 0;
+        droppedCount = 0;
+        compactionCount = 0;
+    }
+
+    /**
+     * Moves every complete stroke, from {@link Macro#DOWN} to {@link Macro#UP}, into
+     * {@code builder} with its path simplified; taps are copied as they are. Samples of a stroke
+     * still in progress stay in the ring.
+     *
+     * @return number of samples consumed
+     */
+    public int drainStrokes(Macro.Builder builder) {
+        int consumed = 0;
+        while (consumed < size) {
+            int start = (head + consumed) & mask;
+            byte kind = kinds[start];
+            if (kind == Macro.TAP) {
+                builder.add(Macro.TAP, xs[start], ys[start], timesNanos[start]);
+                consumed++;
+                continue;
+            }
+            int end = consumed;
+            while (end < size && kinds[(head + end) & mask] != Macro.UP) end++;
+            if (end == size) break; // Stroke not finished yet
+            emitStroke(consumed, end - consumed + 1, builder);
+            consumed = end + 1;
+        }
+        head = (head + consumed) & mask;
+        size -= consumed;
+        return consumed;
+    }
+
+    private void emitStroke(int from, int count, Macro.Builder builder) {
+        if (count < 2) return; // UP whose DOWN came before recording started
+        copyStroke(from, count);
+        int keptCount = simplifier.simplify(strokeX, strokeY, 0, count, kept);
+        for (int k = 0; k < keptCount; k++) {
+            int i = kept[k];
+            byte kind = k == 0 ? Macro.DOWN : k == keptCount - 1 ? Macro.UP : Macro.MOVE;
+            builder.add(kind, strokeX[i], strokeY[i], strokeTimes[i]);
+        }
+    }
+
+    /**
+     * Shrinks the stroke in progress, the samples after the last UP or tap, to its simplified
+     * path. If that frees less than a quarter of it, every other sample is dropped instead. The
+     * first and latest samples always stay, so the stroke still starts and ends where the finger
+     * did.
+     *
+     * @return false if there was nothing to free
+     */
+    private boolean compactOpenStroke() {
+        int from = size;
+        while (from > 0) {
+            byte kind = kinds[(head + from - 1) & mask];
+            if (kind == Macro.UP || kind == Macro.TAP) break;
+            from--;
+            if (kind == Macro.DOWN) break;
+        }
+        int count = size - from;
+        if (count <= 2) return false;
+        byte firstKind = kinds[(head + from) & mask];
+        copyStroke(from, count);
+        int keptCount = simplifier.simplify(strokeX, strokeY, 0, count, kept);
+        if (keptCount > count - count / 4) { // Keeps the work per sample bounded on wiggly paths
+            keptCount = 0;
+            for (int i = 0; i < count - 1; i += 2) kept[keptCount++] = i;
+            kept[keptCount++] = count - 1;
+        }
+        for (int k = 0; k < keptCount; k++) {
+            int i = kept[k];
+            int r = (head + from + k) & mask;
+            kinds[r] = k == 0 ? firstKind : Macro.MOVE;
+            xs[r] = strokeX[i];
+            ys[r] = strokeY[i];
+            timesNanos[r] = strokeTimes[i];
+        }
+        size = from + keptCount;
+        compactionCount++;
+        return true;
+    }
+
+    // Lays out count samples starting at ring offset from contiguously in the stroke arrays.
+    private void copyStroke(int from, int count) {
+        if (strokeX.length < count) {
+            int capacity = Math.max(count, strokeX.length * 2);
+            strokeX = Arrays.copyOf(strokeX, capacity);
+            strokeY = Arrays.copyOf(strokeY, capacity);
+            strokeTimes = Arrays.copyOf(strokeTimes, capacity);
+            kept = new int[capacity];
+        }
+        for (int i = 0; i < count; i++) {
+            int r = (head + from + i) & mask;
+            strokeX[i] = xs[r];
+            strokeY[i] = ys[r];
+            strokeTimes[i] = timesNanos[r];
+        }
+    }
+}
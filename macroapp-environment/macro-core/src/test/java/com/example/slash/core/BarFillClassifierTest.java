@@ -0,0 +1,120 @@
+package com.example.slash.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/** Synthetic stamina bars with known fill, classified with the default thresholds. */
+public class BarFillClassifierTest {
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 12;
+
+    private final BarFillClassifier classifier = new BarFillClassifier();
+    private final float[] scores = new float[3];
+
+    @Test
+    public void fullBar() {
+        assertEquals(1f, classify(bar(0, WIDTH)), 1e-6f);
+        assertArrayEquals(new float[] {1, 0, 0}, scores, 0f);
+        assertEquals(1f, classifier.getLastFillRatio(), 1e-6f);
+        assertEquals(1f, classify(bar(0, 140)), 1e-6f);
+        assertClass(BarFillClassifier.FULL);
+    }
+
+    @Test
+    public void lowBar() {
+        assertEquals(1f, classify(bar(0, 30)), 1e-6f);
+        assertClass(BarFillClassifier.LOW);
+        assertEquals(0.15f, classifier.getLastFillRatio(), 1e-6f);
+    }
+
+    @Test
+    public void emptyBar() {
+        assertEquals(1f, classify(bar(0, 0)), 1e-6f);
+        assertClass(BarFillClassifier.EMPTY);
+        // Without fill the bar is certainly empty; at 2% it is 0.03 from the boundary at 5%
+        assertEquals(0.6f, classify(bar(0, 4)), 1e-5f);
+        assertClass(BarFillClassifier.EMPTY);
+    }
+
+    @Test
+    public void nearBoundaryIsUnsure() {
+        assertEquals(0.1f, classify(bar(0, 62)), 1e-5f); // 31%
+        assertClass(BarFillClassifier.FULL);
+        assertEquals(0.1f, classify(bar(0, 58)), 1e-5f); // 29%
+        assertClass(BarFillClassifier.LOW);
+        assertEquals(0f, classify(bar(0, 60)), 1e-5f);
+        assertEquals(0.1f, classify(bar(0, 12)), 1e-5f); // 6%
+        assertClass(BarFillClassifier.LOW);
+    }
+
+    @Test
+    public void confidenceFallsTowardsBoundary() {
+        float previous = -1;
+        for (int fill = 60; fill <= 80; fill += 2) {
+            float confidence = classify(bar(0, fill));
+            assertClass(BarFillClassifier.FULL);
+            assertTrue(fill + " columns: " + confidence + " after " + previous, confidence > previous);
+            assertEquals((fill / (float) WIDTH - 0.3f) / 0.1f, confidence, 1e-5f);
+            previous = confidence;
+        }
+        assertEquals(1f, classify(bar(0, 90)), 1e-5f);
+    }
+
+    @Test
+    public void rejectsSplitFill() {
+        RoiFrame frame = bar(0, 80);
+        paint(frame, 120, 160, true);
+        assertEquals(0f, classify(frame), 0f);
+        assertClass(BarFillClassifier.FULL); // Still the best guess from 120 filled columns
+    }
+
+    @Test
+    public void rejectsFillAwayFromLeftEdge() {
+        assertEquals(0f, classify(bar(40, 160)), 0f);
+        // A thin border before the fill is allowed
+        assertEquals(1f, classify(bar(4, 160)), 1e-6f);
+    }
+
+    @Test
+    public void rejectsNoise() {
+        RoiFrame frame = new RoiFrame();
+        frame.reset(WIDTH, HEIGHT);
+        new Random(7).nextBytes(frame.getPixels());
+        assertEquals(0f, classify(frame), 0f);
+    }
+
+    private float classify(RoiFrame frame) {
+        return classifier.classify(frame, scores);
+    }
+
+    private void assertClass(int expected) {
+        for (int i = 0; i < scores.length; i++) assertEquals(i == expected ? 1f : 0f, scores[i], 0f);
+    }
+
+    // Green fill over columns [from, to), dark trough elsewhere
+    private static RoiFrame bar(int from, int to) {
+        RoiFrame frame = new RoiFrame();
+        frame.reset(WIDTH, HEIGHT);
+        paint(frame, 0, WIDTH, false);
+        paint(frame, from, to, true);
+        return frame;
+    }
+
+    private static void paint(RoiFrame frame, int from, int to, boolean filled) {
+        byte[] pixels = frame.getPixels();
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = from; x < to; x++) {
+                int p = (y * WIDTH + x) * RoiFrame.BYTES_PER_PIXEL;
+                pixels[p] = (byte) (filled ? 40 : 30);
+                pixels[p + 1] = (byte) (filled ? 210 : 30);
+                pixels[p + 2] = (byte) (filled ? 60 : 30);
+                pixels[p + 3] = (byte) 255;
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.example.slash.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/** Sampling policy of the capture scheduler, against a fake clock and a counting frame source. */
+public class CaptureSchedulerTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private long now;
+    private final FakeSource source = new FakeSource();
+    private final List<Long> processedAt = new ArrayList<>();
+    private final List<Integer> processed = new ArrayList<>();
+    private final List<Runnable> queued = new ArrayList<>();
+    private boolean changed;
+    private long workNanos;
+
+    private final CaptureScheduler.FrameProcessor<Integer> processor = frame -> {
+        processedAt.add(now / MS);
+        processed.add(frame);
+        now += workNanos;
+        return changed;
+    };
+
+    @Test
+    public void skipsFramesBeforeDeadline() {
+        CaptureScheduler<Integer> scheduler = scheduler(Runnable::run);
+        scheduler.setTargetFps(10);
+        scheduler.start();
+        frameAt(0, scheduler);
+        frameAt(50, scheduler);
+        frameAt(99, scheduler);
+        frameAt(100, scheduler);
+
+        assertEquals(Arrays.asList(0L, 100L), processedAt);
+        assertEquals(2, scheduler.getProcessedCount());
+        assertEquals(2, scheduler.getSkippedCount());
+        assertEquals(2, source.discarded);
+        assertEquals(2, source.released.size());
+    }
+
+    @Test
+    public void keepsLatestFrameWhileBusy() {
+        CaptureScheduler<Integer> scheduler = scheduler(queued::add);
+        scheduler.setTargetFps(100);
+        scheduler.start();
+        frameAt(0, scheduler);
+        frameAt(10, scheduler);
+        frameAt(20, scheduler);
+        assertEquals(1, queued.size());
+        runQueued();
+
+        assertEquals(Arrays.asList(3), processed);
+        assertEquals(2, scheduler.getDroppedCount());
+        assertEquals(Arrays.asList(1, 2, 3), source.released);
+    }
+
+    @Test
+    public void backsOffWhileStableAndSpeedsUpOnChange() {
+        CaptureScheduler<Integer> scheduler = scheduler(Runnable::run);
+        scheduler.setAdaptiveFps(1, 10);
+        scheduler.start();
+        for (long t = 0; t <= 2500; t += 100) frameAt(t, scheduler);
+        assertEquals(Arrays.asList(0L, 200L, 600L, 1400L, 2400L), processedAt);
+
+        changed = true;
+        for (long t = 2600; t <= 3700; t += 100) frameAt(t, scheduler);
+        // Once a sampled frame shows a change, every 100 ms frame after it is sampled
+        assertEquals(Arrays.asList(0L, 200L, 600L, 1400L, 2400L, 3400L, 3500L, 3600L, 3700L), processedAt);
+    }
+
+    @Test
+    public void backsOffWhenProcessingOverrunsInterval() {
+        CaptureScheduler<Integer> scheduler = scheduler(queued::add);
+        scheduler.setAdaptiveFps(1, 10);
+        scheduler.start();
+        changed = true;
+        workNanos = 300 * MS;
+        frameAt(0, scheduler);
+        runQueued();
+        assertEquals(300, now / MS);
+
+        frameAt(300, scheduler);
+        frameAt(400, scheduler);
+        frameAt(500, scheduler);
+        runQueued();
+        // Sampled every 300 ms instead of every 100 ms, so nothing was acquired just to be dropped
+        assertEquals(Arrays.asList(1, 2), processed);
+        assertEquals(2, scheduler.getSkippedCount());
+        assertEquals(0, scheduler.getDroppedCount());
+    }
+
+    @Test
+    public void resetsIntervalAfterIdlePeriod() {
+        CaptureScheduler<Integer> scheduler = scheduler(Runnable::run);
+        scheduler.setAdaptiveFps(1, 10);
+        scheduler.start();
+        for (long t = 0; t <= 1500; t += 100) frameAt(t, scheduler);
+        assertEquals(Arrays.asList(0L, 200L, 600L, 1400L), processedAt);
+
+        // The screen was still for longer than the maximum interval, so sampling starts over from
+        // the full rate instead of the backed-off one second
+        frameAt(4000, scheduler);
+        frameAt(4100, scheduler);
+        frameAt(4200, scheduler);
+        assertEquals(Arrays.asList(0L, 200L, 600L, 1400L, 4000L, 4200L), processedAt);
+    }
+
+    @Test
+    public void stopReleasesPendingFrame() {
+        CaptureScheduler<Integer> scheduler = scheduler(queued::add);
+        scheduler.start();
+        frameAt(0, scheduler);
+        scheduler.stop();
+        frameAt(1000, scheduler);
+        runQueued();
+
+        assertEquals(Arrays.asList(), processed);
+        assertEquals(Arrays.asList(1), source.released);
+        assertEquals(1, source.discarded);
+        assertEquals(0, scheduler.getSkippedCount());
+    }
+
+    private CaptureScheduler<Integer> scheduler(Executor executor) {
+        return new CaptureScheduler<>(source, processor, executor, () -> now);
+    }
+
+    private void frameAt(long millis, CaptureScheduler<Integer> scheduler) {
+        now = millis * MS;
+        source.frames++;
+        scheduler.onFrameAvailable();
+    }
+
+    private void runQueued() {
+        while (!queued.isEmpty()) queued.remove(0).run();
+    }
+
+    // Numbers its frames from 1; every callback has a new frame ready
+    private static final class FakeSource implements CaptureScheduler.FrameSource<Integer> {
+        int frames;
+        int discarded;
+        final List<Integer> released = new ArrayList<>();
+
+        @Override
+        public Integer acquireLatest() {
+            return frames;
+        }
+
+        @Override
+        public void discardLatest() {
+            discarded++;
+        }
+
+        @Override
+        public void release(Integer frame) {
+            released.add(frame);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.example.slash.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CaptureTransformTest {
+    private static final float[] SCALES = {0.25f, 1 / 3f, 0.5f, 0.6f, 0.75f, 1f};
+    private static final int[][] SCREENS = {{1080, 2340}, {1081, 2341}, {720, 1280}, {1439, 3119}, {3, 5}};
+
+    @Test
+    public void captureSizesAreEvenUnlessFullSize() {
+        for (int[] screen : SCREENS) {
+            for (float scale : SCALES) {
+                CaptureTransform transform = new CaptureTransform(screen[0], screen[1], scale);
+                if (scale == 1) {
+                    assertEquals(screen[0], transform.getCaptureWidth());
+                    assertEquals(screen[1], transform.getCaptureHeight());
+                    assertTrue(transform.isIdentity());
+                    continue;
+                }
+                assertEquals(transform.toString(), 0, transform.getCaptureWidth() % 2);
+                assertEquals(transform.toString(), 0, transform.getCaptureHeight() % 2);
+                assertTrue(transform.getCaptureWidth() >= 2);
+                assertEquals(Math.max(2, screen[0] * scale), transform.getCaptureWidth(), 1);
+                assertEquals(Math.max(2, screen[1] * scale), transform.getCaptureHeight(), 1);
+            }
+        }
+        CaptureTransform odd = new CaptureTransform(1081, 2341, 0.5f);
+        assertEquals(540, odd.getCaptureWidth());
+        assertEquals(1170, odd.getCaptureHeight());
+        assertFalse(odd.isIdentity());
+    }
+
+    @Test
+    public void scaleOneIsExactIdentity() {
+        CaptureTransform transform = new CaptureTransform(1081, 2341, 1f);
+        CaptureTransform.Region region = new CaptureTransform.Region().set(17, 33, 101, 7);
+        CaptureTransform.Region out = transform.toCapture(region, new CaptureTransform.Region());
+        assertRegion(out, 17, 33, 101, 7);
+        assertRegion(transform.toScreen(out, out), 17, 33, 101, 7);
+        assertEquals(1080.5f, transform.toCaptureX(1080.5f), 0f);
+        assertEquals(7.25f, transform.toScreenY(7.25f), 0f);
+    }
+
+    @Test
+    public void pointsRoundTrip() {
+        for (int[] screen : SCREENS) {
+            for (float scale : SCALES) {
+                CaptureTransform transform = new CaptureTransform(screen[0], screen[1], scale);
+                for (float x = 0; x <= screen[0]; x += screen[0] / 7f) {
+                    assertEquals(x, transform.toScreenX(transform.toCaptureX(x)), 1e-3f * Math.max(1, x));
+                }
+                for (float y = 0; y <= screen[1]; y += screen[1] / 7f) {
+                    assertEquals(y, transform.toScreenY(transform.toCaptureY(y)), 1e-3f * Math.max(1, y));
+                }
+                assertEquals(transform.getCaptureWidth(), transform.toCaptureX(screen[0]), 1e-3f);
+                assertEquals(screen[1], transform.toScreenY(transform.getCaptureHeight()), 1e-2f);
+            }
+        }
+    }
+
+    @Test
+    public void regionsMapOutwardAndRoundTripCoversOriginal() {
+        Random random = new Random(7);
+        CaptureTransform.Region screenRegion = new CaptureTransform.Region();
+        CaptureTransform.Region capture = new CaptureTransform.Region();
+        CaptureTransform.Region back = new CaptureTransform.Region();
+        for (int[] screen : SCREENS) {
+            for (float scale : SCALES) {
+                CaptureTransform transform = new CaptureTransform(screen[0], screen[1], scale);
+                for (int i = 0; i < 500; i++) {
+                    int x = random.nextInt(screen[0]);
+                    int y = random.nextInt(screen[1]);
+                    screenRegion.set(x, y, 1 + random.nextInt(screen[0] - x), 1 + random.nextInt(screen[1] - y));
+                    transform.toCapture(screenRegion, capture);
+                    assertCovers(transform + " " + screenRegion, capture,
+                            transform.toCaptureX(x), transform.toCaptureY(y),
+                            transform.toCaptureX(x + screenRegion.width), transform.toCaptureY(y + screenRegion.height));
+                    assertTrue(capture.x + capture.width <= transform.getCaptureWidth());
+                    assertTrue(capture.y + capture.height <= transform.getCaptureHeight());
+
+                    transform.toScreen(capture, back);
+                    assertCovers(transform + " " + screenRegion + " -> " + back, back,
+                            x, y, x + screenRegion.width, y + screenRegion.height);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void wholePixelBoundariesAreNotPushedOut() {
+        CaptureTransform transform = new CaptureTransform(1080, 2340, 0.5f);
+        CaptureTransform.Region region = new CaptureTransform.Region().set(100, 200, 300, 400);
+        assertRegion(transform.toCapture(region, region), 50, 100, 150, 200);
+        assertRegion(transform.toScreen(region, region), 100, 200, 300, 400);
+        // A pixel at odd coordinates is half of one capture pixel
+        assertRegion(transform.toCapture(region.set(101, 201, 1, 1), region), 50, 100, 1, 1);
+    }
+
+    @Test
+    public void emptyRegionsStayEmpty() {
+        CaptureTransform transform = new CaptureTransform(1080, 2340, 0.5f);
+        CaptureTransform.Region out = transform.toCapture(new CaptureTransform.Region().set(10, 20, 0, 5),
+                new CaptureTransform.Region());
+        assertTrue(out.isEmpty());
+        assertRegion(out, 10, 20, 0, 0);
+    }
+
+    @Test
+    public void unionCoversBoth() {
+        CaptureTransform.Region region = new CaptureTransform.Region().set(10, 10, 5, 5);
+        region.union(new CaptureTransform.Region().set(0, 12, 2, 20));
+        assertRegion(region, 0, 10, 15, 22);
+        region.union(new CaptureTransform.Region());
+        assertRegion(region, 0, 10, 15, 22);
+        assertRegion(new CaptureTransform.Region().union(region), 0, 10, 15, 22);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsScaleAboveOne() {
+        new CaptureTransform(1080, 2340, 1.5f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroScale() {
+        new CaptureTransform(1080, 2340, 0f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyScreen() {
+        new CaptureTransform(0, 2340, 0.5f);
+    }
+
+    private static void assertCovers(String message, CaptureTransform.Region region,
+                                     float left, float top, float right, float bottom) {
+        float slack = 1e-3f * Math.max(1, Math.max(right, bottom)); // Float rounding of the scale
+        assertTrue(message, region.x <= left + slack);
+        assertTrue(message, region.y <= top + slack);
+        assertTrue(message, region.x + region.width >= right - slack);
+        assertTrue(message, region.y + region.height >= bottom - slack);
+    }
+
+    private static void assertRegion(CaptureTransform.Region region, int x, int y, int width, int height) {
+        assertEquals("x", x, region.x);
+        assertEquals("y", y, region.y);
+        assertEquals("width", width, region.width);
+        assertEquals("height", height, region.height);
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.slash.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/** Stage selection and counters, with stages that take a fixed time on a fake clock. */
+public class ClassifierCascadeTest {
+    private long now;
+    private final int[] calls = new int[2];
+    private final float[] confidence = {0f, 0f};
+    private final float[] scores = new float[3];
+    private final RoiFrame frame = new RoiFrame();
+
+    private final ClassifierCascade cascade = new ClassifierCascade(() -> now)
+            .addStage("fast", stage(0, 1_000, 0), 0.9f)
+            .addStage("model", stage(1, 50_000, 2), 0.9f);
+
+    @Test
+    public void confidentFirstStageSkipsTheRest() {
+        confidence[0] = 0.95f;
+        assertEquals(0, cascade.classify(frame, scores));
+        assertEquals(0, cascade.classify(frame, scores));
+        assertArrayEquals(new int[] {2, 0}, calls);
+        assertArrayEquals(new float[] {1, 0, 0}, scores, 0f);
+
+        assertEquals(2, cascade.getCallCount(0));
+        assertEquals(2, cascade.getDecisionCount(0));
+        assertEquals(0, cascade.getCallCount(1));
+        assertEquals(1_000, cascade.getAverageNanos(0));
+        assertEquals(0, cascade.getAverageNanos(1));
+    }
+
+    @Test
+    public void unsureFirstStageFallsThrough() {
+        confidence[0] = 0.5f;
+        // The last stage decides whatever its confidence
+        assertEquals(1, cascade.classify(frame, scores));
+        assertArrayEquals(new int[] {1, 1}, calls);
+        assertArrayEquals(new float[] {0, 0, 1}, scores, 0f);
+
+        assertEquals(1, cascade.getCallCount(0));
+        assertEquals(0, cascade.getDecisionCount(0));
+        assertEquals(1, cascade.getDecisionCount(1));
+        assertEquals(50_000, cascade.getAverageNanos(1));
+        assertEquals("fast: decided 0 (0%), avg 1us, model: decided 1 (100%), avg 50us", cascade.toString());
+    }
+
+    @Test
+    public void batchedLastStageIsRecordedByCaller() {
+        confidence[0] = 0.5f;
+        assertEquals(ClassifierCascade.UNDECIDED, cascade.classifyBefore(1, frame, scores));
+        assertEquals(ClassifierCascade.UNDECIDED, cascade.classifyBefore(1, frame, scores));
+        confidence[0] = 0.9f;
+        assertEquals(0, cascade.classifyBefore(1, frame, scores));
+        assertArrayEquals(new int[] {3, 0}, calls);
+
+        cascade.recordDecisions(1, 2, 80_000);
+        assertEquals(3, cascade.getCallCount(0));
+        assertEquals(1, cascade.getDecisionCount(0));
+        assertEquals(2, cascade.getCallCount(1));
+        assertEquals(2, cascade.getDecisionCount(1));
+        assertEquals(40_000, cascade.getAverageNanos(1));
+    }
+
+    @Test
+    public void thresholdCanBeTuned() {
+        confidence[0] = 0.5f;
+        cascade.setMinConfidence(0, 0.5f);
+        assertEquals(0, cascade.classify(frame, scores));
+        cascade.resetCounters();
+        assertEquals(0, cascade.getCallCount(0));
+        assertEquals(0, cascade.getDecisionCount(0));
+        assertEquals(0, cascade.getAverageNanos(0));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void emptyCascadeCannotClassify() {
+        new ClassifierCascade(() -> now).classify(frame, scores);
+    }
+
+    // Takes `nanos` on the fake clock and votes for `state`
+    private StateClassifier stage(int index, long nanos, int state) {
+        return (roi, out) -> {
+            calls[index]++;
+            now += nanos;
+            for (int i = 0; i < out.length; i++) out[i] = i == state ? 1 : 0;
+            return confidence[index];
+        };
+    }
+}
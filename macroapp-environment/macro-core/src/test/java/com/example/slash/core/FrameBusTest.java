@@ -0,0 +1,255 @@
+package com.example.slash.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+/** {@link FrameBus} fan-out and the {@link SharedFrame} references it hands around. */
+public class FrameBusTest {
+    private static final Executor DIRECT = Runnable::run;
+
+    private final SharedFrame.Pool pool = new SharedFrame.Pool(8);
+    private final ManualExecutor manual = new ManualExecutor();
+
+    @Test
+    public void everySubscriberSeesTheSameFrameAndAllReferencesReturn() {
+        FrameBus bus = new FrameBus(DIRECT);
+        Recorder first = new Recorder();
+        Recorder second = new Recorder();
+        bus.subscribe("first", first);
+        bus.subscribe("second", second);
+
+        SharedFrame frame = filledFrame(1);
+        assertEquals(2, bus.publish(frame));
+        assertEquals(1, frame.getRefCount()); // Both deliveries have returned
+        assertSame(frame, first.frames.get(0));
+        assertSame(frame, second.frames.get(0));
+        // A direct executor delivers within publish, so each sees the caller's reference and its own
+        assertEquals(2, first.refCounts.get(0).intValue());
+        assertEquals(2, second.refCounts.get(0).intValue());
+        frame.release();
+        assertEquals(0, frame.getRefCount());
+        assertSame(frame, pool.acquire()); // Recycled
+    }
+
+    @Test
+    public void busySubscriberKeepsOnlyNewestFrame() {
+        FrameBus bus = new FrameBus(DIRECT);
+        Recorder slow = new Recorder();
+        Recorder fast = new Recorder();
+        FrameBus.Subscription slowSubscription = bus.subscribe("slow", slow, manual);
+        FrameBus.Subscription fastSubscription = bus.subscribe("fast", fast);
+
+        SharedFrame[] frames = new SharedFrame[3];
+        for (int i = 0; i < frames.length; i++) frames[i] = filledFrame(i); // Distinct, none recycled yet
+        for (int i = 0; i < frames.length; i++) {
+            bus.publish(frames[i]);
+            frames[i].release();
+        }
+        assertEquals(1, manual.tasks.size()); // At most one task queued per subscription
+        assertEquals(0, frames[0].getRefCount());
+        assertEquals(0, frames[1].getRefCount());
+        assertEquals(1, frames[2].getRefCount());
+
+        manual.runAll();
+        assertEquals(1, slow.frames.size());
+        assertEquals(2L, slow.timestamps.get(0).longValue());
+        assertEquals(0, frames[2].getRefCount());
+        assertEquals(1, slowSubscription.getDeliveredCount());
+        assertEquals(2, slowSubscription.getDroppedCount());
+
+        assertEquals(3, fast.frames.size());
+        assertEquals(3, fastSubscription.getDeliveredCount());
+        assertEquals(0, fastSubscription.getDroppedCount());
+    }
+
+    @Test
+    public void frameOfferedDuringDeliveryIsPickedUp() {
+        FrameBus bus = new FrameBus(manual);
+        List<Long> seen = new ArrayList<>();
+        SharedFrame second = filledFrame(2);
+        bus.subscribe("nested", new Recorder() {
+            @Override
+            public void onFrame(SharedFrame frame) {
+                seen.add(frame.getTimestampNanos());
+                if (seen.size() == 1) bus.publish(second);
+            }
+        });
+        SharedFrame first = filledFrame(1);
+        bus.publish(first);
+        first.release();
+        manual.runAll();
+        assertEquals(2, seen.size());
+        assertEquals(1, manual.ran);
+        assertEquals(1, second.getRefCount());
+        second.release();
+        assertEquals(0, first.getRefCount());
+        assertEquals(0, second.getRefCount());
+    }
+
+    @Test
+    public void cancelReleasesPendingFrameAndStopsDeliveries() {
+        FrameBus bus = new FrameBus(manual);
+        Recorder recorder = new Recorder();
+        FrameBus.Subscription subscription = bus.subscribe("cancelled", recorder);
+        SharedFrame frame = filledFrame(1);
+        bus.publish(frame);
+        frame.release();
+        assertEquals(1, frame.getRefCount());
+
+        subscription.cancel();
+        assertEquals(0, frame.getRefCount());
+        assertFalse(bus.hasSubscribers());
+        manual.runAll();
+        assertTrue(recorder.frames.isEmpty());
+        SharedFrame later = filledFrame(2);
+        assertEquals(0, bus.publish(later));
+        later.release();
+        assertEquals(0, later.getRefCount());
+    }
+
+    @Test
+    public void rejectedExecutorReleasesFrame() {
+        FrameBus bus = new FrameBus(command -> {
+            throw new RejectedExecutionException();
+        });
+        bus.subscribe("closed", new Recorder());
+        SharedFrame frame = filledFrame(1);
+        bus.publish(frame);
+        assertEquals(1, frame.getRefCount());
+        frame.release();
+        assertEquals(0, frame.getRefCount());
+    }
+
+    @Test
+    public void watchedAreaIsUnionOfSubscribers() {
+        FrameBus bus = new FrameBus(DIRECT);
+        CaptureTransform transform = new CaptureTransform(1080, 2340, 0.5f);
+        CaptureTransform.Region area = new CaptureTransform.Region();
+        assertTrue(bus.watchedArea(transform, area).isEmpty());
+        bus.subscribe("a", watching(10, 10, 20, 20));
+        bus.subscribe("b", watching(100, 5, 10, 10));
+        bus.watchedArea(transform, area);
+        assertEquals(10, area.x);
+        assertEquals(5, area.y);
+        assertEquals(100, area.width);
+        assertEquals(25, area.height);
+    }
+
+    @Test
+    public void sharedFrameCutsInCaptureCoordinates() {
+        SharedFrame frame = filledFrame(7);
+        assertEquals(10, frame.getOriginX());
+        assertEquals(20, frame.getOriginY());
+        RoiFrame out = new RoiFrame();
+        // Starts above and left of the frame, so it is clipped to the frame's origin
+        assertTrue(frame.cut(new CaptureTransform.Region().set(5, 15, 10, 10), out));
+        assertEquals(5, out.getWidth());
+        assertEquals(5, out.getHeight());
+        assertEquals(7, out.getTimestampNanos());
+        assertEquals(capturePixel(10, 20), out.getPixels()[0] & 0xFF);
+        assertEquals(capturePixel(14, 24), out.getPixels()[(4 * 5 + 4) * RoiFrame.BYTES_PER_PIXEL] & 0xFF);
+        assertFalse(frame.cut(new CaptureTransform.Region().set(0, 0, 5, 5), out));
+        frame.release();
+    }
+
+    @Test
+    public void sharedFrameRejectsMisuse() {
+        SharedFrame frame = filledFrame(1);
+        frame.retain();
+        try {
+            fill(frame, 1);
+            fail("Filled a shared frame");
+        } catch (IllegalStateException expected) {
+        }
+        frame.release();
+        frame.release();
+        try {
+            frame.retain();
+            fail("Retained a released frame");
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            frame.release();
+            fail("Released a frame twice");
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    private SharedFrame filledFrame(long timestampNanos) {
+        SharedFrame frame = pool.acquire();
+        assertTrue(fill(frame, timestampNanos));
+        return frame;
+    }
+
+    // A 40x50 capture with a 30x20 region at (10, 20) cut into the frame
+    private static boolean fill(SharedFrame frame, long timestampNanos) {
+        int width = 40, height = 50, rowStride = width * RoiFrame.BYTES_PER_PIXEL + 16;
+        ByteBuffer capture = ByteBuffer.allocate(rowStride * height);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) capture.put(y * rowStride + x * RoiFrame.BYTES_PER_PIXEL, (byte) capturePixel(x, y));
+        }
+        CaptureTransform transform = new CaptureTransform(80, 100, 0.5f);
+        return frame.fill(capture, width, height, rowStride, RoiFrame.BYTES_PER_PIXEL,
+                new CaptureTransform.Region().set(10, 20, 30, 20), transform, timestampNanos);
+    }
+
+    private static int capturePixel(int x, int y) {
+        return (x * 7 + y * 13) & 0xFF;
+    }
+
+    private static FrameBus.Subscriber watching(int x, int y, int width, int height) {
+        return new Recorder() {
+            @Override
+            public void addWatchedArea(CaptureTransform transform, CaptureTransform.Region out) {
+                out.union(new CaptureTransform.Region().set(x, y, width, height));
+            }
+        };
+    }
+
+    private static class Recorder implements FrameBus.Subscriber {
+        final List<SharedFrame> frames = new ArrayList<>();
+        final List<Integer> refCounts = new ArrayList<>();
+        final List<Long> timestamps = new ArrayList<>();
+
+        @Override
+        public void addWatchedArea(CaptureTransform transform, CaptureTransform.Region out) {
+        }
+
+        @Override
+        public void onFrame(SharedFrame frame) {
+            frames.add(frame);
+            refCounts.add(frame.getRefCount());
+            timestamps.add(frame.getTimestampNanos());
+        }
+    }
+
+    private static final class ManualExecutor implements Executor {
+        final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        int ran;
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+                ran++;
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.slash.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+/**
+ * Compares the fused preprocessors with golden buffers from the old path, which scaled a Bitmap
+ * with {@code createScaledBitmap(..., true)} and then wrote each channel as {@code value / 255f}.
+ * The golden files were produced off the device by a double-precision model of that path: pixel
+ * centre aligned bilinear sampling, rounded to the 8 bits a Bitmap stores. The fused path skips
+ * that rounding, so float output may differ by up to half a level.
+ */
+public class InputPreprocessorTest {
+    private static final float HALF_LEVEL = 0.5f / 255f + 1e-6f;
+
+    @Test
+    public void floatMatchesOldPathWhenDownscaling() throws IOException {
+        assertFloatGolden("down", 20, 15, 8, 6);
+    }
+
+    @Test
+    public void floatMatchesOldPathWhenUpscaling() throws IOException {
+        assertFloatGolden("up", 5, 4, 12, 9);
+    }
+
+    @Test
+    public void quantizedMatchesOldPathWhenDownscaling() throws IOException {
+        assertQuantizedGolden("down", 20, 15, 8, 6);
+    }
+
+    @Test
+    public void quantizedMatchesOldPathWhenUpscaling() throws IOException {
+        assertQuantizedGolden("up", 5, 4, 12, 9);
+    }
+
+    @Test
+    public void meanAndStdNormalise() throws IOException {
+        float[] golden = readFloats("down");
+        FloatInputPreprocessor preprocessor = new FloatInputPreprocessor(8, 6, 127.5f, 127.5f);
+        ByteBuffer out = ByteBuffer.allocate(preprocessor.getInputBytes()).order(ByteOrder.nativeOrder());
+        preprocessor.process(pattern(20, 15), out);
+        out.flip();
+        for (float value : golden) {
+            assertEquals(value * 2 - 1, out.getFloat(), 2 * HALF_LEVEL);
+        }
+    }
+
+    @Test
+    public void sameSizeCopiesPixels() {
+        RoiFrame frame = pattern(7, 5);
+        QuantizedInputPreprocessor preprocessor = new QuantizedInputPreprocessor(7, 5);
+        ByteBuffer out = ByteBuffer.allocate(preprocessor.getInputBytes());
+        preprocessor.process(frame, out);
+        for (int y = 0, i = 0; y < 5; y++) {
+            for (int x = 0; x < 7; x++) {
+                for (int c = 0; c < 3; c++) assertEquals(pixel(x, y, c), out.get(i++) & 0xFF);
+            }
+        }
+    }
+
+    @Test
+    public void writesAtPositionAndAdvances() throws IOException {
+        // Batches put several tensors into one buffer back to back
+        float[] golden = readFloats("down");
+        FloatInputPreprocessor preprocessor = new FloatInputPreprocessor(8, 6);
+        int bytes = preprocessor.getInputBytes();
+        ByteBuffer out = ByteBuffer.allocateDirect(bytes * 2).order(ByteOrder.nativeOrder());
+        RoiFrame frame = pattern(20, 15);
+        preprocessor.process(frame, out);
+        assertEquals(bytes, out.position());
+        preprocessor.process(frame, out);
+        assertEquals(2 * bytes, out.position());
+        for (int i = 0; i < golden.length; i++) {
+            assertEquals(golden[i], out.getFloat(bytes + i * 4), HALF_LEVEL);
+        }
+    }
+
+    @Test
+    public void sourceSizeChangeRebuildsTables() throws IOException {
+        QuantizedInputPreprocessor preprocessor = new QuantizedInputPreprocessor(8, 6);
+        ByteBuffer out = ByteBuffer.allocate(preprocessor.getInputBytes());
+        preprocessor.process(pattern(5, 4), out);
+        out.clear();
+        preprocessor.process(pattern(20, 15), out);
+        byte[] golden = readResource("preprocess_down.u8");
+        for (int i = 0; i < golden.length; i++) {
+            assertTrue(Math.abs((golden[i] & 0xFF) - (out.get(i) & 0xFF)) <= 1);
+        }
+    }
+
+    private static void assertFloatGolden(String name, int srcWidth, int srcHeight, int width, int height)
+            throws IOException {
+        float[] golden = readFloats(name);
+        FloatInputPreprocessor preprocessor = new FloatInputPreprocessor(width, height);
+        assertEquals(golden.length * 4, preprocessor.getInputBytes());
+        ByteBuffer out = ByteBuffer.allocateDirect(preprocessor.getInputBytes()).order(ByteOrder.nativeOrder());
+        preprocessor.process(pattern(srcWidth, srcHeight), out);
+        assertEquals(out.capacity(), out.position());
+        out.flip();
+        for (int i = 0; i < golden.length; i++) {
+            assertEquals("value " + i, golden[i], out.getFloat(), HALF_LEVEL);
+        }
+    }
+
+    private static void assertQuantizedGolden(String name, int srcWidth, int srcHeight, int width, int height)
+            throws IOException {
+        byte[] golden = readResource("preprocess_" + name + ".u8");
+        QuantizedInputPreprocessor preprocessor = new QuantizedInputPreprocessor(width, height);
+        assertEquals(golden.length, preprocessor.getInputBytes());
+        ByteBuffer out = ByteBuffer.allocate(preprocessor.getInputBytes());
+        preprocessor.process(pattern(srcWidth, srcHeight), out);
+        assertEquals(out.capacity(), out.position());
+        for (int i = 0; i < golden.length; i++) {
+            // Float and double interpolation may round a value sitting on .5 differently
+            int diff = Math.abs((golden[i] & 0xFF) - (out.get(i) & 0xFF));
+            assertTrue("value " + i + " off by " + diff, diff <= 1);
+        }
+    }
+
+    // Deterministic RGBA test card; the golden files were generated from the same formula.
+    static int pixel(int x, int y, int c) {
+        return (x * 37 + y * 59 + c * 83 + (x * y) % 17 * 7) & 0xFF;
+    }
+
+    private static RoiFrame pattern(int width, int height) {
+        RoiFrame frame = new RoiFrame();
+        frame.reset(width, height);
+        byte[] pixels = frame.getPixels();
+        for (int y = 0, p = 0; y < height; y++) {
+            for (int x = 0; x < width; x++, p += RoiFrame.BYTES_PER_PIXEL) {
+                for (int c = 0; c < 3; c++) pixels[p + c] = (byte) pixel(x, y, c);
+                pixels[p + 3] = (byte) 0xFF;
+            }
+        }
+        return frame;
+    }
+
+    private static float[] readFloats(String name) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(readResource("preprocess_" + name + ".f32")); // Big-endian
+        float[] values = new float[buffer.remaining() / 4];
+        for (int i = 0; i < values.length; i++) values[i] = buffer.getFloat();
+        return values;
+    }
+
+    static byte[] readResource(String name) throws IOException {
+        try (InputStream in = InputPreprocessorTest.class.getResourceAsStream("golden/" + name)) {
+            if (in == null) throw new IOException("Missing golden file " + name);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] chunk = new byte[4096];
+            for (int n; (n = in.read(chunk)) > 0; ) out.write(chunk, 0, n);
+            return out.toByteArray();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.slash.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/** Bucket layout, error bound and percentiles of the histogram, and the metrics file written from it. */
+public class LatencyHistogramTest {
+    @Test
+    public void smallValuesHaveTheirOwnBuckets() {
+        for (int v = 0; v < 8; v++) {
+            assertEquals(v, LatencyHistogram.bucketIndex(v));
+            assertEquals(v, LatencyHistogram.bucketLowerBound(v));
+            assertEquals(v, LatencyHistogram.bucketUpperBound(v));
+        }
+    }
+
+    @Test
+    public void powersOfTwoStartBuckets() {
+        for (int exponent = 3; exponent < 63; exponent++) {
+            long value = 1L << exponent;
+            int index = LatencyHistogram.bucketIndex(value);
+            assertEquals("2^" + exponent, value, LatencyHistogram.bucketLowerBound(index));
+            assertEquals("2^" + exponent, index - 1, LatencyHistogram.bucketIndex(value - 1));
+        }
+    }
+
+    @Test
+    public void bucketsTileTheWholeRange() {
+        assertEquals(0, LatencyHistogram.bucketLowerBound(0));
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            long lower = LatencyHistogram.bucketLowerBound(i);
+            long upper = LatencyHistogram.bucketUpperBound(i);
+            assertTrue("bucket " + i, lower <= upper);
+            assertEquals("bucket " + i, i, LatencyHistogram.bucketIndex(lower));
+            assertEquals("bucket " + i, i, LatencyHistogram.bucketIndex(upper));
+            if (i + 1 < LatencyHistogram.BUCKET_COUNT) {
+                assertEquals("bucket " + i, upper + 1, LatencyHistogram.bucketLowerBound(i + 1));
+            }
+        }
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.bucketUpperBound(LatencyHistogram.BUCKET_COUNT - 1));
+    }
+
+    @Test
+    public void reportedValueIsWithinOneEighth() {
+        Random random = new Random(3);
+        for (int i = 0; i < 100_000; i++) {
+            long value = (random.nextLong() >>> 1) >>> random.nextInt(63);
+            int index = LatencyHistogram.bucketIndex(value);
+            long lower = LatencyHistogram.bucketLowerBound(index);
+            long upper = LatencyHistogram.bucketUpperBound(index);
+            assertTrue(value + " in bucket " + index, lower <= value && value <= upper);
+            assertTrue(value + " reported as " + upper, upper - value <= value / 8);
+        }
+    }
+
+    @Test
+    public void percentilesPickTheBucketHoldingTheRank() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileNanos(0.5));
+        for (int v = 1; v <= 100; v++) histogram.record(v);
+        histogram.record(-5); // Counted as 0
+
+        assertEquals(101, histogram.getCount());
+        assertEquals(5050, histogram.getSumNanos());
+        assertEquals(100, histogram.getMaxNanos());
+        assertEquals(0, histogram.getPercentileNanos(0));
+        assertEquals(7, histogram.getPercentileNanos(0.07)); // 8th of 101 values
+        assertEquals(51, histogram.getPercentileNanos(0.5)); // 50 lies in [48, 51]
+        assertEquals(95, histogram.getPercentileNanos(0.9)); // 91 lies in [88, 95]
+        assertEquals(100, histogram.getPercentileNanos(0.99)); // [96, 103], capped at the max
+        assertEquals(100, histogram.getPercentileNanos(1));
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentileNanos(0.99));
+    }
+
+    @Test
+    public void metricsFileParsesBack() throws IOException {
+        PipelineMetrics metrics = new PipelineMetrics();
+        long[] inference = {3, 1_000, 1_100, 250_000, Long.MAX_VALUE / 2};
+        for (long v : inference) metrics.histogram(PipelineMetrics.Stage.INFERENCE).record(v);
+        metrics.histogram(PipelineMetrics.Stage.CROP).record(42);
+        metrics.add(PipelineMetrics.Counter.ROIS_INFERRED, 12);
+        metrics.increment(PipelineMetrics.Counter.FRAMES_DROPPED);
+        StringWriter out = new StringWriter();
+        metrics.writeTo(out, 1_700_000_000_000L);
+
+        String[] lines = out.toString().split("\n");
+        assertEquals("slash-metrics 1 1700000000000", lines[0]);
+        Map<String, String[]> histograms = new HashMap<>();
+        Map<String, Long> counters = new HashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            String[] fields = lines[i].split(" ");
+            if (fields[0].equals("H")) {
+                histograms.put(fields[1], fields);
+            } else {
+                assertEquals(lines[i], "C", fields[0]);
+                assertEquals(lines[i], 3, fields.length);
+                counters.put(fields[1], Long.parseLong(fields[2]));
+            }
+        }
+        // Only stages that recorded something
+        assertEquals(2, histograms.size());
+        assertEquals(PipelineMetrics.Counter.values().length, counters.size());
+        assertEquals(12, (long) counters.get("ROIS_INFERRED"));
+        assertEquals(1, (long) counters.get("FRAMES_DROPPED"));
+        assertEquals(0, (long) counters.get("MODEL_RUNS"));
+
+        String[] h = histograms.get("INFERENCE");
+        long sum = 0;
+        for (long v : inference) sum += v;
+        assertEquals(inference.length, Long.parseLong(h[2]));
+        assertEquals(sum, Long.parseLong(h[3]));
+        assertEquals(Long.MAX_VALUE / 2, Long.parseLong(h[4]));
+        Map<Integer, Long> buckets = new HashMap<>();
+        for (int i = 5; i < h.length; i++) {
+            String[] pair = h[i].split(":");
+            buckets.put(Integer.parseInt(pair[0]), Long.parseLong(pair[1]));
+        }
+        Map<Integer, Long> expected = new HashMap<>();
+        for (long v : inference) expected.merge(LatencyHistogram.bucketIndex(v), 1L, Long::sum);
+        assertEquals(expected, buckets);
+        assertEquals(inference.length, buckets.size()); // 1000 is in [960, 1023], 1100 in [1024, 1151]
+        assertEquals("CROP 1 42 42 " + LatencyHistogram.bucketIndex(42) + ":1",
+                String.join(" ", histograms.get("CROP")).substring(2));
+    }
+}
@@ -0,0 +1,159 @@
+package com.example.slash.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MacroCodecTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void roundTripsVersion2() throws IOException {
+        Macro macro = new Macro.Builder()
+                .addDelta(Macro.TAP, 540.25f, 1170.5f, 0)
+                .addDelta(Macro.DOWN, 10f, 2339.9375f, 16_000)
+                .addDelta(Macro.MOVE, 0f, 0f, 1)
+                .addDelta(Macro.UP, -3.5f, -7.0625f, Integer.MAX_VALUE)
+                .addDelta(Macro.TAP, 1080f, 2340f, 0)
+                .build();
+        byte[] encoded = MacroCodec.encode(macro);
+        assertEquals(MacroCodec.VERSION, encoded[4]);
+        assertSame(macro, MacroCodec.decode(ByteBuffer.wrap(encoded)));
+    }
+
+    @Test
+    public void roundsToSixteenthsOfAPixel() throws IOException {
+        Macro macro = new Macro.Builder().addDelta(100.03f, 200.97f, 5).build();
+        Macro decoded = MacroCodec.decode(ByteBuffer.wrap(MacroCodec.encode(macro)));
+        assertEquals(100f, decoded.getX(0), 0f);
+        assertEquals(201f, decoded.getY(0), 0f);
+    }
+
+    @Test
+    public void roundTripsEmptyMacro() throws IOException {
+        assertEquals(0, MacroCodec.decode(ByteBuffer.wrap(MacroCodec.encode(Macro.EMPTY))).size());
+    }
+
+    @Test
+    public void decodesVersion1AsTaps() throws IOException {
+        // Written before gestures: delta varint, then the coordinate deltas, no kind bits
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[]{'S', 'L', 'M', 'C', 1, 2});
+        writeVarint(out, 0);
+        writeVarint(out, MacroCodec.zigzag(100 * 16));
+        writeVarint(out, MacroCodec.zigzag(200 * 16));
+        writeVarint(out, 250_000);
+        writeVarint(out, MacroCodec.zigzag(-40 * 16 - 8));
+        writeVarint(out, MacroCodec.zigzag(0));
+        Macro macro = MacroCodec.decode(ByteBuffer.wrap(out.toByteArray()));
+        assertEquals(2, macro.size());
+        assertEquals(Macro.TAP, macro.getKind(0));
+        assertEquals(Macro.TAP, macro.getKind(1));
+        assertEquals(100f, macro.getX(0), 0f);
+        assertEquals(59.5f, macro.getX(1), 0f);
+        assertEquals(200f, macro.getY(1), 0f);
+        assertEquals(250_000, macro.getDeltaMicros(1));
+    }
+
+    @Test
+    public void roundTripsThroughAFile() throws IOException {
+        Macro macro = new Macro.Builder().addDelta(1, 2, 0).addDelta(3, 4, 1000).build();
+        File file = new File(folder.getRoot(), "sub/macro.slm");
+        MacroCodec.write(macro, file);
+        assertSame(macro, MacroCodec.read(file));
+        assertEquals(false, new File(file.getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void leavesBufferAfterLastAction() throws IOException {
+        byte[] encoded = MacroCodec.encode(new Macro.Builder().addDelta(1, 2, 3).build());
+        ByteBuffer in = ByteBuffer.allocate(encoded.length + 2);
+        in.put(encoded).put((byte) 7).put((byte) 8).flip();
+        MacroCodec.decode(in);
+        assertEquals(encoded.length, in.position());
+    }
+
+    @Test
+    public void rejectsCorruptData() {
+        byte[] valid = MacroCodec.encode(new Macro.Builder().addDelta(1, 2, 3).addDelta(4, 5, 6).build());
+        assertRejected(Arrays.copyOf(valid, valid.length - 1)); // Truncated
+        assertRejected(new byte[]{'S', 'L', 'M', 'X', 2, 0});   // Bad magic
+        assertRejected(new byte[]{'S', 'L', 'M', 'C', 9, 0});   // Unknown version
+        // Negative count
+        assertRejected(new byte[]{'S', 'L', 'M', 'C', 2, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x0F});
+        // Count far beyond the data, e.g. a bad synced blob
+        assertRejected(new byte[]{'S', 'L', 'M', 'C', 2, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x07, 0, 0, 0});
+        assertRejected(new byte[]{'S', 'L', 'M', 'C', 2, 4, 0, 0, 0, 0, 0, 0});
+    }
+
+    @Test
+    public void rejectsNegativeDelay() throws IOException {
+        try {
+            new Macro.Builder().addDelta(1, 2, 0).addDelta(Macro.UP, 3, 4, -1);
+            fail("Added a negative delay");
+        } catch (IllegalArgumentException expected) {
+            // Would encode as a 10-byte varint
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(new byte[]{'S', 'L', 'M', 'C', 1, 1});
+        writeVarint(out, -1);
+        writeVarint(out, 0);
+        writeVarint(out, 0);
+        assertRejected(out.toByteArray());
+        byte[] timing = new byte[10];
+        int length = MacroCodec.writeVarint(timing, 0, (long) Integer.MIN_VALUE << 2 & 0xFFFFFFFFFL);
+        out.reset();
+        out.write(new byte[]{'S', 'L', 'M', 'C', 2, 1});
+        out.write(timing, 0, length);
+        writeVarint(out, 0);
+        writeVarint(out, 0);
+        assertRejected(out.toByteArray());
+    }
+
+    @Test
+    public void encodesLargestDelaysAndCoordinates() throws IOException {
+        Macro.Builder builder = new Macro.Builder();
+        for (int i = 0; i < 100; i++) {
+            float far = i % 2 == 0 ? 1e8f : -1e8f;
+            builder.addDelta(Macro.UP, far, -far, Integer.MAX_VALUE);
+        }
+        Macro macro = builder.build();
+        assertSame(macro, MacroCodec.decode(ByteBuffer.wrap(MacroCodec.encode(macro))));
+    }
+
+    private static void assertRejected(byte[] data) {
+        try {
+            MacroCodec.decode(ByteBuffer.wrap(data));
+            fail("Decoded " + Arrays.toString(data));
+        } catch (IOException expected) {
+            // Corrupt input must surface as IOException, never as a runtime error or OOM
+        }
+    }
+
+    private static void assertSame(Macro expected, Macro actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("kind " + i, expected.getKind(i), actual.getKind(i));
+            assertEquals("x " + i, expected.getX(i), actual.getX(i), 1 / 32f);
+            assertEquals("y " + i, expected.getY(i), actual.getY(i), 1 / 32f);
+            assertEquals("delta " + i, expected.getDeltaMicros(i), actual.getDeltaMicros(i));
+        }
+        assertArrayEquals(MacroCodec.encode(expected), MacroCodec.encode(actual));
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        byte[] buffer = new byte[5];
+        out.write(buffer, 0, MacroCodec.writeVarint(buffer, 0, value));
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.slash.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** {@link MacroSync} and {@link MacroRepository} against an in-memory backend. */
+public class MacroSyncTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final FakeBackend backend = new FakeBackend();
+    private ScheduledExecutorService executor;
+    private MacroRepository repository;
+
+    @Before
+    public void setUp() throws IOException {
+        executor = Executors.newSingleThreadScheduledExecutor();
+        repository = new MacroRepository(folder.getRoot());
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void flushPushesDirtyMacrosInBatches() throws IOException {
+        for (int i = 0; i < 5; i++) repository.save("m" + i, macro(i));
+        MacroSync sync = new MacroSync(repository, backend, executor, 60_000);
+        assertEquals(5, sync.getPendingCount());
+        sync.flush();
+        assertEquals(3, sync.getBatchCount()); // Batches of two
+        assertEquals(5, sync.getPushedCount());
+        assertEquals(0, sync.getPendingCount());
+        for (int i = 0; i < 5; i++) {
+            assertFalse(repository.getEntry("m" + i).isDirty());
+            assertEquals(Long.valueOf(1), backend.versions.get("m" + i));
+        }
+        sync.flush();
+        assertEquals(3, sync.getBatchCount());
+    }
+
+    @Test
+    public void repeatedSavesCollapseIntoOneWrite() throws IOException {
+        MacroSync sync = new MacroSync(repository, backend, executor, 60_000);
+        repository.setListener(sync);
+        for (int i = 0; i < 4; i++) repository.save("edited", macro(i));
+        assertEquals(1, sync.getPendingCount());
+        sync.flush();
+        assertEquals(1, sync.getPushedCount());
+        assertEquals(Long.valueOf(4), backend.versions.get("edited"));
+    }
+
+    @Test
+    public void failedFlushKeepsMacrosPending() throws IOException {
+        repository.save("a", macro(1));
+        MacroSync sync = new MacroSync(repository, backend, executor, 60_000);
+        backend.failPush = true;
+        try {
+            sync.flush();
+            fail();
+        } catch (IOException expected) {
+        }
+        assertEquals(1, sync.getPendingCount());
+        assertTrue(repository.getEntry("a").isDirty());
+        backend.failPush = false;
+        sync.flush();
+        assertFalse(repository.getEntry("a").isDirty());
+    }
+
+    @Test
+    public void pullCopiesOnlyNewerRemoteMacros() throws IOException {
+        repository.save("current", macro(1));
+        repository.markSynced("current", 1);
+        repository.save("edited", macro(2));
+        backend.put("current", 1, macro(10));
+        backend.put("edited", 5, macro(20));
+        backend.put("remoteOnly", 3, macro(30));
+        new MacroSync(repository, backend, executor, 60_000).pull();
+
+        assertEquals(1, repository.load("current").size());
+        assertEquals(2, repository.load("edited").size()); // Unsynced local edit wins
+        assertEquals(30, repository.load("remoteOnly").size());
+        assertEquals(3, repository.getEntry("remoteOnly").version);
+        assertFalse(repository.getEntry("remoteOnly").isDirty());
+        assertEquals(1, backend.fetches);
+    }
+
+    @Test
+    public void editDuringDownloadIsNotOverwritten() throws IOException {
+        repository.save("race", macro(1));
+        repository.markSynced("race", 1);
+        backend.put("race", 2, macro(50));
+        // The user saves while the remote copy is on its way
+        backend.beforeFetch = () -> repository.save("race", macro(7));
+        new MacroSync(repository, backend, executor, 60_000).pull();
+
+        MacroRepository.Entry entry = repository.getEntry("race");
+        assertEquals(2, entry.version);
+        assertTrue(entry.isDirty());
+        assertEquals(7, repository.load("race").size());
+    }
+
+    @Test
+    public void saveRemoteKeepsNewerOrDirtyLocalCopies() throws IOException {
+        repository.save("dirty", macro(1));
+        assertNull(repository.saveRemote("dirty", macro(9), 9));
+        repository.save("synced", macro(1));
+        repository.save("synced", macro(2));
+        repository.markSynced("synced", 2);
+        assertNull(repository.saveRemote("synced", macro(9), 2));
+        assertEquals(3, repository.saveRemote("synced", macro(9), 3).version);
+        assertEquals(9, repository.load("synced").size());
+    }
+
+    @Test
+    public void syncStateSurvivesReopening() throws IOException {
+        repository.save("a", macro(3));
+        repository.save("b", macro(4));
+        repository.markSynced("b", 1);
+        MacroRepository reopened = new MacroRepository(folder.getRoot());
+        MacroSync sync = new MacroSync(reopened, backend, executor, 60_000);
+        assertEquals(1, sync.getPendingCount());
+        assertEquals(3, reopened.load("a").size());
+    }
+
+    private static Macro macro(int actions) {
+        Macro.Builder builder = new Macro.Builder();
+        for (int i = 0; i < actions; i++) builder.addDelta(i, 2 * i, 1000);
+        return builder.build();
+    }
+
+    private static final class FakeBackend implements MacroSyncBackend {
+        final Map<String, Long> versions = new HashMap<>();
+        final Map<String, byte[]> data = new HashMap<>();
+        final List<List<Record>> pushes = new ArrayList<>();
+        boolean failPush;
+        int fetches;
+        IoAction beforeFetch;
+
+        void put(String name, long version, Macro macro) {
+            versions.put(name, version);
+            data.put(name, MacroCodec.encode(macro));
+        }
+
+        @Override
+        public int getMaxBatchSize() {
+            return 2;
+        }
+
+        @Override
+        public void push(List<Record> records) throws IOException {
+            if (failPush) throw new IOException("Offline");
+            pushes.add(new ArrayList<>(records));
+            for (Record record : records) {
+                versions.put(record.name, record.version);
+                data.put(record.name, record.data);
+            }
+        }
+
+        @Override
+        public Map<String, Long> fetchVersions() {
+            return new HashMap<>(versions);
+        }
+
+        @Override
+        public Record fetch(String name) throws IOException {
+            fetches++;
+            if (beforeFetch != null) beforeFetch.run();
+            return versions.containsKey(name) ? new Record(name, versions.get(name), data.get(name)) : null;
+        }
+    }
+
+    private interface IoAction {
+        void run() throws IOException;
+    }
+}
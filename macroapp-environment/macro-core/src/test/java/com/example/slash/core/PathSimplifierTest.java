@@ -0,0 +1,87 @@
+package com.example.slash.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class PathSimplifierTest {
+    @Test
+    public void straightLineKeepsEndpoints() {
+        float[] x = new float[50];
+        float[] y = new float[50];
+        for (int i = 0; i < 50; i++) {
+            x[i] = i * 3;
+            y[i] = i * 2;
+        }
+        assertKept(new PathSimplifier(0.5f), x, y, 0, 49);
+    }
+
+    @Test
+    public void cornerIsKept() {
+        float[] x = {0, 10, 20, 30, 30, 30, 30};
+        float[] y = {0, 0, 0, 0, 10, 20, 30};
+        assertKept(new PathSimplifier(1f), x, y, 0, 3, 6);
+    }
+
+    @Test
+    public void dropsOnlyPointsWithinTolerance() {
+        float[] x = {0, 5, 10, 15, 20};
+        float[] y = {0, 0.9f, 0, 1.1f, 0};
+        assertKept(new PathSimplifier(1f), x, y, 0, 3, 4);
+        assertKept(new PathSimplifier(2f), x, y, 0, 4);
+        assertKept(new PathSimplifier(0f), x, y, 0, 1, 2, 3, 4);
+    }
+
+    @Test
+    public void closedLoopKeepsFarthestPoint() {
+        // Start and end coincide, so distances are measured to that point
+        float[] x = {0, 10, 20, 10, 0};
+        float[] y = {0, 5, 0, -5, 0};
+        assertKept(new PathSimplifier(1f), x, y, 0, 1, 2, 3, 4);
+        assertKept(new PathSimplifier(15f), x, y, 0, 2, 4);
+    }
+
+    @Test
+    public void shortPathsAreKeptWhole() {
+        assertKept(new PathSimplifier(100f), new float[]{1, 2}, new float[]{1, 2}, 0, 1);
+        assertKept(new PathSimplifier(100f), new float[]{1}, new float[]{1}, 0);
+    }
+
+    @Test
+    public void offsetSelectsPoints() {
+        float[] x = {99, 99, 0, 10, 20, 20};
+        float[] y = {99, 99, 0, 0, 0, 10};
+        int[] kept = new int[4];
+        assertEquals(3, new PathSimplifier(1f).simplify(x, y, 2, 4, kept));
+        assertArrayEquals(new int[]{0, 2, 3}, Arrays.copyOf(kept, 3));
+    }
+
+    @Test
+    public void scratchGrowsForLongPaths() {
+        PathSimplifier simplifier = new PathSimplifier(0.1f);
+        int n = 10_000;
+        float[] x = new float[n];
+        float[] y = new float[n];
+        for (int i = 0; i < n; i++) {
+            x[i] = i;
+            y[i] = i % 2 == 0 ? 0 : 5; // Every point is a corner
+        }
+        int[] kept = new int[n];
+        assertEquals(n, simplifier.simplify(x, y, 0, n, kept));
+        assertEquals(n - 1, kept[n - 1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsNegativeTolerance() {
+        new PathSimplifier(-1f);
+    }
+
+    private static void assertKept(PathSimplifier simplifier, float[] x, float[] y, int... expected) {
+        int[] kept = new int[x.length];
+        int count = simplifier.simplify(x, y, 0, x.length, kept);
+        assertArrayEquals(expected, Arrays.copyOf(kept, count));
+    }
+}
@@ -0,0 +1,268 @@
+package com.example.slash.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/** Replays of a macro streamed page by page, against a fake store with a fixed delay per fetch. */
+public class ProgramStreamTest {
+    private static final int ACTIONS = 50_000;
+    private static final long FETCH_DELAY_MILLIS = 20;
+
+    private final ExecutorService loaderExecutor = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        loaderExecutor.shutdownNow();
+    }
+
+    @Test
+    public void firstActionDoesNotWaitForWholeMacro() throws InterruptedException {
+        Macro macro = macro(ACTIONS);
+        FakePageSource source = new FakePageSource(macro);
+        assertEquals(ACTIONS / MacroPages.DEFAULT_PAGE_ACTIONS, source.pages.size());
+
+        long[] firstActionNanos = new long[1];
+        int[] dispatched = new int[1];
+        CountDownLatch ended = new CountDownLatch(1);
+        ReplayEngine.State[] end = new ReplayEngine.State[1];
+        ReplayEngine engine = new ReplayEngine((kind, x, y) -> {
+            if (dispatched[0]++ == 0) firstActionNanos[0] = System.nanoTime();
+        }, () -> GameState.IDLE, state -> {
+            end[0] = state;
+            ended.countDown();
+        }, NanoClock.SYSTEM);
+
+        long start = System.nanoTime();
+        long[] completeNanos = new long[1];
+        ProgramStream stream = new MacroCompiler().compileStream();
+        new MacroStreamLoader(source, loaderExecutor).load("big", new MacroStreamLoader.Listener() {
+            @Override
+            public void onPage(int index, int pageCount, Macro page) {
+                stream.append(page);
+                if (index == 0) engine.start(stream);
+            }
+
+            @Override
+            public void onComplete(Macro whole, long version) {
+                completeNanos[0] = System.nanoTime();
+                stream.finish();
+            }
+
+            @Override
+            public void onFailed(IOException e) {
+                stream.fail(e.getMessage());
+            }
+        });
+        assertTrue(ended.await(30, TimeUnit.SECONDS));
+
+        long firstAction = TimeUnit.NANOSECONDS.toMillis(firstActionNanos[0] - start);
+        long wholeLoad = TimeUnit.NANOSECONDS.toMillis(completeNanos[0] - start);
+        assertEquals(ReplayEngine.State.FINISHED, end[0]);
+        assertEquals(ACTIONS, dispatched[0]);
+        // Manifest plus one page, with room for a slow machine; the whole load takes 51 fetches
+        assertTrue("first action after " + firstAction + " ms", firstAction < 10 * FETCH_DELAY_MILLIS);
+        assertTrue("whole macro after " + wholeLoad + " ms, first action after " + firstAction + " ms",
+                wholeLoad >= (source.pages.size() + 1) * FETCH_DELAY_MILLIS);
+    }
+
+    @Test
+    public void streamedReplayMatchesInMemoryProgram() throws InterruptedException {
+        Macro macro = macro(5_000);
+        MacroCompiler compiler = new MacroCompiler().repeat(2);
+        List<String> expected = replay(compiler.compile(macro), null);
+
+        ProgramStream stream = compiler.compileStream();
+        for (Macro page : MacroPages.split(macro, 700)) stream.append(page);
+        stream.finish();
+        assertEquals(expected, replay(null, stream));
+        assertEquals(10_000, expected.size());
+    }
+
+    @Test
+    public void publishedInstructionsNeverChange() {
+        ProgramStream stream = new MacroCompiler().stopWhen(1 << GameState.STAMINA_EMPTY.ordinal()).compileStream();
+        int[] code = stream.code();
+        int morePc = nextMore(code, 0);
+        assertNull(stream.codeAfter(morePc));
+        int[] before = Arrays.copyOf(code, morePc + 1);
+
+        List<Macro> pages = MacroPages.split(macro(3_000), 100);
+        for (Macro page : pages) {
+            stream.append(page);
+            int[] longer = stream.codeAfter(morePc);
+            assertNotNull(longer);
+            assertArrayEquals(before, Arrays.copyOf(longer, before.length));
+            morePc = nextMore(longer, morePc + 1);
+            assertNull(stream.codeAfter(morePc));
+            before = Arrays.copyOf(longer, morePc + 1);
+        }
+        assertEquals(pages.size(), stream.getPageCount());
+        stream.finish();
+        assertEquals(MacroProgram.RET, stream.codeAfter(morePc)[morePc + 1]);
+    }
+
+    @Test
+    public void failedStreamEndsReplay() throws InterruptedException {
+        ProgramStream stream = new MacroCompiler().compileStream();
+        stream.append(macro(10));
+        CountDownLatch ended = new CountDownLatch(1);
+        ReplayEngine.State[] end = new ReplayEngine.State[1];
+        ReplayEngine engine = new ReplayEngine((kind, x, y) -> { }, () -> GameState.IDLE, state -> {
+            end[0] = state;
+            ended.countDown();
+        }, NanoClock.SYSTEM);
+        engine.start(stream);
+        Thread.sleep(20); // Let it reach the MORE and wait there
+        stream.fail("offline");
+        assertTrue(ended.await(5, TimeUnit.SECONDS));
+        assertEquals(ReplayEngine.State.FAILED, end[0]);
+        assertEquals(10, engine.getCompletedCount());
+    }
+
+    private static List<String> replay(MacroProgram program, ProgramStream stream) throws InterruptedException {
+        List<String> actions = new ArrayList<>();
+        CountDownLatch ended = new CountDownLatch(1);
+        ReplayEngine engine = new ReplayEngine((kind, x, y) -> actions.add(Macro.kindName(kind) + " " + x + "," + y),
+                () -> GameState.IDLE, state -> ended.countDown(), NanoClock.SYSTEM);
+        if (stream != null) engine.start(stream);
+        else engine.start(program);
+        assertTrue(ended.await(30, TimeUnit.SECONDS));
+        return actions;
+    }
+
+    // Each page ends in a MORE, so the next one after the previous MORE ends what is published
+    private static int nextMore(int[] code, int from) {
+        int pc = from;
+        while (code[pc] != MacroProgram.MORE) pc += 1 + MacroProgram.operandCount(code[pc]);
+        return pc;
+    }
+
+    // Taps mixed with short swipes, a few microseconds apart so replay outruns loading
+    private static Macro macro(int actions) {
+        Macro.Builder builder = new Macro.Builder();
+        for (int i = 0; i < actions; ) {
+            if (i % 10 == 0 && i + 3 <= actions) {
+                builder.addDelta(Macro.DOWN, i % 1000, 100, 2);
+                builder.addDelta(Macro.MOVE, i % 1000, 300, 2);
+                builder.addDelta(Macro.UP, i % 1000 + 5, 600, 2);
+                i += 3;
+            } else {
+                builder.addDelta(Macro.TAP, i % 1080, i % 2340, 2);
+                i++;
+            }
+        }
+        return builder.build();
+    }
+
+    @Test
+    public void cancelDuringFetchStopsListener() throws Exception {
+        ProgramStream stream = new MacroCompiler().compileStream();
+        CountDownLatch fetching = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        MacroPageSource source = new FakePageSource(macro(3 * MacroPages.DEFAULT_PAGE_ACTIONS)) {
+            @Override
+            public byte[] fetchPage(Manifest manifest, int index) throws IOException {
+                if (index == 1) {
+                    fetching.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+                return super.fetchPage(manifest, index);
+            }
+        };
+        List<String> calls = new ArrayList<>();
+        RuntimeException[] thrown = new RuntimeException[1];
+        CancellationToken token = new MacroStreamLoader(source, loaderExecutor).load("m", new MacroStreamLoader.Listener() {
+            @Override
+            public void onPage(int index, int pageCount, Macro page) {
+                calls.add("page " + index);
+                try {
+                    stream.append(page);
+                } catch (RuntimeException e) {
+                    thrown[0] = e;
+                }
+            }
+
+            @Override
+            public void onComplete(Macro whole, long version) {
+                calls.add("complete");
+            }
+
+            @Override
+            public void onFailed(IOException e) {
+                calls.add("failed");
+            }
+        });
+        assertTrue(fetching.await(5, TimeUnit.SECONDS));
+        token.cancel();
+        stream.fail("Cancelled");
+        release.countDown();
+        loaderExecutor.shutdown();
+        assertTrue(loaderExecutor.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(Arrays.asList("page 0"), calls);
+        assertNull(thrown[0]);
+        assertEquals(1, stream.getPageCount());
+        assertEquals("Cancelled", stream.getFailure());
+    }
+
+    @Test
+    public void appendAfterFailIsIgnored() {
+        ProgramStream stream = new MacroCompiler().compileStream();
+        stream.append(macro(10));
+        int[] code = stream.code();
+        int lastMore = nextMore(code, nextMore(code, 0) + 1);
+        stream.fail("Cancelled");
+        stream.append(macro(10));
+        assertEquals(1, stream.getPageCount());
+        assertNull(stream.codeAfter(lastMore));
+    }
+
+    private static class FakePageSource implements MacroPageSource {
+        final List<byte[]> pages = new ArrayList<>();
+
+        FakePageSource(Macro macro) {
+            for (Macro page : MacroPages.split(macro, MacroPages.DEFAULT_PAGE_ACTIONS)) {
+                pages.add(MacroCodec.encode(page));
+            }
+        }
+
+        @Override
+        public Manifest fetchManifest(String name) throws IOException {
+            delay();
+            return new Manifest(name, 1, pages.size(), ACTIONS, null);
+        }
+
+        @Override
+        public byte[] fetchPage(Manifest manifest, int index) throws IOException {
+            delay();
+            return pages.get(index);
+        }
+
+        private static void delay() throws IOException {
+            try {
+                Thread.sleep(FETCH_DELAY_MILLIS);
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
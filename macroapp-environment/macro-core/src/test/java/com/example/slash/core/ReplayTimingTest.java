@@ -0,0 +1,48 @@
+package com.example.slash.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/** Replays 10,000 paced actions in real time and checks the lateness the engine reports. */
+public class ReplayTimingTest {
+    private static final int ACTIONS = 10_000;
+    private static final int INTERVAL_MICROS = 100;
+    // Loose enough for a busy build machine; a phone is judged by ReplayTimingHarness
+    private static final long MAX_P50_NANOS = TimeUnit.MILLISECONDS.toNanos(2);
+    private static final long MAX_P99_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    @Test
+    public void pacedReplayStaysOnSchedule() throws InterruptedException {
+        Macro.Builder builder = new Macro.Builder();
+        for (int i = 0; i < ACTIONS; i++) builder.addDelta(i % 1080, i % 2340, i == 0 ? 0 : INTERVAL_MICROS);
+        CountDownLatch ended = new CountDownLatch(1);
+        ReplayEngine.State[] end = new ReplayEngine.State[1];
+        ReplayEngine engine = new ReplayEngine((kind, x, y) -> { }, () -> GameState.IDLE, state -> {
+            end[0] = state;
+            ended.countDown();
+        }, NanoClock.SYSTEM);
+
+        long start = System.nanoTime();
+        engine.start(builder.build());
+        assertTrue(ended.await(30, TimeUnit.SECONDS));
+        long elapsed = System.nanoTime() - start;
+
+        long p50 = engine.getLatenessPercentileNanos(0.5);
+        long p99 = engine.getLatenessPercentileNanos(0.99);
+        long max = engine.getMaxLatenessNanos();
+        String lateness = "lateness p50=" + p50 / 1000 + "us p99=" + p99 / 1000 + "us max=" + max / 1000 + "us";
+        assertEquals(ReplayEngine.State.FINISHED, end[0]);
+        assertEquals(ACTIONS, engine.getCompletedCount());
+        assertTrue(lateness, p50 <= MAX_P50_NANOS);
+        assertTrue(lateness, p99 <= MAX_P99_NANOS);
+        assertTrue(lateness, p50 <= p99 && p99 <= max);
+        // Absolute deadlines: lateness does not pile up over the run
+        long planned = (ACTIONS - 1) * INTERVAL_MICROS * 1000L;
+        assertTrue("overran by " + (elapsed - planned) / 1000 + "us, " + lateness, elapsed - planned <= MAX_P99_NANOS);
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.slash.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/** Region copies out of strided image planes, checked against a pixel-by-pixel copy. */
+public class RoiExtractorTest {
+    private static final int WIDTH = 37;
+    private static final int HEIGHT = 23;
+
+    @Test
+    public void packedPixelsWithRowPadding() {
+        checkAgainstNaive(WIDTH * 4 + 12, 4, 0, 5, 3, 20, 11);
+    }
+
+    @Test
+    public void widePixelStride() {
+        checkAgainstNaive(WIDTH * 8 + 4, 8, 0, 5, 3, 20, 11);
+        checkAgainstNaive(WIDTH * 6, 6, 0, 1, 2, 9, 9);
+    }
+
+    @Test
+    public void clipsAtRightAndBottomEdges() {
+        // The plane's last row has no padding after its last pixel, so it must not be over-read
+        checkAgainstNaive(WIDTH * 4 + 12, 4, 0, WIDTH - 7, HEIGHT - 4, 20, 20);
+        checkAgainstNaive(WIDTH * 8 + 4, 8, 0, WIDTH - 7, HEIGHT - 4, 20, 20);
+    }
+
+    @Test
+    public void clipsAtLeftAndTopEdges() {
+        checkAgainstNaive(WIDTH * 4 + 12, 4, 0, -3, -2, 10, 8);
+        checkAgainstNaive(WIDTH * 8, 8, 0, -3, -2, 10, 8);
+    }
+
+    @Test
+    public void wholeImage() {
+        checkAgainstNaive(WIDTH * 4, 4, 0, 0, 0, WIDTH, HEIGHT);
+    }
+
+    @Test
+    public void nonZeroBufferPosition() {
+        checkAgainstNaive(WIDTH * 4 + 12, 4, 64, 5, 3, 20, 11);
+        checkAgainstNaive(WIDTH * 8 + 4, 8, 64, WIDTH - 7, HEIGHT - 4, 20, 20);
+    }
+
+    @Test
+    public void emptyRegionLeavesFrameUntouched() {
+        ByteBuffer src = plane(WIDTH * 4, 4, 0);
+        RoiFrame dst = new RoiFrame();
+        assertTrue(RoiExtractor.extract(src, WIDTH, HEIGHT, WIDTH * 4, 4, 0, 0, 2, 2, dst));
+        byte[] before = Arrays.copyOf(dst.getPixels(), dst.getByteCount());
+
+        assertFalse(RoiExtractor.extract(src, WIDTH, HEIGHT, WIDTH * 4, 4, WIDTH, 0, 5, 5, dst));
+        assertFalse(RoiExtractor.extract(src, WIDTH, HEIGHT, WIDTH * 4, 4, -5, 3, 5, 5, dst));
+        assertFalse(RoiExtractor.extract(src, WIDTH, HEIGHT, WIDTH * 4, 4, 3, 3, 0, 5, dst));
+        assertEquals(2, dst.getWidth());
+        assertArrayEquals(before, Arrays.copyOf(dst.getPixels(), dst.getByteCount()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsPixelStrideBelowFourBytes() {
+        RoiExtractor.extract(plane(WIDTH * 2, 2, 0), WIDTH, HEIGHT, WIDTH * 2, 2, 0, 0, 4, 4, new RoiFrame());
+    }
+
+    @Test
+    public void packedArrayMatchesBuffer() {
+        ByteBuffer src = plane(WIDTH * 4, 4, 0);
+        byte[] packed = new byte[src.remaining()];
+        src.duplicate().get(packed);
+        RoiFrame fromBuffer = new RoiFrame();
+        RoiFrame fromArray = new RoiFrame();
+        assertTrue(RoiExtractor.extract(src, WIDTH, HEIGHT, WIDTH * 4, 4, WIDTH - 7, 4, 20, 8, fromBuffer));
+        assertTrue(RoiExtractor.extract(packed, WIDTH, HEIGHT, WIDTH - 7, 4, 20, 8, fromArray));
+        assertEquals(7, fromArray.getWidth());
+        assertArrayEquals(Arrays.copyOf(fromBuffer.getPixels(), fromBuffer.getByteCount()),
+                Arrays.copyOf(fromArray.getPixels(), fromArray.getByteCount()));
+    }
+
+    private static void checkAgainstNaive(int rowStride, int pixelStride, int offset,
+                                          int x, int y, int width, int height) {
+        ByteBuffer src = plane(rowStride, pixelStride, offset);
+        RoiFrame dst = new RoiFrame();
+        assertTrue(RoiExtractor.extract(src, WIDTH, HEIGHT, rowStride, pixelStride, x, y, width, height, dst));
+        assertEquals(offset, src.position());
+
+        int left = Math.max(x, 0);
+        int top = Math.max(y, 0);
+        int roiWidth = Math.min(x + width, WIDTH) - left;
+        int roiHeight = Math.min(y + height, HEIGHT) - top;
+        assertEquals(roiWidth, dst.getWidth());
+        assertEquals(roiHeight, dst.getHeight());
+        byte[] expected = new byte[roiWidth * roiHeight * RoiFrame.BYTES_PER_PIXEL];
+        int o = 0;
+        for (int row = top; row < top + roiHeight; row++) {
+            for (int col = left; col < left + roiWidth; col++) {
+                for (int c = 0; c < RoiFrame.BYTES_PER_PIXEL; c++) {
+                    expected[o++] = src.get(offset + row * rowStride + col * pixelStride + c);
+                }
+            }
+        }
+        assertArrayEquals("stride " + rowStride + "/" + pixelStride + " at " + x + "," + y,
+                expected, Arrays.copyOf(dst.getPixels(), dst.getByteCount()));
+    }
+
+    // Random pixels behind `offset` bytes of other data; padding between pixels and rows is
+    // random too, and the buffer ends right after the last pixel as an ImageReader plane does
+    private static ByteBuffer plane(int rowStride, int pixelStride, int offset) {
+        int size = offset + (HEIGHT - 1) * rowStride + (WIDTH - 1) * pixelStride + RoiFrame.BYTES_PER_PIXEL;
+        byte[] bytes = new byte[size];
+        new Random(rowStride * 31 + pixelStride).nextBytes(bytes);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.position(offset);
+        return buffer;
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.slash.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/** Fingerprints of synthetic stamina bars, and the cache decisions they lead to. */
+public class RoiFingerprintTest {
+    private static final int WIDTH = 180; // 20 pixels per grid column
+    private static final int HEIGHT = 16;
+    private static final int MAX_DISTANCE = 1;
+    private static final int MAX_LUMA_DELTA = 16;
+
+    private final RoiFingerprint fingerprint = new RoiFingerprint();
+
+    @Test
+    public void sameBarIsUnchanged() {
+        InferenceCache cache = new InferenceCache(4, 3, MAX_DISTANCE, MAX_LUMA_DELTA);
+        classify(cache, bar(125));
+        assertEquals(InferenceCache.UNCHANGED, lookup(cache, bar(125)));
+    }
+
+    @Test
+    public void drainWithinOneCellIsNotUnchanged() {
+        long full = fingerprint.compute(bar(125));
+        int fullLuma = fingerprint.getMeanLuma();
+        long drained = fingerprint.compute(bar(122));
+        int drainedLuma = fingerprint.getMeanLuma();
+        // Three columns are less than a grid cell, so the difference hash alone cannot tell
+        assertEquals(full, drained);
+        assertTrue(fullLuma - drainedLuma > MAX_LUMA_DELTA);
+
+        InferenceCache cache = new InferenceCache(4, 3, MAX_DISTANCE, MAX_LUMA_DELTA);
+        classify(cache, bar(125));
+        assertEquals(InferenceCache.MISS, lookup(cache, bar(122)));
+        assertEquals(InferenceCache.MISS, lookup(cache, bar(124)));
+    }
+
+    @Test
+    public void drainAcrossCellsChangesHash() {
+        long full = fingerprint.compute(bar(WIDTH));
+        assertNotEquals(full, fingerprint.compute(bar(WIDTH / 2)));
+        assertTrue(RoiFingerprint.distance(full, fingerprint.compute(bar(WIDTH / 2))) > MAX_DISTANCE);
+    }
+
+    @Test
+    public void earlierFillIsCached() {
+        InferenceCache cache = new InferenceCache(4, 3, MAX_DISTANCE, MAX_LUMA_DELTA);
+        float[] scores = classify(cache, bar(125));
+        classify(cache, bar(60));
+        float[] out = new float[3];
+        assertEquals(InferenceCache.CACHED, cache.lookup(fingerprint.compute(bar(125)), fingerprint.getMeanLuma(), out));
+        assertEquals(scores[0], out[0], 0f);
+    }
+
+    @Test
+    public void meanLumaOfUniformRegion() {
+        RoiFrame frame = new RoiFrame();
+        frame.reset(10, 10);
+        byte[] pixels = frame.getPixels();
+        for (int p = 0; p < frame.getByteCount(); p += RoiFrame.BYTES_PER_PIXEL) {
+            pixels[p] = (byte) 100;
+            pixels[p + 1] = (byte) 100;
+            pixels[p + 2] = (byte) 100;
+        }
+        fingerprint.compute(frame);
+        assertEquals(100 << 8, fingerprint.getMeanLuma());
+    }
+
+    // Stores scores made up from the fill, as a classifier would after a miss
+    private float[] classify(InferenceCache cache, RoiFrame frame) {
+        long hash = fingerprint.compute(frame);
+        float[] scores = {fingerprint.getMeanLuma(), 0f, 0f};
+        cache.store(hash, fingerprint.getMeanLuma(), scores);
+        return scores;
+    }
+
+    private int lookup(InferenceCache cache, RoiFrame frame) {
+        return cache.lookup(fingerprint.compute(frame), fingerprint.getMeanLuma(), new float[3]);
+    }
+
+    // Green fill from the left up to `fill` columns, dark trough after it, a border row on each side
+    private static RoiFrame bar(int fill) {
+        RoiFrame frame = new RoiFrame();
+        frame.reset(WIDTH, HEIGHT);
+        byte[] pixels = frame.getPixels();
+        int p = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            boolean border = y == 0 || y == HEIGHT - 1;
+            for (int x = 0; x < WIDTH; x++, p += RoiFrame.BYTES_PER_PIXEL) {
+                boolean filled = !border && x < fill;
+                pixels[p] = (byte) (border ? 200 : filled ? 40 : 30);
+                pixels[p + 1] = (byte) (border ? 200 : filled ? 210 : 30);
+                pixels[p + 2] = (byte) (border ? 200 : filled ? 60 : 30);
+                pixels[p + 3] = (byte) 255;
+            }
+        }
+        return frame;
+    }
+}
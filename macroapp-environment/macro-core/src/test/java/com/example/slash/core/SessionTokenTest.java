@@ -0,0 +1,45 @@
+package com.example.slash.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class SessionTokenTest {
+    private static final long EXPIRY = 1896091200000L; // 2030-01-31T12:00:00Z
+
+    @Test
+    public void parsesTrailingZAsUtc() {
+        assertEquals(EXPIRY, SessionToken.parse("abc", "2030-01-31T12:00:00.000Z").expiresAtMillis);
+        assertEquals(EXPIRY, SessionToken.parse("abc", "2030-01-31T12:00:00Z").expiresAtMillis);
+        assertEquals(EXPIRY + 250, SessionToken.parse("abc", "2030-01-31T12:00:00.250Z").expiresAtMillis);
+        assertEquals("abc", SessionToken.parse("abc", "2030-01-31T12:00:00Z").token);
+    }
+
+    @Test
+    public void validUntilExpiry() {
+        SessionToken session = new SessionToken("abc", EXPIRY);
+        assertTrue(session.isValidAt(EXPIRY - 1));
+        assertFalse(session.isValidAt(EXPIRY));
+        assertFalse(session.isValidAt(EXPIRY + 1));
+    }
+
+    @Test
+    public void rejectsBadInput() {
+        assertRejected("abc", "2030-01-31 12:00:00");
+        assertRejected("abc", "31/01/2030");
+        assertRejected("abc", "");
+        assertRejected("", "2030-01-31T12:00:00Z");
+        assertRejected(null, "2030-01-31T12:00:00Z");
+    }
+
+    private static void assertRejected(String token, String expiration) {
+        try {
+            SessionToken.parse(token, expiration);
+            fail("Accepted " + token + " / " + expiration);
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
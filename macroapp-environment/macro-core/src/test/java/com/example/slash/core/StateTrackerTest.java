@@ -0,0 +1,148 @@
+package com.example.slash.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Feeds {@link StateTracker} labelled synthetic sequences: runs of frames showing one class, with
+ * a share of frames scored as a random wrong class, and checks the transitions it reports.
+ */
+public class StateTrackerTest {
+    private static final int FULL = BarFillClassifier.FULL;
+    private static final int LOW = BarFillClassifier.LOW;
+    private static final int EMPTY = BarFillClassifier.EMPTY;
+    // Class and duration in ms of each labelled run
+    private static final int[][] LABELS = {
+            {FULL, 2000}, {LOW, 1500}, {EMPTY, 1000}, {LOW, 1000}, {FULL, 2000}, {EMPTY, 1000}, {FULL, 1500}};
+
+    private final List<String> transitions = new ArrayList<>();
+    private final List<Long> latencies = new ArrayList<>();
+    private final StateTracker tracker = new StateTracker(3);
+
+    {
+        tracker.addListener((from, to, latencyNanos) -> {
+            transitions.add(from + ">" + to);
+            latencies.add(latencyNanos);
+        });
+    }
+
+    @Test
+    public void cleanSequenceGivesLabelledTransitions() {
+        play(30, 0, 1);
+        assertEquals(labelledTransitions(), transitions);
+        for (long latency : latencies) assertTrue("latency " + latency, latency <= TimeUnit.MILLISECONDS.toNanos(300));
+    }
+
+    @Test
+    public void noisyFramesDoNotFlipState() {
+        for (int fps : new int[]{10, 30, 60}) {
+            transitions.clear();
+            tracker.reset();
+            int rawFlips = play(fps, 0.10, 42);
+            assertEquals(fps + " fps", labelledTransitions(), transitions);
+            assertTrue(fps + " fps, " + rawFlips + " raw flips", rawFlips > LABELS.length);
+        }
+    }
+
+    @Test
+    public void singleWrongFrameAtLowFrameRateIsIgnored() {
+        long frame = TimeUnit.MILLISECONDS.toNanos(200); // 5 fps
+        long t = 0;
+        for (int i = 0; i < 10; i++, t += frame) tracker.update(scores(FULL), t);
+        tracker.update(scores(EMPTY), t);
+        t += frame;
+        for (int i = 0; i < 10; i++, t += frame) tracker.update(scores(FULL), t);
+        assertEquals(Arrays.asList("IDLE>STAMINA_FULL"), transitions);
+    }
+
+    @Test
+    public void dropIsReportedFasterThanRecovery() {
+        long frame = TimeUnit.MILLISECONDS.toNanos(33);
+        long t = 0;
+        for (int i = 0; i < 60; i++, t += frame) tracker.update(scores(FULL), t);
+        for (int i = 0; i < 60; i++, t += frame) tracker.update(scores(LOW), t);
+        for (int i = 0; i < 60; i++, t += frame) tracker.update(scores(FULL), t);
+        assertEquals(Arrays.asList("IDLE>STAMINA_FULL", "STAMINA_FULL>STAMINA_LOW", "STAMINA_LOW>STAMINA_FULL"),
+                transitions);
+        assertTrue(latencies.get(1) < latencies.get(2));
+    }
+
+    @Test
+    public void resetForgetsPreviousSession() {
+        long frame = TimeUnit.MILLISECONDS.toNanos(33);
+        long t = 0;
+        for (int i = 0; i < 30; i++, t += frame) tracker.update(scores(EMPTY), t);
+        assertEquals(GameState.STAMINA_EMPTY, tracker.getState());
+
+        tracker.reset();
+        assertEquals(GameState.IDLE, tracker.getState()); // At once, before the next frame
+        assertEquals(1, transitions.size());
+        // The new session starts from nothing, so one frame is enough to enter
+        tracker.update(scores(FULL), t + TimeUnit.SECONDS.toNanos(60));
+        assertEquals(GameState.STAMINA_FULL, tracker.getState());
+        assertEquals(Arrays.asList("IDLE>STAMINA_EMPTY", "IDLE>STAMINA_FULL"), transitions);
+        assertEquals(0.8f, tracker.getConfidence(FULL), 1e-6f);
+        assertEquals(0.1f, tracker.getConfidence(EMPTY), 1e-6f);
+        assertEquals(2, tracker.getTransitionCount());
+    }
+
+    @Test
+    public void framesWithoutScoresAreIgnored() {
+        tracker.update(scores(LOW), 0);
+        assertEquals(GameState.STAMINA_LOW, tracker.getState());
+        for (int i = 1; i < 20; i++) tracker.update(new float[3], i * TimeUnit.MILLISECONDS.toNanos(33));
+        assertEquals(GameState.STAMINA_LOW, tracker.getState());
+        assertEquals(0.8f, tracker.getConfidence(LOW), 1e-6f);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsExitAboveEnter() {
+        tracker.setThresholds(LOW, 0.5f, 0.6f);
+    }
+
+    // Plays LABELS at fps with the given share of wrong frames; returns the raw argmax changes.
+    private int play(int fps, double noise, long seed) {
+        Random random = new Random(seed);
+        long frame = TimeUnit.SECONDS.toNanos(1) / fps;
+        long t = TimeUnit.SECONDS.toNanos(5); // A capture clock that did not start at zero
+        int rawFlips = 0;
+        int lastShown = -1;
+        for (int[] run : LABELS) {
+            long end = t + TimeUnit.MILLISECONDS.toNanos(run[1]);
+            for (; t < end; t += frame) {
+                int shown = run[0];
+                if (random.nextDouble() < noise) shown = (shown + 1 + random.nextInt(2)) % 3;
+                if (shown != lastShown) rawFlips++;
+                lastShown = shown;
+                tracker.update(scores(shown), t);
+            }
+        }
+        return rawFlips;
+    }
+
+    private static List<String> labelledTransitions() {
+        List<String> expected = new ArrayList<>();
+        GameState from = GameState.IDLE;
+        for (int[] run : LABELS) {
+            GameState to = GameState.fromClass(run[0]);
+            expected.add(from + ">" + to);
+            from = to;
+        }
+        return expected;
+    }
+
+    // Classifier output favouring one class, as the cascade produces for a clear bar
+    private static float[] scores(int shown) {
+        float[] scores = {0.1f, 0.1f, 0.1f};
+        scores[shown] = 0.8f;
+        return scores;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.slash.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TapArbiterTest {
+    private static final long HOLD = 100;
+
+    private final List<String> dispatched = new ArrayList<>();
+    private long now;
+    private final TapArbiter arbiter = new TapArbiter(
+            (kind, x, y) -> dispatched.add(Macro.kindName(kind) + " " + (int) x), HOLD, () -> now);
+    private final TapArbiter.Lane macro = arbiter.lane("macro", 0);
+    private final TapArbiter.Lane trigger = arbiter.lane("trigger", 1);
+
+    @Test
+    public void lowerPriorityWaitsOutTheHold() {
+        assertTrue(trigger.offer(Macro.TAP, 1, 0));
+        now = HOLD - 1;
+        assertFalse(macro.offer(Macro.TAP, 2, 0));
+        now = HOLD;
+        assertTrue(macro.offer(Macro.TAP, 3, 0));
+        assertEquals(1, macro.getRejectedCount());
+        assertEquals(1, macro.getDispatchedCount());
+        assertEquals(1, trigger.getDispatchedCount());
+        assertEquals(2, dispatched.size());
+    }
+
+    @Test
+    public void higherOrEqualPriorityTakesOverBetweenStrokes() {
+        TapArbiter.Lane other = arbiter.lane("other", 0);
+        assertTrue(macro.offer(Macro.TAP, 1, 0));
+        assertTrue(trigger.offer(Macro.TAP, 2, 0));
+        assertTrue(trigger.offer(Macro.TAP, 3, 0));
+        now = HOLD;
+        assertTrue(macro.offer(Macro.TAP, 4, 0));
+        assertTrue(other.offer(Macro.TAP, 5, 0));
+        assertEquals(5, dispatched.size());
+    }
+
+    @Test
+    public void ownerKeepsTheScreen() {
+        assertTrue(trigger.offer(Macro.TAP, 1, 0));
+        for (int i = 0; i < 5; i++) {
+            now += HOLD / 2;
+            assertTrue(trigger.offer(Macro.TAP, i, 0));
+        }
+        assertEquals(0, trigger.getRejectedCount());
+    }
+
+    @Test
+    public void openStrokeBlocksEveryoneUntilItsUp() {
+        assertTrue(macro.offer(Macro.DOWN, 1, 0));
+        assertFalse(trigger.offer(Macro.TAP, 2, 0));
+        // A long press: the hold runs out long before the UP
+        now = 10 * HOLD;
+        assertTrue(macro.offer(Macro.MOVE, 3, 0));
+        now = 50 * HOLD;
+        assertFalse(trigger.offer(Macro.TAP, 4, 0));
+        assertTrue(macro.offer(Macro.UP, 5, 0));
+        assertTrue(trigger.offer(Macro.TAP, 6, 0));
+        assertEquals(2, trigger.getRejectedCount());
+        assertEquals("[DOWN 1, MOVE 3, UP 5, TAP 6]", dispatched.toString());
+    }
+
+    @Test
+    public void lowerPriorityStrokeIsAlsoProtected() {
+        assertTrue(macro.offer(Macro.DOWN, 1, 0));
+        now = HOLD * 3;
+        assertFalse(trigger.offer(Macro.DOWN, 2, 0));
+        assertTrue(macro.offer(Macro.UP, 3, 0));
+        assertTrue(trigger.offer(Macro.DOWN, 4, 0));
+        assertFalse(macro.offer(Macro.DOWN, 5, 0));
+    }
+}
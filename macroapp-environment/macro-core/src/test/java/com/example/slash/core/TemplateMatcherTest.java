@@ -0,0 +1,128 @@
+package com.example.slash.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Test;
+
+/** Templates planted at known offsets in a noisy image. */
+public class TemplateMatcherTest {
+    private static final int SIZE = 32;
+    private static final int LEVELS = 3; // 32, 16 and 8 pixel templates
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final TemplateMatcher.Match match = new TemplateMatcher.Match();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void findsTemplateAtKnownOffsets() throws InterruptedException {
+        byte[] template = template(true);
+        TemplateMatcher matcher = new TemplateMatcher(new GrayImage(SIZE, SIZE, template), LEVELS, null, 1);
+        int[][] offsets = {{40, 24}, {41, 25}, {77, 13}, {102, 50}};
+        for (int[] offset : offsets) {
+            GrayImage image = noise(160, 96, 1);
+            plant(image, template, offset[0], offset[1]);
+            assertFound(matcher, image, offset[0], offset[1]);
+        }
+    }
+
+    @Test
+    public void findsTemplateAtBorders() throws InterruptedException {
+        byte[] template = template(true);
+        TemplateMatcher matcher = new TemplateMatcher(new GrayImage(SIZE, SIZE, template), LEVELS, null, 1);
+        int[][] offsets = {{0, 0}, {160 - SIZE, 96 - SIZE}, {0, 96 - SIZE}, {160 - SIZE, 1}};
+        for (int[] offset : offsets) {
+            GrayImage image = noise(160, 96, 2);
+            plant(image, template, offset[0], offset[1]);
+            assertFound(matcher, image, offset[0], offset[1]);
+        }
+        // Exactly the template's size: one position to try
+        assertFound(matcher, new GrayImage(SIZE, SIZE, template), 0, 0);
+    }
+
+    @Test
+    public void findsTemplateAcrossStripBoundaries() throws InterruptedException {
+        byte[] template = template(true);
+        TemplateMatcher matcher = new TemplateMatcher(new GrayImage(SIZE, SIZE, template), LEVELS, executor, 4);
+        // 320 rows are 80 at the coarse level: 73 template positions in four strips of about 18,
+        // so the template at these rows straddles the first and second strip boundaries
+        for (int y = 60; y <= 80; y += 3) {
+            GrayImage image = noise(320, 320, y);
+            plant(image, template, 150, y);
+            assertFound(matcher, image, 150, y);
+        }
+        for (int y = 130; y <= 150; y += 5) {
+            GrayImage image = noise(320, 320, y);
+            plant(image, template, 5, y);
+            assertFound(matcher, image, 5, y);
+        }
+    }
+
+    @Test
+    public void refinesMoreThanBestCoarseCandidate() throws InterruptedException {
+        byte[] template = template(true);
+        TemplateMatcher matcher = new TemplateMatcher(new GrayImage(SIZE, SIZE, template), LEVELS, null, 1);
+        GrayImage image = noise(160, 96, 3);
+        // Without the fine texture the decoy is identical to the template at the coarse level, and
+        // on a multiple of four it lines up with the coarse grid; the real one is off the grid
+        plant(image, template(false), 16, 16);
+        plant(image, template, 97, 41);
+        assertFound(matcher, image, 97, 41);
+    }
+
+    @Test
+    public void rejectsMatchBelowThreshold() throws InterruptedException {
+        TemplateMatcher matcher = new TemplateMatcher(new GrayImage(SIZE, SIZE, template(true)), LEVELS, null, 1);
+        assertFalse(matcher.match(noise(160, 96, 4), 0.8f, match));
+        assertFalse(matcher.match(noise(SIZE - 1, 96, 4), -1f, match));
+    }
+
+    private void assertFound(TemplateMatcher matcher, GrayImage image, int x, int y) throws InterruptedException {
+        assertTrue("no match for " + x + "," + y, matcher.match(image, 0.8f, match));
+        assertEquals("x of " + x + "," + y, x, match.x);
+        assertEquals("y of " + x + "," + y, y, match.y);
+        assertEquals(1f, match.score, 1e-4f);
+        assertEquals(SIZE, match.width);
+        assertEquals(SIZE, match.height);
+    }
+
+    // A dark ring on a light square, with a one-pixel checkerboard inside the ring if `textured`;
+    // the checkerboard averages out in every 2x2 block
+    private static byte[] template(boolean textured) {
+        byte[] pixels = new byte[SIZE * SIZE];
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                double dx = x - 15.5;
+                double dy = y - 15.5;
+                double r = Math.sqrt(dx * dx + dy * dy);
+                int v = r > 9 && r < 14 ? 40 : 200 - (int) (3 * r);
+                if (textured && r <= 9) v += ((x + y) & 1) == 0 ? 40 : -40;
+                pixels[y * SIZE + x] = (byte) v;
+            }
+        }
+        return pixels;
+    }
+
+    private static GrayImage noise(int width, int height, long seed) {
+        byte[] pixels = new byte[width * height];
+        Random random = new Random(seed);
+        for (int i = 0; i < pixels.length; i++) pixels[i] = (byte) (64 + random.nextInt(128));
+        return new GrayImage(width, height, pixels);
+    }
+
+    private static void plant(GrayImage image, byte[] template, int x, int y) {
+        for (int row = 0; row < SIZE; row++) {
+            System.arraycopy(template, row * SIZE, image.getPixels(), (y + row) * image.getWidth() + x, SIZE);
+        }
+    }
+}
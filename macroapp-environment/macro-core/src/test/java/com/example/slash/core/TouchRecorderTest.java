@@ -0,0 +1,175 @@
+package com.example.slash.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TouchRecorderTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final Macro.Builder builder = new Macro.Builder();
+
+    @Test
+    public void roundsCapacityUpToPowerOfTwo() {
+        TouchRecorder recorder = new TouchRecorder(5, new PathSimplifier(1f));
+        for (int i = 0; i < 7; i++) assertTrue(recorder.record(Macro.TAP, i, i, i * MS));
+        assertFalse(recorder.record(Macro.TAP, 7, 7, 7 * MS)); // The eighth slot is kept for an UP
+        assertTrue(recorder.record(Macro.UP, 7, 7, 7 * MS));
+        assertEquals(8, recorder.size());
+        assertEquals(1, recorder.getDroppedCount());
+    }
+
+    @Test
+    public void drainsTapsAndSimplifiedStrokes() {
+        TouchRecorder recorder = new TouchRecorder(64, new PathSimplifier(1f));
+        recorder.record(Macro.TAP, 5, 6, 0);
+        recorder.record(Macro.DOWN, 0, 0, 100 * MS);
+        for (int i = 1; i < 10; i++) recorder.record(Macro.MOVE, i * 10, 0, (100 + i) * MS);
+        recorder.record(Macro.MOVE, 90, 50, 110 * MS);
+        recorder.record(Macro.UP, 90, 100, 111 * MS);
+        assertEquals(13, recorder.drainStrokes(builder));
+        assertEquals(0, recorder.size());
+
+        Macro macro = builder.build();
+        assertEquals(4, macro.size());
+        assertAction(macro, 0, Macro.TAP, 5, 6);
+        assertAction(macro, 1, Macro.DOWN, 0, 0);
+        assertAction(macro, 2, Macro.MOVE, 90, 0);
+        assertAction(macro, 3, Macro.UP, 90, 100);
+        assertEquals(100_000, macro.getDeltaMicros(1));
+        assertEquals(9_000, macro.getDeltaMicros(2)); // Kept points keep their own timestamps
+        assertEquals(2_000, macro.getDeltaMicros(3));
+    }
+
+    @Test
+    public void strokeInProgressStaysInRing() {
+        TouchRecorder recorder = new TouchRecorder(64, new PathSimplifier(1f));
+        recorder.record(Macro.DOWN, 0, 0, 0);
+        recorder.record(Macro.MOVE, 1, 1, MS);
+        assertEquals(0, recorder.drainStrokes(builder));
+        assertEquals(2, recorder.size());
+        recorder.record(Macro.UP, 2, 2, 2 * MS);
+        assertEquals(3, recorder.drainStrokes(builder));
+        assertEquals(2, builder.size());
+    }
+
+    @Test
+    public void drainsAcrossTheRingBoundary() {
+        TouchRecorder recorder = new TouchRecorder(8, new PathSimplifier(0f));
+        for (int stroke = 0; stroke < 5; stroke++) {
+            recorder.record(Macro.DOWN, 0, stroke, 0);
+            recorder.record(Macro.MOVE, 10, stroke + 5, MS);
+            recorder.record(Macro.UP, 20, stroke, 2 * MS);
+            assertEquals(3, recorder.drainStrokes(builder));
+        }
+        Macro macro = builder.build();
+        assertEquals(15, macro.size());
+        assertAction(macro, 13, Macro.MOVE, 10, 9);
+    }
+
+    @Test
+    public void orphanUpIsSkipped() {
+        TouchRecorder recorder = new TouchRecorder(8, new PathSimplifier(1f));
+        recorder.record(Macro.UP, 1, 1, 0);
+        assertEquals(1, recorder.drainStrokes(builder));
+        assertEquals(0, builder.size());
+    }
+
+    @Test
+    public void strokeLongerThanRingIsSimplifiedInPlace() {
+        TouchRecorder recorder = new TouchRecorder(16, new PathSimplifier(1f));
+        int samples = 1000;
+        assertTrue(recorder.record(Macro.DOWN, 0, 0, 0));
+        for (int i = 1; i < samples; i++) {
+            // Straight out along x, then straight down
+            float x = Math.min(i, 500);
+            float y = Math.max(0, i - 500);
+            assertTrue(recorder.record(Macro.MOVE, x, y, i * MS));
+        }
+        assertTrue(recorder.record(Macro.UP, 500, 600, samples * MS));
+        assertEquals(0, recorder.getDroppedCount());
+        assertTrue(recorder.getCompactionCount() > 0);
+
+        recorder.drainStrokes(builder);
+        assertEquals(0, recorder.size());
+        Macro macro = builder.build();
+        assertEquals(3, macro.size());
+        assertAction(macro, 0, Macro.DOWN, 0, 0);
+        assertAction(macro, 1, Macro.MOVE, 500, 0);
+        assertAction(macro, 2, Macro.UP, 500, 600);
+        assertEquals(samples * 1000L, macro.getDurationMicros());
+    }
+
+    @Test
+    public void wigglyStrokeLongerThanRingKeepsFirstAndLast() {
+        // Every sample is a corner, so only dropping samples can make room
+        TouchRecorder recorder = new TouchRecorder(16, new PathSimplifier(0f));
+        recorder.record(Macro.DOWN, 0, 0, 0);
+        for (int i = 1; i < 200; i++) {
+            assertTrue(recorder.record(Macro.MOVE, i, i % 2 * 10, i * MS));
+            assertTrue(recorder.size() <= 15);
+        }
+        assertTrue(recorder.record(Macro.UP, 200, 0, 200 * MS));
+        assertEquals(0, recorder.getDroppedCount());
+
+        recorder.drainStrokes(builder);
+        Macro macro = builder.build();
+        assertAction(macro, 0, Macro.DOWN, 0, 0);
+        assertAction(macro, macro.size() - 1, Macro.UP, 200, 0);
+        assertEquals(200_000, macro.getDurationMicros());
+        for (int i = 1; i < macro.size() - 1; i++) assertEquals(Macro.MOVE, macro.getKind(i));
+    }
+
+    @Test
+    public void compactionLeavesEarlierStrokesAlone() {
+        TouchRecorder recorder = new TouchRecorder(16, new PathSimplifier(1f));
+        recorder.record(Macro.TAP, 7, 7, 0);
+        recorder.record(Macro.DOWN, 1, 1, MS);
+        recorder.record(Macro.UP, 2, 2, 2 * MS);
+        recorder.record(Macro.DOWN, 0, 100, 3 * MS);
+        for (int i = 1; i < 40; i++) recorder.record(Macro.MOVE, i, 100, (3 + i) * MS);
+        recorder.record(Macro.UP, 40, 100, 50 * MS);
+        assertEquals(0, recorder.getDroppedCount());
+
+        recorder.drainStrokes(builder);
+        Macro macro = builder.build();
+        assertEquals(5, macro.size());
+        assertAction(macro, 0, Macro.TAP, 7, 7);
+        assertAction(macro, 1, Macro.DOWN, 1, 1);
+        assertAction(macro, 2, Macro.UP, 2, 2);
+        assertAction(macro, 3, Macro.DOWN, 0, 100);
+        assertAction(macro, 4, Macro.UP, 40, 100);
+    }
+
+    @Test
+    public void upIsAcceptedWhenRingIsFullOfUndrainedSamples() {
+        TouchRecorder recorder = new TouchRecorder(4, new PathSimplifier(1f));
+        for (int i = 0; i < 3; i++) assertTrue(recorder.record(Macro.TAP, i, i, i * MS));
+        assertFalse(recorder.record(Macro.DOWN, 3, 3, 3 * MS));
+        assertTrue(recorder.record(Macro.UP, 3, 3, 4 * MS));
+        assertEquals(1, recorder.getDroppedCount());
+        assertEquals(4, recorder.drainStrokes(builder));
+        assertEquals(3, builder.size());
+    }
+
+    @Test
+    public void clearResetsCounters() {
+        TouchRecorder recorder = new TouchRecorder(2, new PathSimplifier(1f));
+        recorder.record(Macro.TAP, 0, 0, 0);
+        recorder.record(Macro.TAP, 0, 0, 0);
+        recorder.clear();
+        assertEquals(0, recorder.size());
+        assertEquals(0, recorder.getDroppedCount());
+        assertTrue(recorder.record(Macro.TAP, 0, 0, 0));
+    }
+
+    private static void assertAction(Macro macro, int index, byte kind, float x, float y) {
+        assertEquals("kind " + index, Macro.kindName(kind), Macro.kindName(macro.getKind(index)));
+        assertEquals("x " + index, x, macro.getX(index), 0f);
+        assertEquals("y " + index, y, macro.getY(index), 0f);
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.slash.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/** Label parsing and the label diff of the trace replay harness. */
+public class TraceReplayHarnessTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void labelsAreStepFunction() {
+        TraceReplayHarness.Labels labels = new TraceReplayHarness.Labels(new long[] {0, 100, 100, 300},
+                new GameState[] {GameState.STAMINA_FULL, GameState.STAMINA_LOW, GameState.IN_BATTLE, GameState.IDLE});
+        assertNull(labels.at(-1));
+        assertEquals(GameState.STAMINA_FULL, labels.at(0));
+        assertEquals(GameState.STAMINA_FULL, labels.at(99));
+        // Of two labels at the same time the later one wins
+        assertEquals(GameState.IN_BATTLE, labels.at(100));
+        assertEquals(GameState.IN_BATTLE, labels.at(299));
+        assertEquals(GameState.IDLE, labels.at(300));
+        assertEquals(GameState.IDLE, labels.at(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void readsLabelsSkippingCommentsAndBlankLines() throws IOException {
+        File file = labelsFile("# expected states", "", "0 STAMINA_FULL", "  250\tSTAMINA_LOW  ", "900 STAMINA_EMPTY");
+        TraceReplayHarness.Labels labels = TraceReplayHarness.readLabels(file);
+        assertTrue(Arrays.equals(new long[] {0, 250, 900}, labels.millis));
+        assertEquals(Arrays.asList(GameState.STAMINA_FULL, GameState.STAMINA_LOW, GameState.STAMINA_EMPTY),
+                Arrays.asList(labels.states));
+    }
+
+    @Test
+    public void rejectsBadLabels() {
+        assertBadLabels("labels.txt:2: labels out of order", "100 STAMINA_FULL", "50 STAMINA_LOW");
+        assertBadLabels("labels.txt:1: expected '<millis> <state>'", "100 DEPLETED");
+        assertBadLabels("labels.txt:1: expected '<millis> <state>'", "100");
+        assertBadLabels("labels.txt:1: expected '<millis> <state>'", "soon STAMINA_LOW");
+    }
+
+    @Test
+    public void mergesMismatchesIntoSpans() {
+        TraceReplayHarness.Mismatches mismatches = new TraceReplayHarness.Mismatches();
+        mismatches.compare(0, null, GameState.IDLE); // Before the first label
+        mismatches.compare(10, GameState.STAMINA_FULL, GameState.IDLE);
+        mismatches.compare(20, GameState.STAMINA_FULL, GameState.IDLE);
+        mismatches.compare(30, GameState.STAMINA_FULL, GameState.STAMINA_LOW);
+        mismatches.compare(40, GameState.STAMINA_FULL, GameState.STAMINA_FULL);
+        mismatches.compare(50, GameState.STAMINA_LOW, GameState.STAMINA_FULL);
+        mismatches.compare(60, GameState.STAMINA_LOW, GameState.STAMINA_FULL);
+        mismatches.closeSpan();
+        mismatches.closeSpan();
+
+        assertEquals(5, mismatches.frames);
+        assertEquals("  10-20ms: expected STAMINA_FULL, got IDLE (2 frames)\n"
+                + "  30-30ms: expected STAMINA_FULL, got STAMINA_LOW (1 frames)\n"
+                + "  50-60ms: expected STAMINA_LOW, got STAMINA_FULL (2 frames)\n", mismatches.spans.toString());
+    }
+
+    @Test
+    public void reportsFramesThatDisagreeWithLabels() throws IOException {
+        File trace = folder.newFile("trace.slft");
+        RoiFrame frame = new RoiFrame();
+        try (FrameTraceWriter writer = FrameTraceWriter.open(trace)) {
+            for (int i = 0; i < 5; i++) {
+                frame.reset(40, 8);
+                Arrays.fill(frame.getPixels(), 0, frame.getByteCount(), (byte) 0x80);
+                frame.setTimestampNanos(TimeUnit.MILLISECONDS.toNanos(1000 + 100 * i));
+                writer.append(FrameTraceWriter.REGION_STAMINA, frame);
+                // Other regions are not replayed
+                writer.append(FrameTraceWriter.REGION_TRIGGER, frame);
+            }
+        }
+        // The pipeline has no way to see a battle from the stamina bar, so every labelled frame disagrees
+        File labels = labelsFile("0 IN_BATTLE");
+
+        TraceReplayHarness harness = new TraceReplayHarness(true);
+        harness.run(trace, TraceReplayHarness.readLabels(labels));
+        String report = harness.report();
+        assertTrue(report, report.startsWith("Frames: 5 in "));
+        assertTrue(report, report.contains("Mismatches: 5 of 5 frames\n"));
+        assertTrue(report, report.contains("0-400ms: expected IN_BATTLE, got "));
+    }
+
+    private void assertBadLabels(String message, String... lines) {
+        try {
+            TraceReplayHarness.readLabels(labelsFile(lines));
+            fail("Read bad labels " + Arrays.toString(lines));
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().endsWith(message));
+        }
+    }
+
+    private File labelsFile(String... lines) throws IOException {
+        File file = new File(folder.getRoot(), "labels.txt");
+        Files.write(file.toPath(), Arrays.asList(lines), StandardCharsets.UTF_8);
+        return file;
+    }
+}